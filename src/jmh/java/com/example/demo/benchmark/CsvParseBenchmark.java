@@ -0,0 +1,54 @@
+package com.example.demo.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opencsv.CSVReader;
+
+// Cost of the opencsv CSVReader loop alone
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class CsvParseBenchmark {
+
+	@Param({ "100000" })
+	int rows;
+
+	private byte[] file;
+
+	@Setup
+	public void setUp() {
+		file = SyntheticMembers.csv(rows, "Parse");
+	}
+
+	@Benchmark
+	public int parse(RowCounter counter) throws Exception {
+		int count = 0;
+		try (CSVReader cr = new CSVReader(
+				new InputStreamReader(new ByteArrayInputStream(file), StandardCharsets.UTF_8))) {
+			while (cr.readNext() != null) {
+				count++;
+			}
+		}
+		counter.rows += count;
+		return count;
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.example.demo.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.SpringBootCsvFileHandlingApplication;
+import com.example.demo.dto.CsvProcessingResult;
+import com.example.demo.service.CSVProcessingService;
+import com.example.demo.service.ExistingMemberIndex;
+
+// Whole upload path (parse, validate, pipeline, batch insert) against the
+// in-memory H2 database from src/test/resources. The table is emptied before
+// every invocation so each one inserts the same rows.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class IngestBenchmark {
+
+	@Param({ "50000" })
+	int rows;
+
+	// Value of csv.ingest.writer
+	@Param({ "jdbc-batch", "multi-row" })
+	String writer;
+
+	private ConfigurableApplicationContext applicationContext;
+	private CSVProcessingService service;
+	private JdbcTemplate jdbcTemplate;
+	private byte[] file;
+
+	@Setup
+	public void setUp() {
+		applicationContext = new SpringApplicationBuilder(SpringBootCsvFileHandlingApplication.class)
+				.web(WebApplicationType.NONE).properties("csv.ingest.writer=" + writer, "logging.level.root=WARN")
+				.run();
+		service = applicationContext.getBean(CSVProcessingService.class);
+		jdbcTemplate = applicationContext.getBean(JdbcTemplate.class);
+		file = SyntheticMembers.csv(rows, "Ingest");
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyTable() {
+		jdbcTemplate.update("DELETE FROM members");
+		applicationContext.getBean(ExistingMemberIndex.class).reload();
+	}
+
+	@Benchmark
+	public CsvProcessingResult ingest(RowCounter counter) {
+		CsvProcessingResult result = service.processCsvStream(new ByteArrayInputStream(file));
+		counter.rows += rows;
+		return result;
+	}
+
+	@TearDown
+	public void tearDown() {
+		applicationContext.close();
+	}
+
+}
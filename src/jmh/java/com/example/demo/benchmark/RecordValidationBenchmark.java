@@ -0,0 +1,83 @@
+package com.example.demo.benchmark;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.demo.exceptions.InvalidRecordException;
+import com.example.demo.service.CSVProcessingService;
+import com.example.demo.service.CompiledFeedSchema;
+import com.example.demo.service.ExistingMemberIndex;
+import com.example.demo.service.FeedSchemaRegistry;
+import com.example.demo.service.IngestContext;
+
+// Per row cost of validation against the default feed schema (mandatory fields,
+// mobile, date parsing, age and address cleaning) and of the duplicate check,
+// without parsing or database work.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RecordValidationBenchmark {
+
+	@Param({ "100000" })
+	int rows;
+
+	private final CSVProcessingService service = new CSVProcessingService();
+
+	private CompiledFeedSchema schema;
+
+	private String[][] data;
+
+	@Setup
+	public void setUp() throws IOException {
+		schema = FeedSchemaRegistry.readSchema(new ClassPathResource("feeds/default.yml"));
+		data = SyntheticMembers.rows(rows, "Validate");
+		// Not loaded from a database, so the check against stored members is off
+		ReflectionTestUtils.setField(service, "existingMemberIndex", new ExistingMemberIndex());
+	}
+
+	private IngestContext newContext() {
+		return new IngestContext(100, schema.newValidator(LocalDate.now()));
+	}
+
+	@Benchmark
+	public void validate(RowCounter counter, Blackhole bh) {
+		IngestContext context = newContext();
+		for (String[] row : data) {
+			bh.consume(service.validateRecord(row, context));
+		}
+		counter.rows += data.length;
+	}
+
+	@Benchmark
+	public void validateAndResolve(RowCounter counter, Blackhole bh) {
+		IngestContext context = newContext();
+		for (String[] row : data) {
+			try {
+				bh.consume(service.processRecord(row, context));
+			} catch (InvalidRecordException e) {
+				bh.consume(e);
+			}
+		}
+		counter.rows += data.length;
+	}
+
+}
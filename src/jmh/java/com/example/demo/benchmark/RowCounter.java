@@ -0,0 +1,22 @@
+package com.example.demo.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Reported by JMH as a secondary "rows" result in rows/sec. Allocation per row is
+// gc.alloc.rate.norm (bytes per invocation, with -prof gc) divided by the rows param.
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class RowCounter {
+
+	public long rows;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		rows = 0;
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.example.demo.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Generates member files in the 14 column upload format. The same seed always
+// gives the same file so results can be compared between runs. Roughly 5% of
+// the rows are invalid and 2% are duplicates, close to what partner feeds look like.
+final class SyntheticMembers {
+
+	static final long SEED = 20240601L;
+
+	static final String HEADER = "id,firstName,lastName,dob,gender,education,houseNumber,address1,address2,city,pincode,mobile,company,monthlySalary";
+
+	private static final String[] CITIES = { "Pune", "Mumbai", "Delhi", "Chennai", "Hyderabad", "Kolkata" };
+	private static final String[] EDUCATION = { "BE", "BTech", "MSc", "MBA", "BCom" };
+	private static final String[] COMPANIES = { "Acme", "Initech", "Globex", "Umbrella", "Hooli" };
+
+	private SyntheticMembers() {
+	}
+
+	// Rows without the header, fields as CSVReader would return them
+	static String[][] rows(int count, String namePrefix) {
+		Random random = new Random(SEED);
+		String[][] rows = new String[count][];
+		for (int i = 0; i < count; i++) {
+			int n = random.nextInt(50) == 0 && i > 0 ? i - 1 : i;
+			String dob = random.nextBoolean()
+					? String.format("%02d-%02d-%d", 1 + random.nextInt(28), 1 + random.nextInt(12), 1940 + random.nextInt(80))
+					: String.format("%d/%d/%d", 1 + random.nextInt(28), 1 + random.nextInt(12), 1940 + random.nextInt(80));
+			String mobile = (7 + random.nextInt(3)) + String.format("%09d", random.nextInt(1_000_000_000));
+			switch (random.nextInt(20)) {
+			case 0 -> mobile = "12345";
+			case 1 -> dob = "31-12-2999";
+			default -> {
+			}
+			}
+			rows[i] = new String[] { String.valueOf(i), namePrefix + "First" + n, namePrefix + "Last" + n, dob,
+					random.nextBoolean() ? "M" : "F", EDUCATION[random.nextInt(EDUCATION.length)],
+					String.valueOf(1 + random.nextInt(500)), "Flat #" + random.nextInt(100) + ", Main Road",
+					"Sector-" + random.nextInt(60) + " (East)", CITIES[random.nextInt(CITIES.length)],
+					String.valueOf(400000 + random.nextInt(99999)), mobile, COMPANIES[random.nextInt(COMPANIES.length)],
+					String.valueOf(10000 + random.nextInt(190000)) };
+		}
+		return rows;
+	}
+
+	// The same rows as a CSV file including the header line
+	static byte[] csv(int count, String namePrefix) {
+		StringBuilder sb = new StringBuilder(count * 160).append(HEADER).append('\n');
+		for (String[] row : rows(count, namePrefix)) {
+			for (int i = 0; i < row.length; i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				String field = row[i];
+				if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0) {
+					sb.append('"').append(field.replace("\"", "\"\"")).append('"');
+				} else {
+					sb.append(field);
+				}
+			}
+			sb.append('\n');
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.example.demo.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Member lookups are cached in process with Caffeine, see spring.cache.* in
+// application.properties and MemberCacheEvictor for how entries are dropped
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+	public static final String MEMBERS_BY_FIRST_NAME = "membersByFirstName";
+	public static final String MEMBERS_BY_LAST_NAME = "membersByLastName";
+	public static final String MEMBERS_BY_NAME_PATTERN = "membersByNamePattern";
+
+	// Same settings as the auto-configured manager, with caches that skip results
+	// read across an eviction (see VersionedCaffeineCache)
+	@Bean
+	public CaffeineCacheManager cacheManager(
+			@Value("${spring.cache.cache-names:membersByFirstName,membersByLastName,membersByNamePattern}") List<String> cacheNames,
+			@Value("${spring.cache.caffeine.spec:maximumSize=10000,expireAfterWrite=10m,recordStats}") String spec) {
+		CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+			@Override
+			protected Cache adaptCaffeineCache(String name,
+					com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+				return new VersionedCaffeineCache(name, cache, isAllowNullValues());
+			}
+		};
+		cacheManager.setCacheSpecification(spec);
+		cacheManager.setCacheNames(cacheNames);
+		return cacheManager;
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.example.demo.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+@Configuration
+public class IngestExecutorConfig {
+
+	// Shared by all uploads, validation is pure CPU work so one thread per core is enough
+	@Bean(destroyMethod = "shutdownNow")
+	public ExecutorService csvValidatorExecutor(@Value("${csv.ingest.validator-threads:0}") int validatorThreads) {
+		int threads = validatorThreads > 0 ? validatorThreads : Runtime.getRuntime().availableProcessors();
+		return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("csv-validator-"));
+	}
+
+	// Runs the ordering and writer stages of each upload, these threads mostly
+	// wait on queues or the database so the pool is not bounded
+	@Bean(destroyMethod = "shutdownNow")
+	public ExecutorService csvPipelineExecutor() {
+		return Executors.newCachedThreadPool(new CustomizableThreadFactory("csv-pipeline-"));
+	}
+
+	// Background ingest jobs, each job runs its own pipeline so only a few run at once
+	@Bean(destroyMethod = "shutdownNow")
+	public ExecutorService csvJobExecutor(@Value("${csv.jobs.threads:2}") int jobThreads) {
+		return Executors.newFixedThreadPool(jobThreads, new CustomizableThreadFactory("csv-job-"));
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+// LOAD DATA LOCAL INFILE lets the server ask the client for a file, so the
+// driver only allows it when the load-data writer is used. It is set here
+// instead of in the datasource URL to keep it off for every other setup.
+@Component
+public class LocalInfileConfig implements BeanPostProcessor, EnvironmentAware {
+
+	private boolean loadData;
+
+	@Override
+	public void setEnvironment(Environment environment) {
+		loadData = "load-data".equals(environment.getProperty("csv.ingest.writer", "jdbc-batch"));
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) {
+		if (loadData && bean instanceof HikariDataSource dataSource) {
+			dataSource.addDataSourceProperty("allowLoadLocalInfile", "true");
+		}
+		return bean;
+	}
+
+}
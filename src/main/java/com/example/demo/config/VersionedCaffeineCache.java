@@ -0,0 +1,51 @@
+package com.example.demo.config;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+// Caffeine cache that does not store results read before an eviction.
+//
+// A lookup that misses runs its query and then puts the result. If members are
+// committed and the matching entries dropped while that query runs, its result
+// can be from before the commit and would stay cached until the TTL. Every
+// eviction round raises the version, and a put is skipped when the version
+// changed since the same thread looked the key up.
+public class VersionedCaffeineCache extends CaffeineCache {
+
+	// Key and version of this thread's last lookup
+	private static final ThreadLocal<Object[]> LAST_LOOKUP = new ThreadLocal<>();
+
+	private final AtomicLong version = new AtomicLong();
+
+	public VersionedCaffeineCache(String name, Cache<Object, Object> cache, boolean allowNullValues) {
+		super(name, cache, allowNullValues);
+	}
+
+	// Called before the entries a commit changes are dropped
+	public void invalidateReads() {
+		version.incrementAndGet();
+	}
+
+	@Override
+	protected Object lookup(Object key) {
+		LAST_LOOKUP.set(new Object[] { this, key, version.get() });
+		return super.lookup(key);
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		Object[] lookup = LAST_LOOKUP.get();
+		if (lookup != null && lookup[0] == this && Objects.equals(lookup[1], key)) {
+			LAST_LOOKUP.remove();
+			if ((long) lookup[2] != version.get()) {
+				return;
+			}
+		}
+		super.put(key, value);
+	}
+
+}
@@ -1,15 +1,37 @@
 package com.example.demo.controller;
 
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.example.demo.dto.CsvProcessingResult;
+import com.example.demo.dto.IngestJobStatus;
+import com.example.demo.exceptions.InvalidRecordException;
 import com.example.demo.service.CSVProcessingService;
+import com.example.demo.service.FeedSchemaRegistry;
+import com.example.demo.service.IngestJobService;
+import com.example.demo.service.IngestScheduler;
+import com.example.demo.service.MemberExportService;
+import com.example.demo.service.MemberService;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 @RestController
 @RequestMapping("/api/csv")
@@ -18,8 +40,126 @@ public class CSVProcessingController {
 	@Autowired
 	private CSVProcessingService csvProcessingService;
 
+	@Autowired
+	private IngestJobService ingestJobService;
+
+	@Autowired
+	private MemberExportService memberExportService;
+
+	@Autowired
+	private MemberService memberService;
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	private static final String SUBMITTER_HEADER = "X-Submitter";
+
+	// Uploads run one after the other once csv.ingest.scheduler.max-concurrent are
+	// running, and are refused with 429 when the queue is full. The queue is fair
+	// between submitters, named by the X-Submitter header (the client address
+	// when it is missing). The header is not verified, a client can send any name
+	// or a new one per upload, so this only keeps well-behaved teams apart. Put
+	// the authenticated caller there at the gateway where that matters.
 	@PostMapping("/upload")
-	public ResponseEntity<CsvProcessingResult> upload(@RequestParam("file") MultipartFile file) {
-		return ResponseEntity.ok(csvProcessingService.processCsvFile(file));
+	public ResponseEntity<CsvProcessingResult> upload(@RequestParam("file") MultipartFile file,
+			@RequestParam(defaultValue = FeedSchemaRegistry.DEFAULT_FEED) String feed,
+			@RequestHeader(value = SUBMITTER_HEADER, required = false) String submitter, HttpServletRequest request) {
+		try (IngestScheduler.Permit permit = ingestScheduler.acquire(submitter(submitter, request))) {
+			return ResponseEntity.ok(csvProcessingService.processCsvFile(file, feed));
+		}
+	}
+
+	// Raw body upload for large files, the request body is streamed into the parser
+	// so the multipart size limits do not apply here
+	@PostMapping(value = "/upload-stream", consumes = { "text/csv", MediaType.APPLICATION_OCTET_STREAM_VALUE })
+	public ResponseEntity<CsvProcessingResult> uploadStream(InputStream body,
+			@RequestParam(defaultValue = FeedSchemaRegistry.DEFAULT_FEED) String feed,
+			@RequestHeader(value = SUBMITTER_HEADER, required = false) String submitter, HttpServletRequest request) {
+		try (IngestScheduler.Permit permit = ingestScheduler.acquire(submitter(submitter, request))) {
+			return ResponseEntity
+					.ok(csvProcessingService.processCsvStream(body,
+							csvProcessingService.createContext(feed, request.getContentLengthLong())));
+		}
+	}
+
+	// File already on the server, the path is relative to csv.ingest.local.base-dir
+	@PostMapping("/upload-local")
+	public ResponseEntity<CsvProcessingResult> uploadLocal(@RequestParam String path,
+			@RequestParam(defaultValue = FeedSchemaRegistry.DEFAULT_FEED) String feed,
+			@RequestHeader(value = SUBMITTER_HEADER, required = false) String submitter, HttpServletRequest request) {
+		try (IngestScheduler.Permit permit = ingestScheduler.acquire(submitter(submitter, request))) {
+			return ResponseEntity.ok(csvProcessingService.processLocalFile(path, feed));
+		}
+	}
+
+	// Background upload, returns the job id right away, progress is read from GET /jobs/{id}
+	@PostMapping(value = "/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	public ResponseEntity<IngestJobStatus> submitJob(@RequestParam("file") MultipartFile file,
+			@RequestParam(defaultValue = FeedSchemaRegistry.DEFAULT_FEED) String feed,
+			@RequestHeader(value = SUBMITTER_HEADER, required = false) String submitter, HttpServletRequest request) {
+		return ResponseEntity.status(HttpStatus.ACCEPTED)
+				.body(ingestJobService.submit(file, feed, submitter(submitter, request)));
+	}
+
+	@PostMapping(value = "/jobs", consumes = { "text/csv", MediaType.APPLICATION_OCTET_STREAM_VALUE })
+	public ResponseEntity<IngestJobStatus> submitJobStream(InputStream body,
+			@RequestParam(defaultValue = FeedSchemaRegistry.DEFAULT_FEED) String feed,
+			@RequestHeader(value = SUBMITTER_HEADER, required = false) String submitter, HttpServletRequest request) {
+		return ResponseEntity.status(HttpStatus.ACCEPTED)
+				.body(ingestJobService.submit(body, feed, submitter(submitter, request)));
+	}
+
+	@GetMapping("/jobs/{jobId}")
+	public ResponseEntity<IngestJobStatus> getJob(@PathVariable String jobId) {
+		return ResponseEntity.ok(ingestJobService.getStatus(jobId));
+	}
+
+	// Continues a failed job after its last checkpoint
+	@PostMapping("/jobs/{jobId}/resume")
+	public ResponseEntity<IngestJobStatus> resumeJob(@PathVariable String jobId,
+			@RequestHeader(value = SUBMITTER_HEADER, required = false) String submitter, HttpServletRequest request) {
+		return ResponseEntity.status(HttpStatus.ACCEPTED)
+				.body(ingestJobService.resume(jobId, submitter(submitter, request)));
+	}
+
+	// Gzip compressed CSV of the rows the job rejected: line, reason, message, fields
+	@GetMapping("/jobs/{jobId}/rejects")
+	public ResponseEntity<Resource> getJobRejects(@PathVariable String jobId) {
+		return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/gzip"))
+				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + jobId + "-rejects.csv.gz\"")
+				.body(new FileSystemResource(ingestJobService.getRejects(jobId)));
+	}
+
+	// The members table as CSV in the upload format, optionally only the members
+	// matching the given criteria. format is csv or gzip. 429 when too many
+	// exports are running.
+	@GetMapping("/export")
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) String startDate,
+			@RequestParam(required = false) String endDate, @RequestParam(required = false) String minSalary,
+			@RequestParam(required = false) String maxSalary, @RequestParam(required = false) String firstNamePrefix,
+			@RequestParam(required = false) String lastNamePrefix, @RequestParam(defaultValue = "csv") String format) {
+
+		if (!format.equals("csv") && !format.equals("gzip")) {
+			throw new InvalidRecordException("Unsupported format: " + format);
+		}
+		boolean gzip = format.equals("gzip");
+		LocalDate start = startDate == null ? null : memberService.parseDob(startDate);
+		LocalDate end = endDate == null ? null : memberService.parseDob(endDate);
+		BigDecimal min = minSalary == null ? null : memberService.parseSalary(minSalary);
+		BigDecimal max = maxSalary == null ? null : memberService.parseSalary(maxSalary);
+		MemberExportService.Filter filter = new MemberExportService.Filter(start, end, min, max, firstNamePrefix,
+				lastNamePrefix);
+
+		memberExportService.reserve();
+		StreamingResponseBody body = out -> memberExportService.export(filter, gzip, out);
+		return ResponseEntity.ok()
+				.contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.parseMediaType("text/csv"))
+				.header(HttpHeaders.CONTENT_DISPOSITION,
+						"attachment; filename=\"members.csv" + (gzip ? ".gz" : "") + "\"")
+				.body(body);
+	}
+
+	private static String submitter(String header, HttpServletRequest request) {
+		return header != null && !header.isBlank() ? header.trim() : request.getRemoteAddr();
 	}
 }
@@ -1,17 +1,29 @@
 package com.example.demo.controller;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.example.demo.dto.CacheStatsDto;
 import com.example.demo.dto.MemberDto;
+import com.example.demo.dto.MemberPage;
+import com.example.demo.dto.MemberSalaryDto;
+import com.example.demo.dto.MemberStatDto;
+import com.example.demo.dto.NameIndexStatsDto;
 import com.example.demo.entity.Member;
+import com.example.demo.exceptions.InvalidRecordException;
 import com.example.demo.service.MemberService;
 
 @RestController
@@ -56,4 +68,93 @@ public class MemberController {
 		return ResponseEntity.ok(memberService.getMembersBySalary(salary));
 	}
 
+	@GetMapping("/by-salary-range")
+	public ResponseEntity<List<MemberSalaryDto>> getMembersBySalaryRange(@RequestParam String minSalary,
+			@RequestParam String maxSalary, @RequestParam(defaultValue = "100") int limit) {
+
+		return ResponseEntity.ok(memberService.getMembersBySalaryRange(minSalary, maxSalary, limit));
+	}
+
+	@GetMapping("/top-salaries")
+	public ResponseEntity<List<MemberSalaryDto>> getTopSalaries(@RequestParam(defaultValue = "10") int limit) {
+
+		return ResponseEntity.ok(memberService.getTopSalaries(limit));
+	}
+
+	@GetMapping("/cache-stats")
+	public ResponseEntity<List<CacheStatsDto>> getCacheStats() {
+		return ResponseEntity.ok(memberService.getCacheStats());
+	}
+
+	@GetMapping("/name-index/stats")
+	public ResponseEntity<NameIndexStatsDto> getNameIndexStats() {
+		return ResponseEntity.ok(memberService.getNameIndexStats());
+	}
+
+	// Reads the members table again, returns once the new index is in use
+	@PostMapping("/name-index/rebuild")
+	public ResponseEntity<NameIndexStatsDto> rebuildNameIndex() {
+		return ResponseEntity.ok(memberService.rebuildNameIndex());
+	}
+
+	// Member counts and salary figures per city, company, age_band or salary_band,
+	// kept up to date by uploads. Give a dimension and value for a single bucket,
+	// e.g. ?dimension=city&value=Pune or ?dimension=age_band&value=30-39.
+	@GetMapping("/stats")
+	public ResponseEntity<Map<String, Map<String, MemberStatDto>>> getMemberStats(
+			@RequestParam(required = false) String dimension, @RequestParam(required = false) String value) {
+		return ResponseEntity.ok(memberService.getMemberStats(dimension, value));
+	}
+
+	// Computes the stats from the members table again, e.g. for members stored
+	// before the stats were kept
+	@PostMapping("/stats/rebuild")
+	public ResponseEntity<Map<String, Map<String, MemberStatDto>>> rebuildMemberStats() {
+		return ResponseEntity.ok(memberService.rebuildMemberStats());
+	}
+
+	// Members in name order with keyset pagination, pass nextToken back as after=
+	// (or previousToken as before=) to move between pages. The total is optional
+	// because counting a large table is slow.
+	@GetMapping("/page")
+	public ResponseEntity<MemberPage> getMembersPage(@RequestParam(required = false) String after,
+			@RequestParam(required = false) String before, @RequestParam(defaultValue = "20") int size,
+			@RequestParam(defaultValue = "false") boolean count) {
+
+		return ResponseEntity.ok(memberService.getMembersPage(after, before, size, count));
+	}
+
+	// Streaming versions of the dob range and salary endpoints for large results, the rows are
+	// written while they are read from the database. format is ndjson (one member
+	// per line) or json (a single array).
+	@GetMapping("/by-dob-range/stream")
+	public ResponseEntity<StreamingResponseBody> streamMembersByDobRange(@RequestParam String startDate,
+			@RequestParam String endDate, @RequestParam(defaultValue = "ndjson") String format) {
+
+		boolean ndjson = isNdjson(format);
+		LocalDate start = memberService.parseDob(startDate);
+		LocalDate end = memberService.parseDob(endDate);
+		StreamingResponseBody body = out -> memberService.writeMembersByDobRange(start, end, ndjson, out);
+		return ResponseEntity.ok().contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+				.body(body);
+	}
+
+	@GetMapping("/by-salary/stream")
+	public ResponseEntity<StreamingResponseBody> streamMembersBySalary(
+			@RequestParam(defaultValue = "20000") String salary, @RequestParam(defaultValue = "ndjson") String format) {
+
+		boolean ndjson = isNdjson(format);
+		BigDecimal minSalary = memberService.parseSalary(salary);
+		StreamingResponseBody body = out -> memberService.writeMembersBySalary(minSalary, ndjson, out);
+		return ResponseEntity.ok().contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+				.body(body);
+	}
+
+	private static boolean isNdjson(String format) {
+		if (!format.equals("ndjson") && !format.equals("json")) {
+			throw new InvalidRecordException("Unsupported format: " + format);
+		}
+		return format.equals("ndjson");
+	}
+
 }
\ No newline at end of file
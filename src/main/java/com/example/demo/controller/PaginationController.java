@@ -10,6 +10,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import com.example.demo.dto.MemberPage;
 import com.example.demo.entity.Member;
 import com.example.demo.service.MemberService;
 
@@ -35,4 +36,19 @@ public class PaginationController {
 		return "members";
 	}
 
+	// Same view with keyset pagination, the links carry a token instead of a page number
+	@GetMapping("/keyset")
+	public String getMembersKeyset(@RequestParam(required = false) String after,
+			@RequestParam(required = false) String before, @RequestParam(defaultValue = "10") int size, Model model) {
+
+		MemberPage members = memberService.getMembersPage(after, before, size, true);
+
+		model.addAttribute("keyset", true);
+		model.addAttribute("members", members);
+		model.addAttribute("size", size);
+		model.addAttribute("pageSizes", Arrays.asList(5, 10, 20, 50));
+
+		return "members";
+	}
+
 }
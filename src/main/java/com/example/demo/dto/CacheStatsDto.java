@@ -0,0 +1,16 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CacheStatsDto {
+
+	private String name;
+	private long size;
+	private long hitCount;
+	private long missCount;
+	private double hitRate;
+	private long evictionCount;
+}
@@ -9,5 +9,10 @@ public class CsvProcessingResult {
 
 	private int validCount;
 	private int invalidCount;
+	// Valid rows that were not inserted because the member is already stored
+	private int alreadyPresentCount;
+	// Valid rows that updated a stored member whose fields changed (csv.ingest.upsert),
+	// these are part of validCount
+	private int updatedCount;
 	private long processingTimeMs;
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.example.demo.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+// Column layout and validation rules of one partner feed, read from
+// src/main/resources/feeds/<name>.yml. Keys are written in kebab case there.
+@Data
+public class FeedSchemaDefinition {
+
+	private String name;
+
+	// Rows with fewer columns are rejected, also checked against the header
+	private int minColumns;
+
+	// Rules are applied in this order, the first failing rule rejects the row
+	private List<ColumnDefinition> columns = new ArrayList<>();
+
+	@Data
+	public static class ColumnDefinition {
+
+		// Position in the CSV row, starting at 0
+		private int index;
+
+		// Member property the value goes to, e.g. firstName, dob, address1
+		private String field;
+
+		private boolean required;
+
+		// string, date or decimal
+		private String type = "string";
+
+		// Date formats, the first one whose separator appears in the value is used
+		private List<String> formats = new ArrayList<>();
+
+		private boolean notInFuture;
+
+		private Integer maxAgeYears;
+
+		// Total and fraction digits of a decimal, the column is DECIMAL(12,2)
+		private int precision = 12;
+
+		private int scale = 2;
+
+		// Exact number of ASCII digits
+		private Integer digits;
+
+		// Allowed first characters when digits is set
+		private String firstDigitIn;
+
+		// Regular expression the whole value has to match
+		private String pattern;
+
+		// Used as "<message>: <value>" when digits or pattern fail
+		private String message;
+
+		// clean-address removes everything but letters, digits, whitespace and commas
+		private String transform;
+	}
+
+}
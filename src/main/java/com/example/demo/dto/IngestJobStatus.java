@@ -0,0 +1,35 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class IngestJobStatus {
+
+	private String jobId;
+	private String status;
+	private long bytesRead;
+	private long totalBytes;
+	private int rowsRead;
+	private int validCount;
+	private int invalidCount;
+	private int alreadyPresentCount;
+	private double rowsPerSecond;
+	private int batchesCommitted;
+	// Size of the next batch and average time and rows per second of the recent
+	// commits, see csv.ingest.batch.*
+	private int batchSize;
+	private double batchLatencyMs;
+	private double batchRowsPerSecond;
+	// Rejected rows written to the reject file so far, and rows left out because
+	// the file could not keep up
+	private long rejectsWritten;
+	private long rejectsDropped;
+	// Why the reject file is incomplete, the rows themselves were still processed
+	private String rejectsError;
+	// null while the job is queued or once it has finished
+	private Long etaSeconds;
+	private CsvProcessingResult result;
+	private String error;
+}
@@ -0,0 +1,22 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+import com.example.demo.entity.Member;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// One page of the keyset listing. The tokens are passed back as after= or
+// before= to get the next or previous page, they are null when there is none.
+@Data
+@AllArgsConstructor
+public class MemberPage {
+
+	private List<Member> content;
+	private int size;
+	private String nextToken;
+	private String previousToken;
+	// Only filled in when asked for, may be up to member.page.count-cache-seconds old
+	private Long totalItems;
+}
@@ -1,5 +1,6 @@
 package com.example.demo.dto;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 
 import lombok.AllArgsConstructor;
@@ -15,5 +16,5 @@ public class MemberSalaryDto {
     private LocalDate dob;
     private String gender;
     private String city;
-    private String monthlySalary;
+    private BigDecimal monthlySalary;
 }
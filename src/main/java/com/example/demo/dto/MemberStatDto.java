@@ -0,0 +1,18 @@
+package com.example.demo.dto;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class MemberStatDto {
+
+	private long members;
+	// Salary figures cover the members with a salary, null when there are none
+	private BigDecimal salarySum;
+	private BigDecimal salaryMin;
+	private BigDecimal salaryMax;
+	private BigDecimal salaryAverage;
+}
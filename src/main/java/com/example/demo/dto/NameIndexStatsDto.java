@@ -0,0 +1,19 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class NameIndexStatsDto {
+
+	private boolean enabled;
+	// false while the index is being built, queries go to the database meanwhile
+	private boolean ready;
+	private int members;
+	// Members added since the sorted arrays were last merged
+	private int pendingMembers;
+	private long estimatedBytes;
+	private long lastRebuildMs;
+	private long merges;
+}
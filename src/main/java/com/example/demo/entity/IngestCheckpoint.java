@@ -0,0 +1,56 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// How far a background ingest job got, see IngestCheckpointer. The row is
+// removed once the job has completed, so every row is a job that can be resumed.
+@Entity
+@Table(name = "ingest_checkpoints")
+@Data
+@NoArgsConstructor
+public class IngestCheckpoint {
+
+	public static final String QUEUED = "QUEUED";
+	public static final String RUNNING = "RUNNING";
+	public static final String FAILED = "FAILED";
+
+	@Id
+	private String jobId;
+	private String feed;
+	private long totalBytes;
+	private String status;
+
+	// Last line of the file (the header is line 1) whose rows are all decided and
+	// committed, 0 when the job has to start from the beginning
+	private long lineNumber;
+	// Where the line after lineNumber starts in the spool file
+	private long byteOffset;
+
+	// Counters of the job at lineNumber
+	private int validCount;
+	private int invalidCount;
+	private int alreadyPresentCount;
+	private int updatedCount;
+	private int batchesCommitted;
+
+	// Number of duplicate check keys in the keys file that belong to the lines above
+	private long keyCount;
+
+	// Times the job has started running, see csv.jobs.max-attempts
+	private int attempts;
+
+	private long updatedAt;
+
+	public IngestCheckpoint(String jobId, String feed, long totalBytes) {
+		this.jobId = jobId;
+		this.feed = feed;
+		this.totalBytes = totalBytes;
+		this.status = QUEUED;
+		this.updatedAt = System.currentTimeMillis();
+	}
+
+}
@@ -1,14 +1,29 @@
 package com.example.demo.entity;
 
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import jakarta.persistence.Column;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "members")
+// Hibernate creates the primary key as (dob, gender, first_name, last_name), not
+// in the field order of MemberId: its column ordering puts the date before the
+// strings and shorter strings first. The export reads in that order, see
+// MemberExportRepository.KEY_ORDER. The extra index gives the listing its name
+// order so pages can seek instead of using OFFSET.
+// Salary range and top-N queries read the salary index instead of the whole table.
+@Table(name = "members", indexes = {
+		@Index(name = "idx_members_name_order", columnList = "first_name, last_name, dob, gender"),
+		@Index(name = "idx_members_monthly_salary", columnList = "monthly_salary") })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -24,5 +39,12 @@ public class Member {
 	private String city;
 	private String mobile;
 	private String company;
-    private String monthlySalary; 
+	// DECIMAL(12,2), see db/monthly_salary_to_decimal.sql for existing tables
+	@Column(name = "monthly_salary", precision = 12, scale = 2)
+	private BigDecimal monthlySalary;
+	// Hash of the fields above (not the key) as uploaded, tells a changed row of a
+	// re-sent file from an unchanged one. NULL for rows stored before it was kept.
+	@JsonIgnore
+	@EqualsAndHashCode.Exclude
+	private Long rowHash;
 }
\ No newline at end of file
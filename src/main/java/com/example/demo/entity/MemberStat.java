@@ -0,0 +1,34 @@
+package com.example.demo.entity;
+
+import java.math.BigDecimal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Running totals of the members in one bucket of a dimension, e.g. city = Pune.
+// Uploads add to these rows in the transaction that inserts the members, see
+// MemberStatsService.
+@Entity
+@Table(name = "member_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemberStat {
+
+	@EmbeddedId
+	private MemberStatId id;
+	private long memberCount;
+	// Salary figures of the members with a salary
+	private long salaryCount;
+	@Column(precision = 19, scale = 2)
+	private BigDecimal salarySum;
+	@Column(precision = 12, scale = 2)
+	private BigDecimal salaryMin;
+	@Column(precision = 12, scale = 2)
+	private BigDecimal salaryMax;
+}
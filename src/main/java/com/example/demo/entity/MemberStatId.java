@@ -0,0 +1,23 @@
+package com.example.demo.entity;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Embeddable
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemberStatId implements Serializable {
+
+	// city, company, birth_year or salary_band
+	@Column(name = "dimension", nullable = false, length = 20)
+	private String dimension;
+
+	@Column(name = "bucket", nullable = false, length = 255)
+	private String bucket;
+}
@@ -1,6 +1,7 @@
 package com.example.demo.exceptions;
 
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -15,6 +16,30 @@ public class GlobalExceptionHandler {
 
 	}
 
+	@ExceptionHandler(IngestJobNotFoundException.class)
+	public ResponseEntity<String> handleIngestJobNotFoundException(IngestJobNotFoundException ex) {
+		return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
+
+	}
+
+	@ExceptionHandler(IngestJobNotFinishedException.class)
+	public ResponseEntity<String> handleIngestJobNotFinishedException(IngestJobNotFinishedException ex) {
+		return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+
+	}
+
+	@ExceptionHandler(LocalFileNotAllowedException.class)
+	public ResponseEntity<String> handleLocalFileNotAllowedException(LocalFileNotAllowedException ex) {
+		return new ResponseEntity<>(ex.getMessage(), HttpStatus.FORBIDDEN);
+
+	}
+
+	@ExceptionHandler(IngestBusyException.class)
+	public ResponseEntity<String> handleIngestBusyException(IngestBusyException ex) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds())).body(ex.getMessage());
+	}
+
 	@ExceptionHandler(InvalidRecordException.class)
 	public ResponseEntity<String> handleInvalidRecordException(InvalidRecordException ex) {
 		return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
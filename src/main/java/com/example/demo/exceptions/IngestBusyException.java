@@ -0,0 +1,18 @@
+package com.example.demo.exceptions;
+
+// The ingest queue or the export slots are full, the client should try again
+// after retryAfterSeconds
+public class IngestBusyException extends RuntimeException {
+
+	private final long retryAfterSeconds;
+
+	public IngestBusyException(String message, long retryAfterSeconds) {
+		super(message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+}
@@ -0,0 +1,9 @@
+package com.example.demo.exceptions;
+
+public class IngestJobNotFinishedException extends RuntimeException {
+
+	public IngestJobNotFinishedException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,9 @@
+package com.example.demo.exceptions;
+
+public class IngestJobNotFoundException extends RuntimeException {
+
+	public IngestJobNotFoundException(String message) {
+		super(message);
+	}
+
+}
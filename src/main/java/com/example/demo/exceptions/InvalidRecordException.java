@@ -1,7 +1,24 @@
 package com.example.demo.exceptions;
 
+// Thrown for every rejected row during an upload, so no stack trace is captured.
+// The message says everything about the problem, the rule names the check that
+// failed and is used as a metric tag.
 public class InvalidRecordException extends RuntimeException {
+
+    public static final String OTHER = "other";
+
+    private final String rule;
+
     public InvalidRecordException(String message) {
-        super(message);
+        this(message, OTHER);
+    }
+
+    public InvalidRecordException(String message, String rule) {
+        super(message, null, false, false);
+        this.rule = rule;
+    }
+
+    public String getRule() {
+        return rule;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,9 @@
+package com.example.demo.exceptions;
+
+public class LocalFileNotAllowedException extends RuntimeException {
+
+	public LocalFileNotAllowedException(String message) {
+		super(message);
+	}
+
+}
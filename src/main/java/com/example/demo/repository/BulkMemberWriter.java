@@ -0,0 +1,19 @@
+package com.example.demo.repository;
+
+import java.util.List;
+
+import com.example.demo.entity.Member;
+
+// A way of getting a batch of members into the members table. Rows whose key
+// already exists are skipped by write and updated by upsert. The strategy used is
+// chosen with csv.ingest.writer.
+public interface BulkMemberWriter {
+
+	// Value of csv.ingest.writer that selects this writer
+	String getName();
+
+	void write(List<Member> members);
+
+	void upsert(List<Member> members);
+
+}
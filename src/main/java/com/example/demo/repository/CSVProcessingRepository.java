@@ -1,51 +1,231 @@
 package com.example.demo.repository;
 
-import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.example.demo.dto.MemberDto;
 import com.example.demo.entity.Member;
 import com.example.demo.entity.MemberId;
+import com.example.demo.entity.MemberStat;
+
+import jakarta.annotation.PostConstruct;
 
 @Repository
 public class CSVProcessingRepository {
 
+	// Keys looked up per SELECT of findForStats, 4 placeholders each
+	private static final int STATS_KEYS_PER_SELECT = 1000;
+
+	@Autowired
+	private List<BulkMemberWriter> writers;
+
+	// jdbc-batch, multi-row or load-data
+	@Value("${csv.ingest.writer:jdbc-batch}")
+	private String writerName;
+
+	// Stored members are updated instead of skipped
+	@Value("${csv.ingest.upsert:false}")
+	private boolean upsert;
+
 	@Autowired
 	private JdbcTemplate jdbcTemplate;
 
-	// This is batch insert method,here i am inserting records batch-wise
+	private BulkMemberWriter writer;
+
+	// Adds the stats of a batch to the member_stats rows, creating missing ones.
+	// The rows are locked in the order given, callers pass them sorted so that
+	// two writers never wait on each other in opposite order.
+	private String mergeStatsSql;
+
+	@PostConstruct
+	void selectWriter() {
+		writer = writers.stream().filter(w -> w.getName().equals(writerName)).findFirst()
+				.orElseThrow(() -> new IllegalStateException("Unknown csv.ingest.writer: " + writerName));
+		mergeStatsSql = mergeStatsSql(MemberColumns.supportsRowAlias(jdbcTemplate));
+	}
+
+	private static String mergeStatsSql(boolean rowAlias) {
+		Function<String, String> inserted = column -> MemberColumns.inserted(column, rowAlias);
+		return "INSERT INTO member_stats (dimension, bucket, member_count, salary_count, salary_sum, salary_min, "
+				+ "salary_max) VALUES (?, ?, ?, ?, ?, ?, ?)" + MemberColumns.rowAlias(rowAlias)
+				+ " ON DUPLICATE KEY UPDATE "
+				+ "member_count = member_count + " + inserted.apply("member_count") + ", "
+				+ "salary_count = salary_count + " + inserted.apply("salary_count") + ", "
+				+ "salary_sum = COALESCE(salary_sum + " + inserted.apply("salary_sum") + ", salary_sum, "
+				+ inserted.apply("salary_sum") + "), "
+				+ "salary_min = COALESCE(LEAST(salary_min, " + inserted.apply("salary_min") + "), salary_min, "
+				+ inserted.apply("salary_min") + "), "
+				+ "salary_max = COALESCE(GREATEST(salary_max, " + inserted.apply("salary_max") + "), salary_max, "
+				+ inserted.apply("salary_max") + ")";
+	}
+
+	// This is batch insert method,here i am inserting records batch-wise using the
+	// configured writer. The stats of the batch are added in the same transaction:
+	// the stored members with the given keys are read first, and statsOf turns
+	// them into the stats to add. In upsert mode they stay locked, so no other
+	// transaction changes them before the batch replaces them. Returns the stats.
 	@Transactional
-	public void batchInsert(List<Member> members) {
-
-		String sql = """
-				INSERT IGNORE INTO members (
-				    first_name, last_name, dob, gender,
-				    member_id, education, house_number,
-				    address1, address2, pin_code,
-				    city, mobile, company, monthly_salary
-				) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-				""";
-		jdbcTemplate.batchUpdate(sql, members, members.size(), (ps, member) -> {
-			MemberId uniqId = member.getUniqId();
-			ps.setString(1, uniqId.getFirstName());
-			ps.setString(2, uniqId.getLastName());
-			ps.setDate(3, Date.valueOf(uniqId.getDob()));
-			ps.setString(4, uniqId.getGender());
-			ps.setString(5, member.getMemberId());
-			ps.setString(6, member.getEducation());
-			ps.setString(7, member.getHouseNumber());
-			ps.setString(8, member.getAddress1());
-			ps.setString(9, member.getAddress2());
-			ps.setString(10, member.getPinCode());
-			ps.setString(11, member.getCity());
-			ps.setString(12, member.getMobile());
-			ps.setString(13, member.getCompany());
-			ps.setString(14, member.getMonthlySalary());
+	public List<MemberStat> batchInsert(List<Member> members, List<MemberId> storedKeys,
+			Function<List<Member>, List<MemberStat>> statsOf) {
+		List<MemberStat> stats = statsOf.apply(findForStats(storedKeys, upsert));
+		if (upsert) {
+			writer.upsert(members);
+		} else {
+			writer.write(members);
+		}
+		if (!stats.isEmpty()) {
+			jdbcTemplate.batchUpdate(mergeStatsSql, stats, stats.size(), this::setStat);
+		}
+		return stats;
+	}
+
+	// Replaces all stats rows, used when they are computed again from the members table
+	@Transactional
+	public void replaceStats(Collection<MemberStat> stats) {
+		jdbcTemplate.update("DELETE FROM member_stats");
+		jdbcTemplate.batchUpdate(mergeStatsSql, stats, 1000, this::setStat);
+	}
+
+	private void setStat(PreparedStatement ps, MemberStat stat) throws SQLException {
+		ps.setString(1, stat.getId().getDimension());
+		ps.setString(2, stat.getId().getBucket());
+		ps.setLong(3, stat.getMemberCount());
+		ps.setLong(4, stat.getSalaryCount());
+		ps.setBigDecimal(5, stat.getSalarySum());
+		ps.setBigDecimal(6, stat.getSalaryMin());
+		ps.setBigDecimal(7, stat.getSalaryMax());
+	}
+
+	public long countMembers() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Long.class);
+	}
+
+	// Streams the primary key of every member to the action without loading the
+	// whole table. The fetch size is only a hint, on MySQL the rows are streamed
+	// when useCursorFetch=true is set in the URL. The MemberId passed to the
+	// action is reused for the next row.
+	public void forEachMemberKey(int fetchSize, Consumer<MemberId> action) {
+		MemberId id = new MemberId();
+		jdbcTemplate.query(con -> {
+			PreparedStatement ps = con.prepareStatement("SELECT first_name, last_name, dob, gender FROM members",
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			return ps;
+		}, rs -> {
+			id.setFirstName(rs.getString(1));
+			id.setLastName(rs.getString(2));
+			id.setDob(rs.getObject(3, LocalDate.class));
+			id.setGender(rs.getString(4));
+			action.accept(id);
+		});
+	}
+
+	// Streams the key and row hash of every member the same way, the hash is null
+	// for rows stored before it was kept
+	public void forEachMemberRowHash(int fetchSize, BiConsumer<MemberId, Long> action) {
+		MemberId id = new MemberId();
+		jdbcTemplate.query(con -> {
+			PreparedStatement ps = con.prepareStatement(
+					"SELECT first_name, last_name, dob, gender, row_hash FROM members", ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			return ps;
+		}, rs -> {
+			id.setFirstName(rs.getString(1));
+			id.setLastName(rs.getString(2));
+			id.setDob(rs.getObject(3, LocalDate.class));
+			id.setGender(rs.getString(4));
+			action.accept(id, rs.getObject(5, Long.class));
+		});
+	}
+
+	// Streams the fields of MemberDto for every member, the same way as above
+	public void forEachMemberSummary(int fetchSize, Consumer<MemberDto> action) {
+		jdbcTemplate.query(con -> {
+			PreparedStatement ps = con.prepareStatement(
+					"SELECT member_id, first_name, last_name, dob, gender, city FROM members",
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			return ps;
+		}, rs -> {
+			action.accept(new MemberDto(rs.getString(1), rs.getString(2), rs.getString(3),
+					rs.getObject(4, LocalDate.class), rs.getString(5), rs.getString(6)));
 		});
 	}
 
+	// Streams the fields the member stats are built from, the Member passed to the
+	// action only has those fields set and is reused for the next row
+	public void forEachMemberForStats(int fetchSize, Consumer<Member> action) {
+		Member member = new Member();
+		member.setUniqId(new MemberId());
+		jdbcTemplate.query(con -> {
+			PreparedStatement ps = con.prepareStatement("SELECT dob, city, company, monthly_salary FROM members",
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			return ps;
+		}, rs -> {
+			member.getUniqId().setDob(rs.getObject(1, LocalDate.class));
+			member.setCity(rs.getString(2));
+			member.setCompany(rs.getString(3));
+			member.setMonthlySalary(rs.getBigDecimal(4));
+			action.accept(member);
+		});
+	}
+
+	// The fields the member stats are built from for the given stored members, in
+	// no particular order, read STATS_KEYS_PER_SELECT keys at a time. With lock the
+	// rows stay locked until the transaction ends, on MySQL so do the gaps of keys
+	// that are not stored, so callers only pass keys they expect to be stored.
+	private List<Member> findForStats(List<MemberId> ids, boolean lock) {
+		List<Member> stored = new ArrayList<>();
+		for (int from = 0; from < ids.size(); from += STATS_KEYS_PER_SELECT) {
+			List<MemberId> keys = ids.subList(from, Math.min(from + STATS_KEYS_PER_SELECT, ids.size()));
+			String sql = "SELECT first_name, last_name, dob, gender, city, company, monthly_salary FROM members "
+					+ "WHERE (first_name, last_name, dob, gender) IN ("
+					+ String.join(", ", Collections.nCopies(keys.size(), "(?, ?, ?, ?)")) + ")"
+					+ (lock ? " FOR UPDATE" : "");
+			stored.addAll(jdbcTemplate.query(sql, ps -> {
+				int index = 1;
+				for (MemberId id : keys) {
+					ps.setString(index++, id.getFirstName());
+					ps.setString(index++, id.getLastName());
+					ps.setObject(index++, id.getDob());
+					ps.setString(index++, id.getGender());
+				}
+			}, (rs, row) -> {
+				Member member = new Member();
+				member.setUniqId(new MemberId(rs.getString(1), rs.getString(2), rs.getObject(3, LocalDate.class),
+						rs.getString(4)));
+				member.setCity(rs.getString(5));
+				member.setCompany(rs.getString(6));
+				member.setMonthlySalary(rs.getBigDecimal(7));
+				return member;
+			}));
+		}
+		return stored;
+	}
+
+	public String getWriterName() {
+		return writer.getName();
+	}
+
+	public boolean isUpsert() {
+		return upsert;
+	}
+
 }
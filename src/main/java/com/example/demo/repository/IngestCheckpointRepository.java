@@ -0,0 +1,37 @@
+package com.example.demo.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.entity.IngestCheckpoint;
+
+@Repository
+public interface IngestCheckpointRepository extends JpaRepository<IngestCheckpoint, String> {
+
+	List<IngestCheckpoint> findByStatusIn(Collection<String> statuses);
+
+	List<IngestCheckpoint> findByStatusAndUpdatedAtLessThan(String status, long updatedAt);
+
+	// Changes the status only if it still is the expected one, returns 0 if
+	// another request changed it first
+	@Transactional
+	@Modifying
+	@Query("UPDATE IngestCheckpoint c SET c.status = :to, c.updatedAt = :now WHERE c.jobId = :jobId AND c.status = :from")
+	int updateStatus(@Param("jobId") String jobId, @Param("from") String from, @Param("to") String to,
+			@Param("now") long now);
+
+	// Deletes a failed job that has not been touched since the given time, 0 if
+	// it was resumed in the meantime
+	@Transactional
+	@Modifying
+	@Query("DELETE FROM IngestCheckpoint c WHERE c.jobId = :jobId AND c.status = 'FAILED' AND c.updatedAt < :before")
+	int deleteExpired(@Param("jobId") String jobId, @Param("before") long before);
+
+}
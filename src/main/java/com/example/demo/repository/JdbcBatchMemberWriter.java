@@ -0,0 +1,48 @@
+package com.example.demo.repository;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.entity.Member;
+
+import jakarta.annotation.PostConstruct;
+
+// One INSERT IGNORE (or INSERT ... ON DUPLICATE KEY UPDATE) per row sent as a JDBC batch. On MySQL this needs
+// rewriteBatchedStatements=true in the URL, otherwise every row is its own round trip.
+@Repository
+public class JdbcBatchMemberWriter implements BulkMemberWriter {
+
+	private static final String SQL = "INSERT IGNORE INTO members (" + MemberColumns.COLUMNS + ") VALUES "
+			+ MemberColumns.ROW;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private String upsertSql;
+
+	@PostConstruct
+	void buildUpsertSql() {
+		boolean rowAlias = MemberColumns.supportsRowAlias(jdbcTemplate);
+		upsertSql = "INSERT INTO members (" + MemberColumns.COLUMNS + ") VALUES " + MemberColumns.ROW
+				+ MemberColumns.rowAlias(rowAlias) + " ON DUPLICATE KEY UPDATE " + MemberColumns.updateAll(rowAlias);
+	}
+
+	@Override
+	public String getName() {
+		return "jdbc-batch";
+	}
+
+	@Override
+	public void write(List<Member> members) {
+		jdbcTemplate.batchUpdate(SQL, members, members.size(), (ps, member) -> MemberColumns.bind(ps, 1, member));
+	}
+
+	@Override
+	public void upsert(List<Member> members) {
+		jdbcTemplate.batchUpdate(upsertSql, members, members.size(), (ps, member) -> MemberColumns.bind(ps, 1, member));
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.example.demo.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+
+// MySQL only: the batch is written as tab separated text into a memory buffer and
+// sent with LOAD DATA LOCAL INFILE, nothing touches the disk. Needs local_infile=ON
+// on the server, the driver side is enabled by LocalInfileConfig.
+//
+// The stream is handed over with Connector/J's JdbcStatement, which is looked up
+// at runtime so the driver stays a runtime dependency.
+// Upserts use REPLACE, which deletes the stored row and inserts the new one.
+@Repository
+public class LoadDataMemberWriter implements BulkMemberWriter {
+
+	private static final String SQL = sql("IGNORE");
+	private static final String UPSERT_SQL = sql("REPLACE");
+
+	// Connector/J's statement type and its setLocalInfileInputStream, null without the driver
+	private static final Class<?> MYSQL_STATEMENT = mysqlStatement();
+	private static final MethodHandle SET_INPUT = localInfileSetter(MYSQL_STATEMENT);
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public String getName() {
+		return "load-data";
+	}
+
+	private static String sql(String duplicates) {
+		return "LOAD DATA LOCAL INFILE 'members.tsv' " + duplicates + " INTO TABLE members "
+				+ "CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' ("
+				+ MemberColumns.COLUMNS + ")";
+	}
+
+	@Override
+	public void write(List<Member> members) {
+		load(members, SQL);
+	}
+
+	@Override
+	public void upsert(List<Member> members) {
+		load(members, UPSERT_SQL);
+	}
+
+	private void load(List<Member> members, String sql) {
+		byte[] data = toTsv(members);
+		jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+			try (Statement st = con.createStatement()) {
+				setLocalInfile(st, new ByteArrayInputStream(data));
+				st.execute(sql);
+			}
+			return null;
+		});
+	}
+
+	private static Class<?> mysqlStatement() {
+		try {
+			return Class.forName("com.mysql.cj.jdbc.JdbcStatement");
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	private static MethodHandle localInfileSetter(Class<?> type) {
+		if (type == null) {
+			return null;
+		}
+		try {
+			return MethodHandles.publicLookup()
+					.findVirtual(type, "setLocalInfileInputStream", MethodType.methodType(void.class, InputStream.class))
+					.asType(MethodType.methodType(void.class, Object.class, InputStream.class));
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static void setLocalInfile(Statement st, InputStream data) throws SQLException {
+		if (SET_INPUT == null) {
+			throw new SQLException("The load-data writer needs MySQL Connector/J");
+		}
+		Object mysqlStatement = st.unwrap(MYSQL_STATEMENT);
+		try {
+			SET_INPUT.invokeExact(mysqlStatement, data);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new SQLException("Could not pass the batch to LOAD DATA", e);
+		}
+	}
+
+	private static byte[] toTsv(List<Member> members) {
+		StringBuilder sb = new StringBuilder(members.size() * 160);
+		for (Member member : members) {
+			MemberId uniqId = member.getUniqId();
+			append(sb, uniqId.getFirstName()).append('\t');
+			append(sb, uniqId.getLastName()).append('\t');
+			sb.append(uniqId.getDob()).append('\t');
+			append(sb, uniqId.getGender()).append('\t');
+			append(sb, member.getMemberId()).append('\t');
+			append(sb, member.getEducation()).append('\t');
+			append(sb, member.getHouseNumber()).append('\t');
+			append(sb, member.getAddress1()).append('\t');
+			append(sb, member.getAddress2()).append('\t');
+			append(sb, member.getPinCode()).append('\t');
+			append(sb, member.getCity()).append('\t');
+			append(sb, member.getMobile()).append('\t');
+			append(sb, member.getCompany()).append('\t');
+			BigDecimal salary = member.getMonthlySalary();
+			append(sb, salary != null ? salary.toPlainString() : null).append('\t');
+			append(sb, member.getRowHash() != null ? member.getRowHash().toString() : null).append('\n');
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	// Escapes the characters that have a meaning in the LOAD DATA format, null becomes \N
+	private static StringBuilder append(StringBuilder sb, String value) {
+		if (value == null) {
+			return sb.append("\\N");
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\' -> sb.append("\\\\");
+			case '\t' -> sb.append("\\t");
+			case '\n' -> sb.append("\\n");
+			case '\r' -> sb.append("\\r");
+			default -> sb.append(c);
+			}
+		}
+		return sb;
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.example.demo.repository;
+
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+
+// Column list of the members table in the order used by all bulk writers
+final class MemberColumns {
+
+	static final String COLUMNS = """
+			first_name, last_name, dob, gender,
+			member_id, education, house_number,
+			address1, address2, pin_code,
+			city, mobile, company, monthly_salary,
+			row_hash""";
+
+	static final int COUNT = 15;
+
+	// Columns outside the key, set from the inserted row by the upserts
+	private static final String[] UPDATED = { "member_id", "education", "house_number", "address1", "address2",
+			"pin_code", "city", "mobile", "company", "monthly_salary", "row_hash" };
+
+	// Placeholders of one row
+	static final String ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private MemberColumns() {
+	}
+
+	// MySQL 8.0.19 and later name the inserted row with an alias, VALUES() is
+	// deprecated there. H2 in the tests only knows VALUES().
+	static boolean supportsRowAlias(JdbcTemplate jdbcTemplate) {
+		return jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> supportsRowAlias(con.getMetaData()));
+	}
+
+	private static boolean supportsRowAlias(DatabaseMetaData metaData) throws SQLException {
+		if (!metaData.getDatabaseProductName().equals("MySQL")) {
+			return false;
+		}
+		String[] version = metaData.getDatabaseProductVersion().split("[.-]");
+		int major = Integer.parseInt(version[0]);
+		int minor = Integer.parseInt(version[1]);
+		int patch = Integer.parseInt(version[2]);
+		return major > 8 || major == 8 && (minor > 0 || patch >= 19);
+	}
+
+	// Goes after the VALUES of an INSERT ... ON DUPLICATE KEY UPDATE
+	static String rowAlias(boolean rowAlias) {
+		return rowAlias ? " AS new" : "";
+	}
+
+	// A column of the inserted row in the ON DUPLICATE KEY UPDATE part
+	static String inserted(String column, boolean rowAlias) {
+		return rowAlias ? "new." + column : "VALUES(" + column + ")";
+	}
+
+	// ON DUPLICATE KEY UPDATE part of the upsert statements, every column outside the key
+	static String updateAll(boolean rowAlias) {
+		StringBuilder sql = new StringBuilder();
+		for (String column : UPDATED) {
+			sql.append(sql.isEmpty() ? "" : ", ").append(column).append(" = ").append(inserted(column, rowAlias));
+		}
+		return sql.toString();
+	}
+
+	// Sets the 15 column values of a member starting at the given parameter index
+	static void bind(PreparedStatement ps, int first, Member member) throws SQLException {
+		MemberId uniqId = member.getUniqId();
+		ps.setString(first, uniqId.getFirstName());
+		ps.setString(first + 1, uniqId.getLastName());
+		ps.setDate(first + 2, Date.valueOf(uniqId.getDob()));
+		ps.setString(first + 3, uniqId.getGender());
+		ps.setString(first + 4, member.getMemberId());
+		ps.setString(first + 5, member.getEducation());
+		ps.setString(first + 6, member.getHouseNumber());
+		ps.setString(first + 7, member.getAddress1());
+		ps.setString(first + 8, member.getAddress2());
+		ps.setString(first + 9, member.getPinCode());
+		ps.setString(first + 10, member.getCity());
+		ps.setString(first + 11, member.getMobile());
+		ps.setString(first + 12, member.getCompany());
+		ps.setBigDecimal(first + 13, member.getMonthlySalary());
+		ps.setObject(first + 14, member.getRowHash(), Types.BIGINT);
+	}
+
+}
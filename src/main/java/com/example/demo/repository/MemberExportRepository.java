@@ -0,0 +1,76 @@
+package com.example.demo.repository;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+// Plain JDBC reads for the CSV export, rows go straight from the result set to
+// the caller without building entities
+@Repository
+public class MemberExportRepository {
+
+	// In the column order of the upload format
+	public static final String COLUMNS = "member_id, first_name, last_name, dob, gender, education, house_number, "
+			+ "address1, address2, city, pin_code, mobile, company, monthly_salary";
+
+	// Columns of the primary key in the order of the index, see Member
+	public static final String KEY_ORDER = "dob, gender, first_name, last_name";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	// Lowest and highest date of birth in the table, null when it is empty. dob
+	// leads the primary key, so this is read from the index.
+	public LocalDate[] findDobBounds() {
+		return jdbcTemplate.queryForObject("SELECT MIN(dob), MAX(dob) FROM members",
+				(rs, row) -> rs.getObject(1) == null ? null
+						: new LocalDate[] { rs.getObject(1, LocalDate.class), rs.getObject(2, LocalDate.class) });
+	}
+
+	// Streams the members with fromDob <= dob < toDob matching the other criteria
+	// (null for no limit) in primary key order. The prefixes match literally,
+	// % and _ in them are escaped. The fetch size is only a hint, on MySQL the
+	// rows are streamed when useCursorFetch=true is set in the URL.
+	public void forEachMemberInDobRange(LocalDate fromDob, LocalDate toDob, BigDecimal minSalary, BigDecimal maxSalary,
+			String firstNamePrefix, String lastNamePrefix, int fetchSize, RowCallbackHandler handler) {
+		StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+				.append(" FROM members WHERE dob >= ? AND dob < ?");
+		List<Object> args = new ArrayList<>(List.of(fromDob, toDob));
+		if (minSalary != null) {
+			sql.append(" AND monthly_salary >= ?");
+			args.add(minSalary);
+		}
+		if (maxSalary != null) {
+			sql.append(" AND monthly_salary <= ?");
+			args.add(maxSalary);
+		}
+		if (firstNamePrefix != null) {
+			sql.append(" AND first_name LIKE ? ESCAPE '" + MemberRepository.LIKE_ESCAPE + "'");
+			args.add(MemberRepository.startsWith(firstNamePrefix));
+		}
+		if (lastNamePrefix != null) {
+			sql.append(" AND last_name LIKE ? ESCAPE '" + MemberRepository.LIKE_ESCAPE + "'");
+			args.add(MemberRepository.startsWith(lastNamePrefix));
+		}
+		sql.append(" ORDER BY ").append(KEY_ORDER);
+
+		jdbcTemplate.query(con -> {
+			PreparedStatement ps = con.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			for (int i = 0; i < args.size(); i++) {
+				ps.setObject(i + 1, args.get(i));
+			}
+			return ps;
+		}, handler);
+	}
+
+}
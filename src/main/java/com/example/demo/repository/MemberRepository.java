@@ -1,29 +1,54 @@
 package com.example.demo.repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.example.demo.config.CacheConfig;
 import com.example.demo.dto.MemberDto;
 import com.example.demo.dto.MemberSalaryDto;
 import com.example.demo.entity.Member;
 import com.example.demo.entity.MemberId;
 
+import jakarta.persistence.QueryHint;
+
 @Repository
 public interface MemberRepository extends JpaRepository<Member, MemberId> {
 
+	// The name lookups are cached, also when nothing is found. Entries are dropped
+	// by MemberCacheEvictor when an upload commits members they would match.
+	@Cacheable(CacheConfig.MEMBERS_BY_FIRST_NAME)
 	List<Member> findByUniqId_FirstName(String firstName);
 
+	@Cacheable(CacheConfig.MEMBERS_BY_LAST_NAME)
 	List<Member> findByUniqId_LastName(String lastName);
 
-	// Selecting specific fields with dynamic parameters
+	// Escape character of the LIKE queries below. Not \ because its meaning in
+	// string literals differs between databases.
+	char LIKE_ESCAPE = '!';
+
+	// LIKE pattern matching values that start with prefix, %, _ and ! in the
+	// prefix match only themselves
+	static String startsWith(String prefix) {
+		return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+	}
+
+	// Selecting specific fields with dynamic parameters, see startsWith
+	@Cacheable(cacheNames = CacheConfig.MEMBERS_BY_NAME_PATTERN, key = "{#p0, #p1}")
 	@Query("SELECT NEW com.example.demo.dto.MemberDto(" + "m.memberId, m.uniqId.firstName, m.uniqId.lastName, "
 			+ "m.uniqId.dob, m.uniqId.gender, m.city) " + "FROM Member m "
-			+ "WHERE m.uniqId.firstName LIKE :firstNamePattern " + "AND m.uniqId.lastName LIKE :lastNamePattern")
+			+ "WHERE m.uniqId.firstName LIKE :firstNamePattern ESCAPE '!' "
+			+ "AND m.uniqId.lastName LIKE :lastNamePattern ESCAPE '!'")
 	List<MemberDto> findMembersByNamePattern(@Param("firstNamePattern") String firstNamePattern,
 			@Param("lastNamePattern") String lastNamePattern);
 
@@ -45,6 +70,100 @@ public interface MemberRepository extends JpaRepository<Member, MemberId> {
 			FROM Member m
 			WHERE m.monthlySalary >= :minSalary
 			""")
-	List<MemberSalaryDto> findBySalary(@Param("minSalary") String minSalary);
+	List<MemberSalaryDto> findBySalary(@Param("minSalary") BigDecimal minSalary);
+
+	// Members with a salary between min and max, lowest first. Both the filter
+	// and the order come from the salary index, so only the returned rows are read.
+	@Query("""
+			SELECT NEW com.example.demo.dto.MemberSalaryDto(
+			    m.memberId,
+			    m.uniqId.firstName,
+			    m.uniqId.lastName,
+			    m.uniqId.dob,
+			    m.uniqId.gender,
+			    m.city,
+			    m.monthlySalary
+			)
+			FROM Member m
+			WHERE m.monthlySalary BETWEEN :minSalary AND :maxSalary
+			ORDER BY m.monthlySalary
+			""")
+	List<MemberSalaryDto> findBySalaryRange(@Param("minSalary") BigDecimal minSalary,
+			@Param("maxSalary") BigDecimal maxSalary, Limit limit);
+
+	// Highest salaries first, read backwards from the end of the salary index
+	@Query("""
+			SELECT NEW com.example.demo.dto.MemberSalaryDto(
+			    m.memberId,
+			    m.uniqId.firstName,
+			    m.uniqId.lastName,
+			    m.uniqId.dob,
+			    m.uniqId.gender,
+			    m.city,
+			    m.monthlySalary
+			)
+			FROM Member m
+			WHERE m.monthlySalary IS NOT NULL
+			ORDER BY m.monthlySalary DESC
+			""")
+	List<MemberSalaryDto> findTopSalaries(Limit limit);
+
+	// Keyset pagination in (firstName, lastName, dob, gender) order. Each page
+	// continues after (or before) the key of the last row of the previous page, so
+	// the database seeks into the index instead of skipping OFFSET rows. The
+	// comparison is written out instead of as a row value so MySQL uses a range scan.
+	@Query("SELECT m FROM Member m "
+			+ "ORDER BY m.uniqId.firstName, m.uniqId.lastName, m.uniqId.dob, m.uniqId.gender")
+	List<Member> findFirstPage(Limit limit);
+
+	@Query("""
+			SELECT m FROM Member m
+			WHERE m.uniqId.firstName > :firstName
+			   OR (m.uniqId.firstName = :firstName AND (m.uniqId.lastName > :lastName
+			   OR (m.uniqId.lastName = :lastName AND (m.uniqId.dob > :dob
+			   OR (m.uniqId.dob = :dob AND m.uniqId.gender > :gender)))))
+			ORDER BY m.uniqId.firstName, m.uniqId.lastName, m.uniqId.dob, m.uniqId.gender
+			""")
+	List<Member> findPageAfter(@Param("firstName") String firstName, @Param("lastName") String lastName,
+			@Param("dob") LocalDate dob, @Param("gender") String gender, Limit limit);
+
+	// Rows before the given key, nearest first
+	@Query("""
+			SELECT m FROM Member m
+			WHERE m.uniqId.firstName < :firstName
+			   OR (m.uniqId.firstName = :firstName AND (m.uniqId.lastName < :lastName
+			   OR (m.uniqId.lastName = :lastName AND (m.uniqId.dob < :dob
+			   OR (m.uniqId.dob = :dob AND m.uniqId.gender < :gender)))))
+			ORDER BY m.uniqId.firstName DESC, m.uniqId.lastName DESC, m.uniqId.dob DESC, m.uniqId.gender DESC
+			""")
+	List<Member> findPageBefore(@Param("firstName") String firstName, @Param("lastName") String lastName,
+			@Param("dob") LocalDate dob, @Param("gender") String gender, Limit limit);
+
+	// Streaming versions of the dob range and salary queries. The rows are read through a
+	// cursor fetch-size rows at a time and the entities are read only, the stream
+	// has to be consumed and closed inside a transaction.
+	@QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+			@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false") })
+	@Query("SELECT m FROM Member m " + "WHERE m.uniqId.dob BETWEEN :startDate AND :endDate")
+	Stream<Member> streamMembersByDobBetween(@Param("startDate") LocalDate startDate,
+			@Param("endDate") LocalDate endDate);
+
+	@QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false") })
+	@Query("""
+			SELECT NEW com.example.demo.dto.MemberSalaryDto(
+			    m.memberId,
+			    m.uniqId.firstName,
+			    m.uniqId.lastName,
+			    m.uniqId.dob,
+			    m.uniqId.gender,
+			    m.city,
+			    m.monthlySalary
+			)
+			FROM Member m
+			WHERE m.monthlySalary >= :minSalary
+			""")
+	Stream<MemberSalaryDto> streamBySalary(@Param("minSalary") BigDecimal minSalary);
 
 }
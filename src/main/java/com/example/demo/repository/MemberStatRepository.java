@@ -0,0 +1,12 @@
+package com.example.demo.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.entity.MemberStat;
+import com.example.demo.entity.MemberStatId;
+
+@Repository
+public interface MemberStatRepository extends JpaRepository<MemberStat, MemberStatId> {
+
+}
@@ -0,0 +1,80 @@
+package com.example.demo.repository;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.entity.Member;
+
+import jakarta.annotation.PostConstruct;
+
+// INSERT IGNORE ... VALUES (...),(...) with up to csv.ingest.multi-row-size rows
+// per statement, works the same on any driver. Upserts use the same statement
+// with ON DUPLICATE KEY UPDATE instead of IGNORE.
+@Repository
+public class MultiRowInsertMemberWriter implements BulkMemberWriter {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${csv.ingest.multi-row-size:500}")
+	private int rowsPerStatement;
+
+	// Statement text per row count, batches are mostly the same size
+	private final ConcurrentMap<Integer, String> statements = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Integer, String> upsertStatements = new ConcurrentHashMap<>();
+
+	private boolean rowAlias;
+
+	@PostConstruct
+	void detectRowAlias() {
+		rowAlias = MemberColumns.supportsRowAlias(jdbcTemplate);
+	}
+
+	@Override
+	public String getName() {
+		return "multi-row";
+	}
+
+	@Override
+	public void write(List<Member> members) {
+		write(members, statements, false);
+	}
+
+	@Override
+	public void upsert(List<Member> members) {
+		write(members, upsertStatements, true);
+	}
+
+	private void write(List<Member> members, ConcurrentMap<Integer, String> sqlByRows, boolean upsert) {
+		for (int from = 0; from < members.size(); from += rowsPerStatement) {
+			List<Member> rows = members.subList(from, Math.min(from + rowsPerStatement, members.size()));
+			jdbcTemplate.update(sqlByRows.computeIfAbsent(rows.size(), n -> buildSql(n, upsert)), ps -> {
+				int index = 1;
+				for (Member member : rows) {
+					MemberColumns.bind(ps, index, member);
+					index += MemberColumns.COUNT;
+				}
+			});
+		}
+	}
+
+	private String buildSql(int rows, boolean upsert) {
+		StringBuilder sql = new StringBuilder(upsert ? "INSERT INTO members (" : "INSERT IGNORE INTO members (")
+				.append(MemberColumns.COLUMNS).append(") VALUES ");
+		for (int i = 0; i < rows; i++) {
+			sql.append(i == 0 ? "" : ",").append(MemberColumns.ROW);
+		}
+		if (upsert) {
+			sql.append(MemberColumns.rowAlias(rowAlias)).append(" ON DUPLICATE KEY UPDATE ")
+					.append(MemberColumns.updateAll(rowAlias));
+		}
+		return sql.toString();
+	}
+
+}
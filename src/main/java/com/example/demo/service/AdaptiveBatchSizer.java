@@ -0,0 +1,93 @@
+package com.example.demo.service;
+
+import java.util.concurrent.TimeUnit;
+
+// Batch size of one upload, adjusted after every commit (additive increase,
+// multiplicative decrease). A batch committed within the target latency lets
+// the next ones grow by a fixed step, a slower one cuts the size by a factor.
+// An idle database ends up with large batches, a busy one with small ones
+// that hold their locks for a short time.
+//
+// Batches already queued for the writers were cut at an older size, so every
+// change is made relative to the size of the batch that was measured: a batch
+// from before a cut does not cut again, a small batch from before a raise does
+// not raise again. The deeper the batch queue (csv.ingest.queue-capacity), the
+// more commits a change takes to show.
+//
+// Written by the writer threads, read by the ordering stage and job status
+// requests.
+final class AdaptiveBatchSizer {
+
+	// Weight of the latest commit in the averages
+	private static final double SMOOTHING = 0.2;
+
+	private final int minSize;
+	private final int maxSize;
+	private final int increaseStep;
+	private final double decreaseFactor;
+	private final long targetNanos;
+	private final long backoffMaxNanos;
+
+	private volatile int size;
+	private volatile double averageLatencyNanos;
+	private volatile double averageRowsPerSecond;
+
+	AdaptiveBatchSizer(int initialSize, int minSize, int maxSize, int increaseStep, double decreaseFactor,
+			long targetLatencyMs, long backoffMaxMs) {
+		// A step of 0 never grows, see fixed
+		if (minSize < 1 || maxSize < minSize || increaseStep < 0 || decreaseFactor <= 0 || decreaseFactor >= 1
+				|| targetLatencyMs < 1 || backoffMaxMs < 0) {
+			throw new IllegalArgumentException("Invalid batch size settings: min " + minSize + ", max " + maxSize
+					+ ", increase step " + increaseStep + ", decrease factor " + decreaseFactor + ", target latency "
+					+ targetLatencyMs + " ms, backoff max " + backoffMaxMs + " ms");
+		}
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.increaseStep = increaseStep;
+		this.decreaseFactor = decreaseFactor;
+		this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+		this.backoffMaxNanos = TimeUnit.MILLISECONDS.toNanos(backoffMaxMs);
+		this.size = clamp(initialSize);
+	}
+
+	// Always the same size
+	static AdaptiveBatchSizer fixed(int size) {
+		return new AdaptiveBatchSizer(size, size, size, 0, 0.5, Long.MAX_VALUE / 1_000_000, 0);
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	// Of the recent commits, 0 before the first one
+	double getAverageLatencyMs() {
+		return averageLatencyNanos / 1_000_000;
+	}
+
+	double getAverageRowsPerSecond() {
+		return averageRowsPerSecond;
+	}
+
+	// Records a committed batch and returns how long the writer should wait
+	// before its next commit, nonzero only after a commit over the target
+	synchronized long committed(int members, long nanos) {
+		boolean first = averageLatencyNanos == 0;
+		averageLatencyNanos = first ? nanos : averageLatencyNanos + SMOOTHING * (nanos - averageLatencyNanos);
+		double rowsPerSecond = members * 1e9 / Math.max(nanos, 1);
+		averageRowsPerSecond = first ? rowsPerSecond
+				: averageRowsPerSecond + SMOOTHING * (rowsPerSecond - averageRowsPerSecond);
+
+		if (nanos <= targetNanos) {
+			size = clamp(Math.max(size, members + increaseStep));
+			return 0;
+		}
+		size = clamp(Math.min(size, (int) (members * decreaseFactor)));
+		// Gives the database the time the commit ran over, up to the limit
+		return Math.min(nanos - targetNanos, backoffMaxNanos);
+	}
+
+	private int clamp(int value) {
+		return Math.max(minSize, Math.min(maxSize, value));
+	}
+
+}
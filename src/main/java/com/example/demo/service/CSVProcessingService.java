@@ -1,19 +1,21 @@
 package com.example.demo.service;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.Period;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
@@ -23,8 +25,10 @@ import org.springframework.web.multipart.MultipartFile;
 import com.example.demo.dto.CsvProcessingResult;
 import com.example.demo.entity.Member;
 import com.example.demo.entity.MemberId;
+import com.example.demo.entity.MemberStat;
 import com.example.demo.exceptions.CsvProcessingException;
 import com.example.demo.exceptions.InvalidRecordException;
+import com.example.demo.exceptions.LocalFileNotAllowedException;
 import com.example.demo.repository.CSVProcessingRepository;
 import com.example.demo.repository.MemberRepository;
 import com.opencsv.CSVReader;
@@ -39,153 +43,311 @@ public class CSVProcessingService {
 	@Autowired
 	private CSVProcessingRepository csvProcessingRepository;
 
-	private static final int BATCH_SIZE = 100;
+	@Autowired
+	private FeedSchemaRegistry feedSchemaRegistry;
 
-	int validCount = 0;
-	int invalidCount = 0;
+	@Autowired
+	private ExistingMemberIndex existingMemberIndex;
 
-	// Set to track unique records in memory
-	Set<String> uniqueRecords = new HashSet<>();
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
 
-	// Created the Array list to store valid records
-	List<Member> validRecords = new ArrayList<>();
+	@Autowired
+	private IngestMetrics ingestMetrics;
 
-	public CsvProcessingResult processCsvFile(MultipartFile file) {
-		long startTime = System.currentTimeMillis();
+	@Autowired
+	private MemberStatsService memberStatsService;
 
-		try (CSVReader cr = new CSVReader(new InputStreamReader(file.getInputStream()))) {
-			String[] headers = cr.readNext();
-			if (headers == null || headers.length < 14) {
-				throw new CsvProcessingException("Invalid header or insufficient columns");
-			}
+	@Autowired
+	private IngestScheduler ingestScheduler;
 
-			String[] data;
-			while ((data = cr.readNext()) != null) {
-				try {
-					Member member = processRecord(data);
-					validRecords.add(member);
-					validCount++;
-
-					// Insert in batches
-					if (validRecords.size() >= BATCH_SIZE) {
-						insertBatchUsingJdbcTemplate(validRecords);
-						validRecords.clear();
-					}
-				} catch (InvalidRecordException e) {
-					invalidCount++;
-				}
-			}
+	@Autowired
+	private ExecutorService csvValidatorExecutor;
 
-		} catch (IOException | CsvValidationException e) {
-			throw new CsvProcessingException("Error processing CSV file", e);
-		}
+	@Autowired
+	private ExecutorService csvPipelineExecutor;
 
-		long endTime = System.currentTimeMillis();
-		return new CsvProcessingResult(validCount, invalidCount, endTime - startTime);
+	// Members per batch insert. With adaptive sizing this is the size of the first
+	// batches, later ones follow the commit latency.
+	@Value("${csv.ingest.batch.initial-size:100}")
+	private int batchInitialSize;
+
+	// Grow and shrink the batches with the commit latency, see AdaptiveBatchSizer
+	@Value("${csv.ingest.batch.adaptive:false}")
+	private boolean batchAdaptive;
+
+	@Value("${csv.ingest.batch.min-size:50}")
+	private int batchMinSize;
+
+	@Value("${csv.ingest.batch.max-size:5000}")
+	private int batchMaxSize;
+
+	@Value("${csv.ingest.batch.target-latency-ms:250}")
+	private long batchTargetLatencyMs;
+
+	@Value("${csv.ingest.batch.increase-step:100}")
+	private int batchIncreaseStep;
+
+	@Value("${csv.ingest.batch.decrease-factor:0.5}")
+	private double batchDecreaseFactor;
+
+	// Longest wait of a writer after a commit over the target latency
+	@Value("${csv.ingest.batch.backoff-max-ms:100}")
+	private long batchBackoffMaxMs;
+
+	// Rows handed to a validator thread at a time
+	@Value("${csv.ingest.chunk-size:500}")
+	private int chunkSize;
+
+	// Chunks that may be read ahead of the ordering stage
+	@Value("${csv.ingest.queue-capacity:16}")
+	private int queueCapacity;
+
+	@Value("${csv.ingest.writer-threads:2}")
+	private int writerThreads;
+
+	// Initial size of the duplicate check when the size of the input is not
+	// known, it grows when a file has more keys
+	@Value("${csv.ingest.dedup.expected-keys:100000}")
+	private int dedupExpectedKeys;
+
+	// Average bytes per row, turns the size of an input into the keys to expect
+	@Value("${csv.ingest.dedup.bytes-per-key:100}")
+	private int dedupBytesPerKey;
+
+	// Keep the duplicate check in direct buffers instead of the heap
+	@Value("${csv.ingest.dedup.off-heap:false}")
+	private boolean dedupOffHeap;
+
+	// Bloom filter in front of the duplicate check, 0 turns it off
+	@Value("${csv.ingest.dedup.bloom-bits-per-key:0}")
+	private int dedupBloomBitsPerKey;
+
+	// Most bytes a compressed upload may inflate to
+	@Value("${csv.ingest.decompressed.max-bytes:10737418240}")
+	private long maxDecompressedBytes;
+
+	// Files below this directory can be ingested by path, empty turns this off
+	@Value("${csv.ingest.local.base-dir:}")
+	private String localBaseDir;
+
+	// Bytes of a local file parsed by one validator thread at a time
+	@Value("${csv.ingest.local.split-bytes:262144}")
+	private long localSplitBytes;
+
+	public CsvProcessingResult processCsvFile(MultipartFile file) {
+		return processCsvFile(file, FeedSchemaRegistry.DEFAULT_FEED);
 	}
 
-	@Transactional
-	public Member processRecord(String[] data) throws InvalidRecordException {
-		// Validate record length
-		if (data.length < 14) {
-			throw new InvalidRecordException("Insufficient fields");
+	public CsvProcessingResult processCsvFile(MultipartFile file, String feed) {
+		try {
+			return processCsvStream(file.getInputStream(), createContext(feed, file.getSize()));
+		} catch (IOException e) {
+			throw new CsvProcessingException("Error processing CSV file", e);
 		}
+	}
 
-		// Trim all fields
-		for (int i = 0; i < data.length; i++) {
-			data[i] = data[i] != null ? data[i].trim() : "";
-		}
+	// Reads records straight off the given stream and runs them through the
+	// parse -> validate -> insert pipeline. Only a bounded number of chunks and
+	// batches are held at any time, so the size of the input does not matter and
+	// a slow database simply slows down reading from the stream.
+	public CsvProcessingResult processCsvStream(InputStream in) {
+		return processCsvStream(in, createContext(FeedSchemaRegistry.DEFAULT_FEED));
+	}
 
-		// Extract fields
-		String id = data[0];
-		String firstName = data[1];
-		String lastName = data[2];
-		String dob = data[3];
-		String gender = data[4];
-		String education = data[5];
-		String houseNumber = data[6];
-		String address1 = data[7];
-		String address2 = data[8];
-		String city = data[9];
-		String pincode = data[10];
-		String mobile = data[11];
-		String company = data[12];
-		String monthlySalary = data[13];
+	public IngestContext createContext(String feed) {
+		return createContext(feed, -1);
+	}
 
-		// Validating required fields
-		if (id.isEmpty() || firstName.isEmpty() || lastName.isEmpty() || gender.isEmpty() || dob.isEmpty()
-				|| city.isEmpty() || education.isEmpty() || address1.isEmpty() || address2.isEmpty()
-				|| houseNumber.isEmpty() || pincode.isEmpty() || mobile.isEmpty() || monthlySalary.isEmpty()) {
+	// Every upload gets its own counters, duplicate check and batch buffer, and
+	// validates against the rules of the given feed. The duplicate check is sized
+	// for inputBytes (-1 when not known), a compressed input holds more keys than
+	// its size suggests and grows the check as it goes.
+	public IngestContext createContext(String feed, long inputBytes) {
+		AdaptiveBatchSizer batchSizer = batchAdaptive
+				? new AdaptiveBatchSizer(batchInitialSize, batchMinSize, batchMaxSize, batchIncreaseStep,
+						batchDecreaseFactor, batchTargetLatencyMs, batchBackoffMaxMs)
+				: AdaptiveBatchSizer.fixed(batchInitialSize);
+		return new IngestContext(batchSizer, feedSchemaRegistry.get(feed).newValidator(LocalDate.now()),
+				new MemberKeyIndex(expectedKeys(inputBytes), dedupOffHeap, dedupBloomBitsPerKey));
+	}
 
-			throw new InvalidRecordException("Empty fields");
+	private int expectedKeys(long inputBytes) {
+		if (inputBytes <= 0) {
+			return dedupExpectedKeys;
 		}
+		// Everything past the cap is added as the check grows
+		return (int) Math.min(inputBytes / dedupBytesPerKey + 1, 1 << 28);
+	}
+
+	// Same as above but with a context created by the caller, so the caller can
+	// follow the progress of the upload while it runs
+	public CsvProcessingResult processCsvStream(InputStream in, IngestContext context) {
+		long startTime = System.currentTimeMillis();
+		existingMemberIndex.awaitLoaded();
 
-		// Checking for duplicates
-		// Create a unique key for the record
-		String recordKey = String.join("|", firstName, lastName, gender, dob.toString());
+		// gzip, zstd and zip uploads are decompressed on the way in
+		try (CSVReader cr = new CSVReader(new InputStreamReader(
+				CompressedInput.open(in, csvPipelineExecutor, maxDecompressedBytes), StandardCharsets.UTF_8))) {
+			checkHeader(cr.readNext(), context);
+			newPipeline(context).run(cr);
 
-		// Check for duplicates using the Set
-		if (uniqueRecords.contains(recordKey)) {
-			throw new InvalidRecordException("Duplicate record");
+		} catch (IOException | CsvValidationException e) {
+			throw new CsvProcessingException("Error processing CSV file", e);
 		}
+		return finish(context, startTime);
+	}
 
-		// adding unique records to set
-		uniqueRecords.add(recordKey);
+	// Ingests a file that is already on the server, e.g. dropped on a shared volume.
+	// The file is memory mapped and parsed in splits on the validator threads, so
+	// no single thread has to tokenize all of it. Compressed files are streamed
+	// like an upload instead.
+	public CsvProcessingResult processLocalFile(String path, String feed) {
+		Path file = resolveLocalFile(path);
+		IngestContext context;
+		try {
+			context = createContext(feed, Files.size(file));
+		} catch (IOException e) {
+			throw new CsvProcessingException("Error processing CSV file", e);
+		}
+		try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			if (CompressedInput.detect(in) != CompressedInput.Format.PLAIN) {
+				return processCsvStream(in, context);
+			}
+		} catch (IOException e) {
+			throw new CsvProcessingException("Error processing CSV file", e);
+		}
 
-		// Validating mobile number for 10 digits and number starts with 7/8/9
-		if (!Pattern.matches("^[789]\\d{9}$", mobile)) {
-			throw new InvalidRecordException("Invalid mobile: " + mobile);
+		long startTime = System.currentTimeMillis();
+		existingMemberIndex.awaitLoaded();
+		try (MappedCsvFile csv = MappedCsvFile.open(file)) {
+			checkHeader(csv.getHeader(), context);
+			newPipeline(context).run(csv, localSplitBytes);
+		} catch (IOException e) {
+			throw new CsvProcessingException("Error processing CSV file", e);
 		}
+		return finish(context, startTime);
+	}
 
-		// validating date of birth if input date is after the current date,if date is
-		// future date it is invalid record
-		LocalDate birthDate = parseDate(dob);
-		if (birthDate.isAfter(LocalDate.now())) {
-			throw new InvalidRecordException("Future date: " + dob);
+	// Only regular files below the configured directory can be read. The check is
+	// made on the real path, so neither ".." nor links lead outside of it.
+	private Path resolveLocalFile(String path) {
+		if (localBaseDir.isBlank()) {
+			throw new LocalFileNotAllowedException("Ingest from local files is not enabled");
 		}
+		try {
+			Path base = Path.of(localBaseDir).toRealPath();
+			Path file = base.resolve(path).toRealPath();
+			if (!file.startsWith(base) || !Files.isRegularFile(file)) {
+				throw new LocalFileNotAllowedException("Not a file in the local ingest directory: " + path);
+			}
+			return file;
+		} catch (NoSuchFileException e) {
+			throw new LocalFileNotAllowedException("Not a file in the local ingest directory: " + path);
+		} catch (IOException e) {
+			throw new CsvProcessingException("Error processing CSV file", e);
+		}
+	}
 
-		// Validating age is greater than 100 or not if greater than 100 it is invalid
-		// date
-		Period age = Period.between(birthDate, LocalDate.now());
-		if (age.getYears() > 100) {
-			throw new InvalidRecordException("Age is greater than 100: " + dob);
+	private void checkHeader(String[] headers, IngestContext context) {
+		if (headers == null || headers.length < context.getValidator().getSchema().getMinColumns()) {
+			throw new CsvProcessingException("Invalid header or insufficient columns");
 		}
+	}
 
-		// Clean address fields
-		address1 = cleanAddress(address1);
-		address2 = cleanAddress(address2);
+	private CsvIngestPipeline newPipeline(IngestContext context) {
+		return new CsvIngestPipeline(context, context.getValidator()::validate, this::resolveRecord,
+				this::insertBatchUsingJdbcTemplate, csvValidatorExecutor, csvPipelineExecutor, ingestMetrics,
+				ingestScheduler, chunkSize, queueCapacity, writerThreads);
+	}
 
-		// Creating member object and saving it to database
-		MemberId memberId = new MemberId(firstName, lastName, birthDate, gender);
-		Member member = new Member(memberId, id, address1, address2, city, company, education, houseNumber, mobile,
-				monthlySalary, pincode);
+	private CsvProcessingResult finish(IngestContext context, long startTime) {
+		long endTime = System.currentTimeMillis();
+		ingestMetrics.uploadFinished(endTime - startTime);
+		return new CsvProcessingResult(context.getValidCount(), context.getInvalidCount(),
+				context.getAlreadyPresentCount(), context.getUpdatedCount(), endTime - startTime);
+	}
 
-		return member;
+	@Transactional
+	public Member processRecord(String[] data, IngestContext context) throws InvalidRecordException {
+		return resolveRecord(validateRecord(data, context), context);
 	}
 
-	// Parsing date of birth to Local Date
-	private LocalDate parseDate(String dateStr) throws InvalidRecordException {
-		try {
-			if (dateStr.contains("-")) {
-				return LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
-			} else if (dateStr.contains("/")) {
-				return LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("d/M/yyyy"));
+	// Applies the duplicate check to an already validated row, this has to be
+	// called in file order so that the first occurrence of a key wins. Returns
+	// null when the member is already stored.
+	public Member resolveRecord(ValidatedRecord record, IngestContext context) throws InvalidRecordException {
+		if (!record.isKeyed()) {
+			throw record.getError();
+		}
+
+		// Check for duplicates within this upload, the key is remembered if it is new
+		if (!context.markUnique(record.getKeyHigh(), record.getKeyLow())) {
+			throw new InvalidRecordException("Duplicate record", "duplicate");
+		}
+
+		if (record.getError() != null) {
+			throw record.getError();
+		}
+
+		// Check against the members already in the database, these are counted but not inserted.
+		// In upsert mode only members stored with the same values are left out.
+		Member member = record.getMember();
+		if (existingMemberIndex.isEnabled()) {
+			if (!existingMemberIndex.isUpsert()) {
+				if (existingMemberIndex.contains(member.getUniqId())) {
+					context.addAlreadyPresent();
+					return null;
+				}
+			} else if (existingMemberIndex.isStoredUnchanged(member)) {
+				context.addAlreadyPresent();
+				return null;
+			} else if (existingMemberIndex.contains(member.getUniqId())) {
+				context.addUpdated();
 			}
-			throw new InvalidRecordException("Unsupported date format: " + dateStr);
-		} catch (DateTimeParseException e) {
-			throw new InvalidRecordException("Invalid date format: " + dateStr);
 		}
+		return member;
+	}
+
+	// Validates a single row without touching any shared state, so rows can be
+	// validated on several threads at once
+	public ValidatedRecord validateRecord(String[] data, IngestContext context) {
+		return context.getValidator().validate(data);
 	}
 
-	// Removing SPecial characters from the address
-	private String cleanAddress(String address) {
-		return address.replaceAll("[^a-zA-Z0-9\\s,]", "");
+	// Keys to look up before the batch is written, the stored members decide
+	// which rows are skipped or replaced and so what the stats gain. With the
+	// existing member index an insert batch only holds new members, so nothing is
+	// read, and an upsert only reads the members the index has seen. A member
+	// another upload commits in the meantime is then counted by both.
+	private List<MemberId> statsKeys(List<Member> members) {
+		if (!memberStatsService.isEnabled()) {
+			return List.of();
+		}
+		boolean indexed = existingMemberIndex.isEnabled();
+		if (indexed && !csvProcessingRepository.isUpsert()) {
+			return List.of();
+		}
+		List<MemberId> ids = new ArrayList<>(members.size());
+		for (Member member : members) {
+			if (!indexed || existingMemberIndex.contains(member.getUniqId())) {
+				ids.add(member.getUniqId());
+			}
+		}
+		return ids;
 	}
 
 	// Iterating the list and inserting to database using JDBC Template
 	private void insertBatchUsingJdbcTemplate(List<Member> members) {
 		try {
-			csvProcessingRepository.batchInsert(members);
+			// Timed here rather than inside batchInsert so the commit is included
+			long start = System.nanoTime();
+			List<MemberStat> stats = csvProcessingRepository.batchInsert(members, statsKeys(members),
+					stored -> memberStatsService.aggregate(members, stored, csvProcessingRepository.isUpsert()));
+			ingestMetrics.batchInserted(members.size(), System.nanoTime() - start);
+			existingMemberIndex.addCommitted(members);
+			memberStatsService.addCommitted(stats);
+			eventPublisher.publishEvent(new MembersCommittedEvent(members));
 
 		} catch (DataAccessException e) {
 			throw new DataIntegrityViolationException("Batch insert failed: " + e.getMessage(), e);
@@ -0,0 +1,166 @@
+package com.example.demo.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.example.demo.dto.FeedSchemaDefinition;
+import com.example.demo.dto.FeedSchemaDefinition.ColumnDefinition;
+import com.example.demo.service.FieldRules.DateCheck;
+import com.example.demo.service.FieldRules.DateFormat;
+import com.example.demo.service.FieldRules.DecimalCheck;
+import com.example.demo.service.FieldRules.DigitsCheck;
+import com.example.demo.service.FieldRules.FieldCheck;
+import com.example.demo.service.FieldRules.PatternCheck;
+
+// A feed schema turned into flat arrays of column indexes and check objects.
+// Built once at startup, each upload then binds it to the current day.
+//
+// Only columns with a digits, pattern, date or decimal rule get a check object, these run
+// in schema order. Plain and cleaned text columns cannot fail, so the validator
+// cleans them once all checks passed and then reads the member straight from the row.
+public class CompiledFeedSchema {
+
+	private final String name;
+	private final int minColumns;
+	private final int[] requiredColumns;
+
+	// Columns of the duplicate key: first name, last name, gender, dob
+	private final int[] keyColumns;
+
+	// Column of each MemberField by ordinal, -1 when the feed does not have it
+	private final int[] fieldColumns;
+
+	// Columns that go through address cleaning
+	private final int[] cleanAddressColumns;
+
+	// checks[i] is applied to the value in checkColumns[i]
+	private final int[] checkColumns;
+	private final FieldCheck[] checks;
+
+	private CompiledFeedSchema(String name, int minColumns, int[] requiredColumns, int[] keyColumns,
+			int[] fieldColumns, int[] cleanAddressColumns, int[] checkColumns, FieldCheck[] checks) {
+		this.name = name;
+		this.minColumns = minColumns;
+		this.requiredColumns = requiredColumns;
+		this.keyColumns = keyColumns;
+		this.fieldColumns = fieldColumns;
+		this.cleanAddressColumns = cleanAddressColumns;
+		this.checkColumns = checkColumns;
+		this.checks = checks;
+	}
+
+	public static CompiledFeedSchema compile(FeedSchemaDefinition definition) {
+		int[] fieldColumns = new int[MemberField.values().length];
+		Arrays.fill(fieldColumns, -1);
+		List<Integer> cleanAddress = new ArrayList<>();
+		List<Integer> required = new ArrayList<>();
+		List<Integer> checkColumns = new ArrayList<>();
+		List<FieldCheck> checks = new ArrayList<>();
+
+		for (ColumnDefinition column : definition.getColumns()) {
+			MemberField field = MemberField.of(column.getField());
+			if (column.getIndex() < 0 || column.getIndex() >= definition.getMinColumns()) {
+				throw new IllegalArgumentException(definition.getName() + ": column " + column.getIndex() + " of "
+						+ column.getField() + " is outside min-columns");
+			}
+			if (fieldColumns[field.ordinal()] >= 0) {
+				throw new IllegalArgumentException(definition.getName() + ": " + column.getField() + " is mapped twice");
+			}
+			fieldColumns[field.ordinal()] = column.getIndex();
+			if (column.isRequired()) {
+				required.add(column.getIndex());
+			}
+			if ("clean-address".equals(column.getTransform())) {
+				cleanAddress.add(column.getIndex());
+			} else if (column.getTransform() != null) {
+				throw new IllegalArgumentException("Unknown transform: " + column.getTransform());
+			}
+			FieldCheck check = compileCheck(field, column);
+			if (check != null) {
+				checkColumns.add(column.getIndex());
+				checks.add(check);
+			}
+		}
+
+		MemberField[] keyFields = { MemberField.FIRST_NAME, MemberField.LAST_NAME, MemberField.GENDER, MemberField.DOB };
+		int[] keyColumns = new int[keyFields.length];
+		for (int i = 0; i < keyFields.length; i++) {
+			keyColumns[i] = fieldColumns[keyFields[i].ordinal()];
+			if (keyColumns[i] < 0) {
+				throw new IllegalArgumentException(
+						definition.getName() + ": " + keyFields[i].getPropertyName() + " has to be mapped");
+			}
+		}
+
+		return new CompiledFeedSchema(definition.getName(), definition.getMinColumns(),
+				required.stream().mapToInt(Integer::intValue).toArray(), keyColumns, fieldColumns,
+				cleanAddress.stream().mapToInt(Integer::intValue).toArray(), checkColumns.stream().mapToInt(Integer::intValue).toArray(), checks.toArray(FieldCheck[]::new));
+	}
+
+	private static FieldCheck compileCheck(MemberField field, ColumnDefinition column) {
+		if (field == MemberField.DOB || "date".equals(column.getType())) {
+			if (field != MemberField.DOB || column.getFormats().isEmpty()) {
+				throw new IllegalArgumentException("Only dob can be a date and it needs at least one format");
+			}
+			DateFormat[] formats = column.getFormats().stream().map(DateFormat::new).toArray(DateFormat[]::new);
+			return new DateCheck(field, formats, column.isNotInFuture(), column.getMaxAgeYears());
+		}
+		String message = column.getMessage() != null ? column.getMessage() : "Invalid " + column.getField();
+		if (field == MemberField.MONTHLY_SALARY || "decimal".equals(column.getType())) {
+			if (field != MemberField.MONTHLY_SALARY) {
+				throw new IllegalArgumentException("Only monthlySalary can be a decimal");
+			}
+			return new DecimalCheck(field, column.getPrecision(), column.getScale(), message);
+		}
+		if (column.getDigits() != null) {
+			return new DigitsCheck(field, column.getDigits(), column.getFirstDigitIn(), message);
+		}
+		if (column.getPattern() != null) {
+			return new PatternCheck(field, Pattern.compile(column.getPattern()), message);
+		}
+		return null;
+	}
+
+	// Validator for one upload, date checks are bound to the given day
+	public MemberRecordValidator newValidator(LocalDate today) {
+		FieldCheck[] bound = new FieldCheck[checks.length];
+		for (int i = 0; i < checks.length; i++) {
+			bound[i] = checks[i].forDay(today);
+		}
+		return new MemberRecordValidator(this, bound, today);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMinColumns() {
+		return minColumns;
+	}
+
+	int[] getRequiredColumns() {
+		return requiredColumns;
+	}
+
+	int[] getKeyColumns() {
+		return keyColumns;
+	}
+
+	int[] getCheckColumns() {
+		return checkColumns;
+	}
+
+	int[] getCleanAddressColumns() {
+		return cleanAddressColumns;
+	}
+
+	// Text of a member field in the given row, null when the feed does not have it
+	String text(String[] data, MemberField field) {
+		int column = fieldColumns[field.ordinal()];
+		return column >= 0 ? data[column] : null;
+	}
+
+}
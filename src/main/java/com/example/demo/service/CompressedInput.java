@@ -0,0 +1,209 @@
+package com.example.demo.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.example.demo.exceptions.CsvProcessingException;
+import com.github.luben.zstd.ZstdInputStream;
+
+// Uploads may be gzip, zstd or zip compressed. The format is taken from the
+// first bytes, not the file name, and plain CSV passes through untouched.
+//
+// Compressed input is inflated on a thread of its own into a few reusable
+// blocks, so the parser reads plain bytes while the next blocks are being
+// inflated. Concatenated gzip members are read one after the other, a zip
+// archive has to hold the CSV as its first entry.
+//
+// The inflated size is limited, so a small compressed upload cannot feed the
+// pipeline without end.
+final class CompressedInput {
+
+	enum Format {
+		PLAIN, GZIP, ZSTD, ZIP
+	}
+
+	private static final int BLOCK_SIZE = 256 * 1024;
+	private static final int BLOCKS = 4;
+
+	private CompressedInput() {
+	}
+
+	static Format detect(BufferedInputStream in) throws IOException {
+		in.mark(4);
+		byte[] magic = in.readNBytes(4);
+		in.reset();
+		if (magic.length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+			return Format.GZIP;
+		}
+		if (magic.length == 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5
+				&& (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+			return Format.ZSTD;
+		}
+		if (magic.length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+			return Format.ZIP;
+		}
+		return Format.PLAIN;
+	}
+
+	// Plain CSV bytes of the given upload, reading fails once more than maxBytes
+	// have been inflated
+	static InputStream open(InputStream in, ExecutorService executor, long maxBytes) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+		InputStream inflated;
+		switch (detect(buffered)) {
+		case GZIP:
+			inflated = new GZIPInputStream(buffered, 64 * 1024);
+			break;
+		case ZSTD:
+			inflated = new ZstdInputStream(buffered);
+			break;
+		case ZIP:
+			ZipInputStream zip = new ZipInputStream(buffered);
+			ZipEntry entry = zip.getNextEntry();
+			if (entry == null) {
+				zip.close();
+				throw new CsvProcessingException("Zip upload has no entries");
+			}
+			inflated = zip;
+			break;
+		default:
+			return buffered;
+		}
+		return new ReadAheadInputStream(inflated, executor, maxBytes);
+	}
+
+	// Filled by a task on the executor, read by the parser. Blocks go back and
+	// forth between the two queues so nothing is allocated per block.
+	private static final class ReadAheadInputStream extends InputStream {
+
+		private static final class Block {
+
+			private final byte[] data = new byte[BLOCK_SIZE];
+			private int length;
+		}
+
+		// Marks the end of the input
+		private static final Block END = new Block();
+
+		private final InputStream source;
+		private final long maxBytes;
+		private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCKS);
+		// Room for every block and the end marker, so adding never waits
+		private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(BLOCKS + 1);
+
+		private volatile boolean closed;
+		private volatile IOException failure;
+
+		private Block current;
+		private int position;
+
+		ReadAheadInputStream(InputStream source, ExecutorService executor, long maxBytes) {
+			this.source = source;
+			this.maxBytes = maxBytes;
+			for (int i = 0; i < BLOCKS; i++) {
+				free.add(new Block());
+			}
+			executor.execute(this::fill);
+		}
+
+		// Stops after the current block once the parser closed the stream, and
+		// closes the source itself so it is never closed in the middle of a read
+		private void fill() {
+			long total = 0;
+			try {
+				while (!closed) {
+					Block block = free.poll(100, TimeUnit.MILLISECONDS);
+					if (block == null) {
+						continue;
+					}
+					int n = source.readNBytes(block.data, 0, BLOCK_SIZE);
+					if (n == 0) {
+						break;
+					}
+					total += n;
+					if (total > maxBytes) {
+						throw new IOException("Decompressed upload is larger than " + maxBytes + " bytes");
+					}
+					block.length = n;
+					filled.add(block);
+				}
+			} catch (IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				failure = new IOException("Could not decompress upload", e);
+			} catch (InterruptedException e) {
+				// The rest of the input was not read, this must not look like its end
+				failure = new InterruptedIOException("Interrupted while decompressing");
+				Thread.currentThread().interrupt();
+			} finally {
+				filled.add(END);
+				try {
+					source.close();
+				} catch (IOException e) {
+					// nothing more is read from it
+				}
+			}
+		}
+
+		// Next block with unread bytes, false at the end of the input
+		private boolean next() throws IOException {
+			if (current != null && position < current.length) {
+				return true;
+			}
+			if (current == END) {
+				return false;
+			}
+			if (current != null) {
+				free.offer(current);
+			}
+			try {
+				current = filled.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while decompressing");
+			}
+			position = 0;
+			if (current == END) {
+				if (failure != null) {
+					throw failure;
+				}
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return next() ? current.data[position++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!next()) {
+				return -1;
+			}
+			int n = Math.min(len, current.length - position);
+			System.arraycopy(current.data, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.example.demo.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Keeps track of how many bytes have been read, used for job progress
+class CountingInputStream extends FilterInputStream {
+
+	private volatile long count;
+
+	CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			count++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			count += n;
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	long getCount() {
+		return count;
+	}
+
+}
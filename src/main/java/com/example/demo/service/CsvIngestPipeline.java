@@ -0,0 +1,370 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.example.demo.entity.Member;
+import com.example.demo.exceptions.CsvProcessingException;
+import com.example.demo.exceptions.InvalidRecordException;
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+// Runs one upload as three stages connected by bounded queues:
+//
+// reader (calling thread) -> chunks of rows -> validator pool
+//     (for a mapped file the reader only cuts splits, they are parsed in the pool)
+// ordering stage -> takes validated chunks in file order, checks duplicates, builds batches
+// writer stage(s) -> insert full batches
+//
+// Chunks are handed to the ordering stage in the order they were read, so the
+// outcome of every row is the same as when the file is processed on one thread.
+// When a queue is full the stage feeding it waits, so the reader never runs
+// further ahead of the database than the queue capacities allow.
+class CsvIngestPipeline {
+
+	private static final Chunk END_OF_INPUT = new Chunk(null, null, new ValidatedRecord[0]);
+	private static final List<Member> NO_MORE_BATCHES = List.of();
+
+	private final IngestContext context;
+	private final Function<String[], ValidatedRecord> validator;
+	private final ResolveStep resolver;
+	private final Consumer<List<Member>> batchWriter;
+	private final ExecutorService validatorExecutor;
+	private final ExecutorService pipelineExecutor;
+	private final IngestMetrics metrics;
+	// Hands out the write connections shared by all uploads
+	private final IngestScheduler scheduler;
+	private final int chunkSize;
+	private final int writerThreads;
+	// null unless the rejected rows of this upload are kept
+	private final RejectedRowLog rejectLog;
+	// Line numbers are only tracked for the reject log and checkpoints
+	private final boolean trackLines;
+
+	private final BlockingQueue<CompletableFuture<Chunk>> validatedChunks;
+	private final BlockingQueue<List<Member>> batches;
+
+	// First error raised by any stage, all other stages stop once it is set
+	private volatile RuntimeException failure;
+
+	// Duplicate check and final decision for a row, see CSVProcessingService.resolveRecord.
+	// Returns null for rows that are valid but need no insert.
+	interface ResolveStep {
+		Member resolve(ValidatedRecord record, IngestContext context) throws InvalidRecordException;
+	}
+
+	// Rows as read, the line each one ends on (only kept for the reject log) and
+	// the validation results
+	private static final class Chunk {
+
+		private final String[][] rows;
+		private final long[] lines;
+		private final ValidatedRecord[] records;
+
+		Chunk(String[][] rows, long[] lines, ValidatedRecord[] records) {
+			this.rows = rows;
+			this.lines = lines;
+			this.records = records;
+		}
+	}
+
+	CsvIngestPipeline(IngestContext context, Function<String[], ValidatedRecord> validator, ResolveStep resolver,
+			Consumer<List<Member>> batchWriter, ExecutorService validatorExecutor, ExecutorService pipelineExecutor,
+			IngestMetrics metrics, IngestScheduler scheduler, int chunkSize, int queueCapacity, int writerThreads) {
+		this.context = context;
+		this.validator = validator;
+		this.resolver = resolver;
+		this.batchWriter = batchWriter;
+		this.validatorExecutor = validatorExecutor;
+		this.pipelineExecutor = pipelineExecutor;
+		this.metrics = metrics;
+		this.scheduler = scheduler;
+		this.chunkSize = chunkSize;
+		this.writerThreads = writerThreads;
+		this.rejectLog = context.getRejectLog();
+		this.trackLines = rejectLog != null || context.isCheckpointed();
+		this.validatedChunks = new ArrayBlockingQueue<>(queueCapacity);
+		this.batches = new ArrayBlockingQueue<>(Math.max(queueCapacity / 2, writerThreads));
+	}
+
+	// Feeds the validator pool with chunks in file order
+	private interface ChunkReader {
+		void read() throws IOException, CsvValidationException;
+	}
+
+	// Reads all remaining rows from the reader and returns once every batch is written
+	void run(CSVReader reader) {
+		run(() -> readChunks(reader));
+	}
+
+	// Same for a mapped file, splits of about splitBytes are parsed and validated
+	// by the validator threads, the header has to be checked by the caller
+	void run(MappedCsvFile file, long splitBytes) {
+		run(() -> readSplits(file, splitBytes));
+	}
+
+	private void run(ChunkReader reader) {
+		metrics.pipelineStarted(this);
+		try {
+			runStages(reader);
+		} finally {
+			metrics.pipelineFinished(this);
+		}
+	}
+
+	private void runStages(ChunkReader reader) {
+		Future<?> ordering = pipelineExecutor.submit(guarded(this::orderRecords));
+		Future<?>[] writers = new Future<?>[writerThreads];
+		for (int i = 0; i < writerThreads; i++) {
+			writers[i] = pipelineExecutor.submit(guarded(this::writeBatches));
+		}
+
+		try {
+			reader.read();
+		} catch (IOException | CsvValidationException | RuntimeException e) {
+			fail(e instanceof RuntimeException re ? re : new CsvProcessingException("Error processing CSV file", e));
+		} finally {
+			// Always signal the end so the other stages can finish or notice the failure
+			offer(validatedChunks, CompletableFuture.completedFuture(END_OF_INPUT), true);
+		}
+
+		await(ordering);
+		for (Future<?> writer : writers) {
+			await(writer);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void readChunks(CSVReader reader) throws IOException, CsvValidationException {
+		String[][] chunk = new String[chunkSize][];
+		long[] lines = trackLines ? new long[chunkSize] : null;
+		int size = 0;
+		String[] data;
+		long skipToLine = context.getSkipToLine();
+		while (failure == null && (data = reader.readNext()) != null) {
+			if (skipToLine > 0 && reader.getLinesRead() <= skipToLine) {
+				// Committed before a restart
+				continue;
+			}
+			if (lines != null) {
+				lines[size] = reader.getLinesRead();
+			}
+			chunk[size++] = data;
+			if (size == chunkSize) {
+				submitChunk(chunk, lines, size);
+				chunk = new String[chunkSize][];
+				lines = trackLines ? new long[chunkSize] : null;
+				size = 0;
+			}
+		}
+		if (size > 0) {
+			submitChunk(chunk, lines, size);
+		}
+	}
+
+	private void submitChunk(String[][] rows, long[] lines, int size) {
+		offer(validatedChunks, CompletableFuture.supplyAsync(() -> validate(rows, lines, size), validatorExecutor),
+				false);
+	}
+
+	private void readSplits(MappedCsvFile file, long splitBytes) throws IOException {
+		MappedCsvFile.Split split;
+		while (failure == null && (split = file.nextSplit(splitBytes)) != null) {
+			MappedCsvFile.Split next = split;
+			offer(validatedChunks, CompletableFuture.supplyAsync(() -> {
+				MappedCsvFile.Rows parsed = next.parse(trackLines);
+				return validate(parsed.rows, parsed.lines, parsed.rows.length);
+			}, validatorExecutor), false);
+		}
+	}
+
+	private Chunk validate(String[][] rows, long[] lines, int size) {
+		long start = System.nanoTime();
+		ValidatedRecord[] records = new ValidatedRecord[size];
+		for (int i = 0; i < size; i++) {
+			records[i] = validator.apply(rows[i]);
+		}
+		metrics.chunkValidated(size, System.nanoTime() - start);
+		return new Chunk(rows, lines, records);
+	}
+
+	// Single thread, sees the chunks in file order
+	private void orderRecords() {
+		long lineOffset = context.getLineOffset();
+		long line = 0;
+		while (true) {
+			Chunk chunk = take(validatedChunks).join();
+			if (chunk == END_OF_INPUT || failure != null) {
+				break;
+			}
+			List<RejectedRowLog.Entry> rejects = rejectLog != null ? RejectedRowLog.newBuffer() : null;
+			for (int i = 0; i < chunk.records.length; i++) {
+				if (trackLines) {
+					line = chunk.lines[i] + lineOffset;
+				}
+				try {
+					Member member = resolver.resolve(chunk.records[i], context);
+					if (member == null) {
+						// Already stored, counted by the resolver
+						metrics.alreadyPresent();
+						continue;
+					}
+					if (context.addValid(member)) {
+						offer(batches, context.drainBatch(line), false);
+					}
+				} catch (InvalidRecordException e) {
+					context.addInvalid();
+					metrics.rejected(e.getRule());
+					if (rejects != null) {
+						rejects.add(new RejectedRowLog.Entry(line, chunk.rows[i], e));
+					}
+				}
+			}
+			if (rejects != null) {
+				rejectLog.submit(rejects);
+			}
+		}
+
+		// Insert the last records that did not fill up a whole batch
+		if (failure == null && context.hasPendingRecords()) {
+			offer(batches, context.drainBatch(line), false);
+		}
+		for (int i = 0; i < writerThreads; i++) {
+			offer(batches, NO_MORE_BATCHES, true);
+		}
+	}
+
+	private void writeBatches() {
+		List<Member> batch;
+		while ((batch = take(batches)) != NO_MORE_BATCHES) {
+			if (failure == null && acquireWriteConnection()) {
+				// Timed once the connection is ours, waiting for one says nothing
+				// about the batch size
+				long start = System.nanoTime();
+				long pauseNanos;
+				try {
+					batchWriter.accept(batch);
+					// Still holding the connection budget, the checkpoint may be saved here
+					pauseNanos = context.batchCommitted(batch, System.nanoTime() - start);
+				} finally {
+					scheduler.releaseWriteConnection();
+				}
+				pause(pauseNanos);
+			}
+		}
+	}
+
+	// Waits for one of the write connections, false once another stage has failed
+	private boolean acquireWriteConnection() {
+		try {
+			while (!scheduler.acquireWriteConnection(100)) {
+				if (failure != null) {
+					return false;
+				}
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvProcessingException("CSV processing interrupted", e);
+		}
+	}
+
+	// Backs off after a slow commit, cut short when the upload fails
+	private void pause(long nanos) {
+		long until = System.nanoTime() + nanos;
+		long left;
+		while (failure == null && (left = until - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(Math.min(left, TimeUnit.MILLISECONDS.toNanos(100)));
+		}
+	}
+
+	IngestContext getContext() {
+		return context;
+	}
+
+	int getValidatedChunkDepth() {
+		return validatedChunks.size();
+	}
+
+	int getBatchDepth() {
+		return batches.size();
+	}
+
+	// Wraps a stage so that an error stops the whole pipeline instead of just the stage
+	private Runnable guarded(Runnable stage) {
+		return () -> {
+			try {
+				stage.run();
+			} catch (CompletionException e) {
+				fail(e.getCause() instanceof RuntimeException re ? re : e);
+			} catch (RuntimeException e) {
+				fail(e);
+			}
+			if (failure != null) {
+				// Make sure nobody stays blocked on a queue this stage no longer serves
+				validatedChunks.clear();
+				batches.clear();
+				for (int i = 0; i < writerThreads; i++) {
+					batches.offer(NO_MORE_BATCHES);
+				}
+			}
+		};
+	}
+
+	private synchronized void fail(RuntimeException e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	// Waits for space in the queue, gives up once another stage has failed unless
+	// the item is an end marker which must always get through
+	private <T> void offer(BlockingQueue<T> queue, T item, boolean endMarker) {
+		try {
+			while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+				if (failure != null) {
+					if (!endMarker) {
+						return;
+					}
+					queue.clear();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvProcessingException("CSV processing interrupted", e);
+		}
+	}
+
+	private <T> T take(BlockingQueue<T> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvProcessingException("CSV processing interrupted", e);
+		}
+	}
+
+	private void await(Future<?> stage) {
+		try {
+			stage.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(new CsvProcessingException("CSV processing interrupted", e));
+		} catch (Exception e) {
+			fail(new CsvProcessingException("CSV processing failed", e));
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+package com.example.demo.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+import com.example.demo.exceptions.CsvProcessingException;
+import com.example.demo.repository.CSVProcessingRepository;
+
+// Hashes of the primary keys of all members in the database, shared by all
+// uploads. It is loaded once by streaming the keys from the members table and
+// after that every committed batch is added to it, so uploads can tell rows that
+// are already stored apart from new ones without a SELECT per row.
+//
+// Rows added or deleted outside the CSV upload are not seen until reload() is
+// called. Those are still handled by INSERT IGNORE, they are just counted as valid.
+//
+// In upsert mode the row hash of every member is kept with its key instead, so a
+// re-sent row is only written when its fields changed.
+@Component
+public class ExistingMemberIndex {
+
+	@Autowired
+	private CSVProcessingRepository csvProcessingRepository;
+
+	@Autowired
+	private ExecutorService csvPipelineExecutor;
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	@Value("${csv.ingest.existing-check.enabled:true}")
+	private boolean enabled;
+
+	// Load the keys when the application starts instead of on the first upload
+	@Value("${csv.ingest.existing-check.warm-up-on-start:true}")
+	private boolean warmUpOnStart;
+
+	@Value("${csv.ingest.existing-check.fetch-size:10000}")
+	private int fetchSize;
+
+	@Value("${csv.ingest.existing-check.off-heap:false}")
+	private boolean offHeap;
+
+	// Most keys looked up are not in the table, the Bloom filter answers those
+	// without touching the much larger hash table
+	@Value("${csv.ingest.existing-check.bloom-bits-per-key:10}")
+	private int bloomBitsPerKey;
+
+	// Rows of stored members are updated, see csv.ingest.upsert
+	@Value("${csv.ingest.upsert:false}")
+	private boolean upsert;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Only one of them is used, rowHashes in upsert mode
+	private MemberKeyIndex keys;
+	private MemberRowHashIndex rowHashes;
+
+	private CompletableFuture<Void> loading;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		if (enabled && warmUpOnStart) {
+			startLoading();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// Blocks until the keys are loaded, uploads call this before their first row
+	public void awaitLoaded() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			startLoading().join();
+		} catch (CompletionException e) {
+			throw new CsvProcessingException("Loading existing member keys failed", e.getCause());
+		}
+	}
+
+	// Throws away the loaded keys and reads them again from the database
+	public void reload() {
+		synchronized (this) {
+			loading = null;
+		}
+		awaitLoaded();
+	}
+
+	public boolean isUpsert() {
+		return upsert;
+	}
+
+	public boolean contains(MemberId id) {
+		long high = MemberKeyHash.high(id);
+		long low = MemberKeyHash.low(id);
+		lock.readLock().lock();
+		try {
+			return upsert ? rowHashes.get(high, low) != MemberRowHashIndex.ABSENT : keys.contains(high, low);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Upsert mode only: the member is stored with the same field values
+	public boolean isStoredUnchanged(Member member) {
+		long high = MemberKeyHash.high(member.getUniqId());
+		long low = MemberKeyHash.low(member.getUniqId());
+		lock.readLock().lock();
+		try {
+			long stored = rowHashes.get(high, low);
+			return stored != MemberRowHashIndex.ABSENT && member.getRowHash() != null
+					&& stored == member.getRowHash();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Called after a batch is committed
+	public void addCommitted(List<Member> members) {
+		if (!enabled) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			for (Member member : members) {
+				long high = MemberKeyHash.high(member.getUniqId());
+				long low = MemberKeyHash.low(member.getUniqId());
+				if (upsert) {
+					rowHashes.put(high, low, member.getRowHash() != null ? member.getRowHash() : MemberRowHashIndex.UNKNOWN);
+				} else {
+					keys.add(high, low);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return upsert ? (rowHashes != null ? rowHashes.size() : 0) : (keys != null ? keys.size() : 0);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private synchronized CompletableFuture<Void> startLoading() {
+		// Try again on the next upload if the last load failed
+		if (loading == null || loading.isCompletedExceptionally()) {
+			// Counted against the connections left over by the read reserve
+			loading = CompletableFuture.runAsync(() -> ingestScheduler.withConnection(this::load), csvPipelineExecutor);
+		}
+		return loading;
+	}
+
+	private void load() {
+		if (upsert) {
+			loadRowHashes();
+			return;
+		}
+		long count = csvProcessingRepository.countMembers();
+		// Room for the current rows plus what a few uploads will add
+		MemberKeyIndex loaded = new MemberKeyIndex((int) Math.min(count + count / 4 + 1024, 1 << 29), offHeap,
+				bloomBitsPerKey);
+		csvProcessingRepository.forEachMemberKey(fetchSize,
+				id -> loaded.add(MemberKeyHash.high(id), MemberKeyHash.low(id)));
+
+		lock.writeLock().lock();
+		try {
+			keys = loaded;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Kept on the heap, 32 bytes per member at the usual load
+	private void loadRowHashes() {
+		long count = csvProcessingRepository.countMembers();
+		MemberRowHashIndex loaded = new MemberRowHashIndex((int) Math.min(count + count / 4 + 1024, 1 << 28));
+		csvProcessingRepository.forEachMemberRowHash(fetchSize, (id, rowHash) -> loaded.put(MemberKeyHash.high(id),
+				MemberKeyHash.low(id), rowHash != null ? rowHash : MemberRowHashIndex.UNKNOWN));
+
+		lock.writeLock().lock();
+		try {
+			rowHashes = loaded;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+}
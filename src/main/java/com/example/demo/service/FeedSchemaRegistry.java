@@ -0,0 +1,68 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
+
+import com.example.demo.dto.FeedSchemaDefinition;
+import com.example.demo.exceptions.InvalidRecordException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+
+import jakarta.annotation.PostConstruct;
+
+// Loads every feed schema at startup and compiles it, a broken schema stops the
+// application from starting instead of failing uploads later
+@Component
+public class FeedSchemaRegistry {
+
+	public static final String DEFAULT_FEED = "default";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.setPropertyNamingStrategy(PropertyNamingStrategies.KEBAB_CASE);
+
+	@Value("${csv.feeds.location:classpath*:feeds/*.yml}")
+	private String location;
+
+	private final Map<String, CompiledFeedSchema> schemas = new HashMap<>();
+
+	@PostConstruct
+	void load() throws IOException {
+		for (Resource resource : new PathMatchingResourcePatternResolver().getResources(location)) {
+			CompiledFeedSchema schema = readSchema(resource);
+			if (schemas.put(schema.getName(), schema) != null) {
+				throw new IllegalStateException("Feed " + schema.getName() + " is defined twice");
+			}
+		}
+		if (!schemas.containsKey(DEFAULT_FEED)) {
+			throw new IllegalStateException("No feed schema named " + DEFAULT_FEED + " in " + location);
+		}
+	}
+
+	public CompiledFeedSchema get(String feed) {
+		CompiledFeedSchema schema = schemas.get(feed);
+		if (schema == null) {
+			throw new InvalidRecordException("Unknown feed: " + feed);
+		}
+		return schema;
+	}
+
+	public static CompiledFeedSchema readSchema(Resource resource) throws IOException {
+		try (InputStream in = resource.getInputStream()) {
+			Object yaml = new Yaml().load(in);
+			try {
+				return CompiledFeedSchema.compile(MAPPER.convertValue(yaml, FeedSchemaDefinition.class));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalStateException("Invalid feed schema " + resource.getDescription(), e);
+			}
+		}
+	}
+
+}
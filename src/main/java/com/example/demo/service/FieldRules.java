@@ -0,0 +1,323 @@
+package com.example.demo.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Pattern;
+
+import com.example.demo.exceptions.InvalidRecordException;
+
+// The check objects a feed schema is compiled into. Each one does a single job
+// with no per row interpretation of the schema, and the common cases (digit
+// checks, the two usual date shapes, address cleaning) are plain character scans.
+final class FieldRules {
+
+	private FieldRules() {
+	}
+
+	interface FieldCheck {
+
+		// Throws if the trimmed value is invalid (the rule of the exception is the
+		// field name, or dob_* for the date checks), otherwise returns the value the
+		// member gets: the parsed date or number for date and decimal checks, the
+		// text itself for others
+		Object check(String value) throws InvalidRecordException;
+
+		MemberField getField();
+
+		// Checks that depend on the current date return a copy bound to the given day
+		default FieldCheck forDay(LocalDate today) {
+			return this;
+		}
+	}
+
+	// Exact number of ASCII digits with an optional set of allowed first digits,
+	// e.g. ^[789]\d{9}$ is digits 10 with first digit in 789
+	static final class DigitsCheck implements FieldCheck {
+
+		private final MemberField field;
+		private final int length;
+		private final String firstDigits;
+		private final String message;
+
+		DigitsCheck(MemberField field, int length, String firstDigits, String message) {
+			this.field = field;
+			this.length = length;
+			this.firstDigits = firstDigits;
+			this.message = message;
+		}
+
+		@Override
+		public Object check(String value) {
+			if (value.length() != length || (firstDigits != null && firstDigits.indexOf(value.charAt(0)) < 0)
+					|| !allDigits(value, 0, length)) {
+				throw new InvalidRecordException(message + ": " + value, field.getPropertyName());
+			}
+			return value;
+		}
+
+		@Override
+		public MemberField getField() {
+			return field;
+		}
+	}
+
+	static final class PatternCheck implements FieldCheck {
+
+		private final MemberField field;
+		private final Pattern pattern;
+		private final String message;
+
+		PatternCheck(MemberField field, Pattern pattern, String message) {
+			this.field = field;
+			this.pattern = pattern;
+			this.message = message;
+		}
+
+		@Override
+		public Object check(String value) {
+			if (!pattern.matcher(value).matches()) {
+				throw new InvalidRecordException(message + ": " + value, field.getPropertyName());
+			}
+			return value;
+		}
+
+		@Override
+		public MemberField getField() {
+			return field;
+		}
+	}
+
+	// Non negative decimal number such as 25000 or 25000.5, with at most precision
+	// digits of which scale come after the point. The result always has the given
+	// scale, the same as what the database gives back. An empty value gives null,
+	// mark the column required to reject it.
+	static final class DecimalCheck implements FieldCheck {
+
+		private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000, 10000000,
+				100000000 };
+
+		private final MemberField field;
+		private final int integerDigits;
+		private final int scale;
+		private final String message;
+
+		DecimalCheck(MemberField field, int precision, int scale, String message) {
+			if (scale < 0 || scale >= POWERS_OF_TEN.length || precision <= scale || precision > 18) {
+				throw new IllegalArgumentException(
+						"Decimal needs 0 <= scale < precision <= 18 and scale < " + POWERS_OF_TEN.length);
+			}
+			this.field = field;
+			this.integerDigits = precision - scale;
+			this.scale = scale;
+			this.message = message;
+		}
+
+		@Override
+		public Object check(String value) {
+			int length = value.length();
+			if (length == 0) {
+				return null;
+			}
+			int point = value.indexOf('.');
+			int integerEnd = point < 0 ? length : point;
+			int fractionDigits = point < 0 ? 0 : length - point - 1;
+			if (integerEnd == 0 || integerEnd > integerDigits || !allDigits(value, 0, integerEnd)
+					|| (point >= 0 && (fractionDigits == 0 || fractionDigits > scale
+							|| !allDigits(value, point + 1, length)))) {
+				throw new InvalidRecordException(message + ": " + value, field.getPropertyName());
+			}
+			// Fits in a long because precision is at most 18
+			long unscaled = 0;
+			for (int i = 0; i < integerEnd; i++) {
+				unscaled = unscaled * 10 + (value.charAt(i) - '0');
+			}
+			unscaled *= POWERS_OF_TEN[scale];
+			if (point >= 0) {
+				unscaled += number(value, point + 1, length) * POWERS_OF_TEN[scale - fractionDigits];
+			}
+			return BigDecimal.valueOf(unscaled, scale);
+		}
+
+		@Override
+		public MemberField getField() {
+			return field;
+		}
+	}
+
+	static final class DateCheck implements FieldCheck {
+
+		private final MemberField field;
+		private final DateFormat[] formats;
+		private final boolean notInFuture;
+		private final Integer maxAgeYears;
+
+		// Set once bound to a day
+		private final LocalDate today;
+		// Anyone born on or before this day is older than maxAgeYears
+		private final LocalDate oldestAllowed;
+
+		DateCheck(MemberField field, DateFormat[] formats, boolean notInFuture, Integer maxAgeYears) {
+			this(field, formats, notInFuture, maxAgeYears, null);
+		}
+
+		private DateCheck(MemberField field, DateFormat[] formats, boolean notInFuture, Integer maxAgeYears,
+				LocalDate today) {
+			this.field = field;
+			this.formats = formats;
+			this.notInFuture = notInFuture;
+			this.maxAgeYears = maxAgeYears;
+			this.today = today;
+			this.oldestAllowed = today != null && maxAgeYears != null ? today.minusYears(maxAgeYears + 1L) : null;
+		}
+
+		@Override
+		public FieldCheck forDay(LocalDate day) {
+			return new DateCheck(field, formats, notInFuture, maxAgeYears, day);
+		}
+
+		@Override
+		public Object check(String value) {
+			LocalDate date = parse(value);
+			// validating date of birth if input date is after the current date,if date is
+			// future date it is invalid record
+			if (notInFuture && date.isAfter(today)) {
+				throw new InvalidRecordException("Future date: " + value, "dob_in_future");
+			}
+			if (oldestAllowed != null && !date.isAfter(oldestAllowed)) {
+				throw new InvalidRecordException("Age is greater than " + maxAgeYears + ": " + value, "dob_max_age");
+			}
+			return date;
+		}
+
+		@Override
+		public MemberField getField() {
+			return field;
+		}
+
+		private LocalDate parse(String value) {
+			for (DateFormat format : formats) {
+				if (format.appliesTo(value)) {
+					return format.parse(value);
+				}
+			}
+			throw new InvalidRecordException("Unsupported date format: " + value, "dob_format");
+		}
+	}
+
+	// One configured date pattern. Patterns shaped like dd-MM-yyyy or d/M/yyyy are
+	// read directly when the value has the usual shape, everything else goes
+	// through the formatter so the result is always what the formatter would give.
+	static final class DateFormat {
+
+		private final DateTimeFormatter formatter;
+		// First non letter in the pattern, 0 if there is none
+		private final char separator;
+		// 2 for dd<sep>MM<sep>yyyy, 1 for d<sep>M<sep>yyyy, 0 if there is no fast path
+		private final int minDigits;
+
+		DateFormat(String pattern) {
+			this.formatter = DateTimeFormatter.ofPattern(pattern);
+			char sep = 0;
+			for (int i = 0; i < pattern.length() && sep == 0; i++) {
+				if (!Character.isLetter(pattern.charAt(i))) {
+					sep = pattern.charAt(i);
+				}
+			}
+			this.separator = sep;
+			if (pattern.equals("dd" + sep + "MM" + sep + "yyyy")) {
+				minDigits = 2;
+			} else if (pattern.equals("d" + sep + "M" + sep + "yyyy")) {
+				minDigits = 1;
+			} else {
+				minDigits = 0;
+			}
+		}
+
+		boolean appliesTo(String value) {
+			return separator == 0 || value.indexOf(separator) >= 0;
+		}
+
+		LocalDate parse(String value) {
+			if (minDigits > 0) {
+				int first = value.indexOf(separator);
+				int second = value.indexOf(separator, first + 1);
+				if (first >= minDigits && first <= 2 && second - first > minDigits && second - first <= 3
+						&& value.length() - second == 5 && allDigits(value, 0, first)
+						&& allDigits(value, first + 1, second) && allDigits(value, second + 1, value.length())) {
+					return toDate(value, number(value, second + 1, value.length()), number(value, first + 1, second),
+							number(value, 0, first));
+				}
+			}
+			try {
+				return LocalDate.parse(value, formatter);
+			} catch (DateTimeParseException e) {
+				throw new InvalidRecordException("Invalid date format: " + value, "dob_format");
+			}
+		}
+
+		// Resolves the fields the way the formatter does: out of range values are
+		// rejected and a day past the end of the month becomes the last day of it
+		private static LocalDate toDate(String value, int year, int month, int day) {
+			if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31) {
+				throw new InvalidRecordException("Invalid date format: " + value, "dob_format");
+			}
+			int lastDay = Month.of(month).length(Year.isLeap(year));
+			return LocalDate.of(year, month, Math.min(day, lastDay));
+		}
+	}
+
+	// Removing special characters, same as replaceAll("[^a-zA-Z0-9\\s,]", "").
+	// The string is only copied when something has to be removed.
+	static String cleanAddress(String address) {
+		int length = address.length();
+		int i = 0;
+		while (i < length && isAddressChar(address.charAt(i))) {
+			i++;
+		}
+		if (i == length) {
+			return address;
+		}
+
+		char[] cleaned = new char[length - 1];
+		address.getChars(0, i, cleaned, 0);
+		int size = i;
+		for (i++; i < length; i++) {
+			char c = address.charAt(i);
+			if (isAddressChar(c)) {
+				cleaned[size++] = c;
+			}
+		}
+		return new String(cleaned, 0, size);
+	}
+
+	private static boolean isAddressChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == ',' || c == ' ' || c == '\t'
+				|| c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean allDigits(String s, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (!isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int number(String s, int from, int to) {
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			value = value * 10 + (s.charAt(i) - '0');
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,246 @@
+package com.example.demo.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.demo.entity.IngestCheckpoint;
+import com.example.demo.entity.Member;
+import com.example.demo.repository.IngestCheckpointRepository;
+
+// Saves the progress of a background job so it can go on from where it was
+// after a restart, without reading or inserting the committed part again.
+//
+// Every drained batch gets a mark: the line of the last row resolved before it,
+// the counters at that point and the duplicate check keys added since the
+// previous mark. Writer threads commit batches in any order, a mark is applied
+// once all batches before it are committed, so the checkpoint always covers a
+// prefix of the file that is completely decided and stored.
+//
+// The keys go to an append only file next to the spool file, the checkpoint row
+// says how many of them count. The byte offset of a line is found by counting
+// line ends from the previous checkpoint on, so the file is scanned once more
+// over the whole job, on the writer threads and not on the reading thread.
+class IngestCheckpointer implements Closeable {
+
+	private static final class Mark {
+
+		private final long sequence;
+		private final long line;
+		private final int validCount;
+		private final int invalidCount;
+		private final int alreadyPresentCount;
+		private final int updatedCount;
+		private final long[] keys;
+
+		Mark(long sequence, long line, int validCount, int invalidCount, int alreadyPresentCount, int updatedCount,
+				long[] keys) {
+			this.sequence = sequence;
+			this.line = line;
+			this.validCount = validCount;
+			this.invalidCount = invalidCount;
+			this.alreadyPresentCount = alreadyPresentCount;
+			this.updatedCount = updatedCount;
+			this.keys = keys;
+		}
+	}
+
+	private final IngestCheckpoint checkpoint;
+	private final IngestCheckpointRepository repository;
+	private final long intervalMs;
+	private final int batchesBefore;
+
+	private final LineScanner spool;
+	private final FileChannel keysChannel;
+	private final DataOutputStream keys;
+
+	// Used by the ordering stage only
+	private long[] newKeys = new long[512];
+	private int newKeyCount;
+	private long nextSequence;
+
+	// Guarded by this
+	private final Map<List<Member>, Mark> drained = new IdentityHashMap<>();
+	private final Map<Long, Mark> committed = new HashMap<>();
+	private long nextToApply;
+	private long lastSaved = System.currentTimeMillis();
+
+	// Keys past the checkpoint are from rows that will be read again, they are cut off.
+	// Byte offsets mean nothing in a compressed spool file, then only lines are kept.
+	IngestCheckpointer(IngestCheckpoint checkpoint, Path spoolFile, boolean compressed, Path keysFile,
+			IngestCheckpointRepository repository, long intervalMs) throws IOException {
+		this.checkpoint = checkpoint;
+		this.repository = repository;
+		this.intervalMs = intervalMs;
+		this.batchesBefore = checkpoint.getBatchesCommitted();
+		this.spool = compressed ? null
+				: new LineScanner(spoolFile, checkpoint.getByteOffset(), checkpoint.getLineNumber());
+		this.keysChannel = FileChannel.open(keysFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		keysChannel.truncate(checkpoint.getKeyCount() * 16);
+		keysChannel.position(checkpoint.getKeyCount() * 16);
+		this.keys = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(keysChannel), 64 * 1024));
+	}
+
+	// Keys of the duplicate check as they were at the checkpoint
+	static void readKeys(Path keysFile, long count, IngestContext context) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(FileChannel.open(keysFile)), 64 * 1024))) {
+			for (long i = 0; i < count; i++) {
+				context.markUnique(in.readLong(), in.readLong());
+			}
+		}
+	}
+
+	// Length of the header line including its line end
+	static long headerLength(Path spoolFile) throws IOException {
+		try (LineScanner scanner = new LineScanner(spoolFile, 0, 0)) {
+			return scanner.offsetOf(1);
+		}
+	}
+
+	// Ordering stage, a key that was not seen before in this file
+	void keyAdded(long keyHigh, long keyLow) {
+		if (newKeyCount + 2 > newKeys.length) {
+			newKeys = Arrays.copyOf(newKeys, newKeys.length * 2);
+		}
+		newKeys[newKeyCount++] = keyHigh;
+		newKeys[newKeyCount++] = keyLow;
+	}
+
+	// Ordering stage, the batch holds everything resolved up to the given line
+	void batchDrained(List<Member> batch, long line, int validCount, int invalidCount, int alreadyPresentCount,
+			int updatedCount) {
+		Mark mark = new Mark(nextSequence++, line, validCount, invalidCount, alreadyPresentCount, updatedCount,
+				Arrays.copyOf(newKeys, newKeyCount));
+		newKeyCount = 0;
+		synchronized (this) {
+			drained.put(batch, mark);
+		}
+	}
+
+	// Writer threads, after the batch is committed
+	synchronized void batchCommitted(List<Member> batch) {
+		Mark mark = drained.remove(batch);
+		if (mark == null) {
+			return;
+		}
+		committed.put(mark.sequence, mark);
+		try {
+			boolean advanced = false;
+			while ((mark = committed.remove(nextToApply)) != null) {
+				for (long key : mark.keys) {
+					keys.writeLong(key);
+				}
+				checkpoint.setLineNumber(mark.line);
+				checkpoint.setValidCount(mark.validCount);
+				checkpoint.setInvalidCount(mark.invalidCount);
+				checkpoint.setAlreadyPresentCount(mark.alreadyPresentCount);
+				checkpoint.setUpdatedCount(mark.updatedCount);
+				checkpoint.setBatchesCommitted(batchesBefore + (int) nextToApply + 1);
+				checkpoint.setKeyCount(checkpoint.getKeyCount() + mark.keys.length / 2);
+				nextToApply++;
+				advanced = true;
+			}
+			if (advanced && System.currentTimeMillis() - lastSaved >= intervalMs) {
+				save();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not save checkpoint of job " + checkpoint.getJobId(), e);
+		}
+	}
+
+	// The keys are on disk before the row that counts them
+	private void save() throws IOException {
+		keys.flush();
+		keysChannel.force(false);
+		if (spool != null) {
+			checkpoint.setByteOffset(spool.offsetOf(checkpoint.getLineNumber()));
+		}
+		checkpoint.setUpdatedAt(System.currentTimeMillis());
+		repository.save(checkpoint);
+		lastSaved = checkpoint.getUpdatedAt();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try (LineScanner s = spool) {
+			keys.close();
+		}
+	}
+
+	// Finds where lines start by counting \n, \r\n and \r line ends the way the
+	// CSV reader counts lines, continuing from the last position asked for
+	private static final class LineScanner implements Closeable {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		private long offset;
+		private long line;
+
+		LineScanner(Path file, long offset, long line) throws IOException {
+			this.channel = FileChannel.open(file);
+			channel.position(offset);
+			buffer.flip();
+			this.offset = offset;
+			this.line = line;
+		}
+
+		long offsetOf(long targetLine) throws IOException {
+			while (line < targetLine) {
+				int b = next();
+				if (b < 0) {
+					break;
+				}
+				offset++;
+				if (b == '\n') {
+					line++;
+				} else if (b == '\r') {
+					line++;
+					if (peek() == '\n') {
+						next();
+						offset++;
+					}
+				}
+			}
+			return offset;
+		}
+
+		private int next() throws IOException {
+			return fill() ? buffer.get() & 0xFF : -1;
+		}
+
+		private int peek() throws IOException {
+			return fill() ? buffer.get(buffer.position()) & 0xFF : -1;
+		}
+
+		private boolean fill() throws IOException {
+			if (buffer.hasRemaining()) {
+				return true;
+			}
+			buffer.clear();
+			int n = channel.read(buffer);
+			buffer.flip();
+			return n > 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.demo.entity.Member;
+
+// State of a single CSV upload. A new context is created for every file so
+// concurrent uploads never share counters or the duplicate check, and
+// everything here is garbage once the upload is finished.
+//
+// Records are resolved on one thread, the counters are volatile so job status
+// requests can read them while the upload is running.
+public class IngestContext {
+
+	// Size of the next batch, adjusted as batches are committed
+	private final AdaptiveBatchSizer batchSizer;
+
+	private final MemberRecordValidator validator;
+
+	private volatile int validCount = 0;
+	private volatile int invalidCount = 0;
+	// Valid rows whose key is already in the members table
+	private volatile int alreadyPresentCount = 0;
+	// Valid rows that replace a stored member with different values, upsert mode only
+	private volatile int updatedCount = 0;
+
+	// Updated by the writer threads
+	private final AtomicInteger batchesCommitted = new AtomicInteger();
+
+	// Hashes of the unique records of this file
+	private final MemberKeyIndex uniqueRecords;
+
+	// Records waiting for the next batch insert
+	private List<Member> batch;
+
+	// Where rejected rows go, null when they are only counted
+	private volatile RejectedRowLog rejectLog;
+
+	// Saves the progress of a background job, null for plain uploads
+	private volatile IngestCheckpointer checkpointer;
+
+	// Lines of the file before the part being read, for a resumed job
+	private volatile long lineOffset;
+	// Records ending on or before this line are skipped, for a resumed job that
+	// has to read its file from the start
+	private volatile long skipToLine;
+
+	public IngestContext(int batchSize, MemberRecordValidator validator) {
+		this(AdaptiveBatchSizer.fixed(batchSize), validator, new MemberKeyIndex(1024, false, 0));
+	}
+
+	IngestContext(AdaptiveBatchSizer batchSizer, MemberRecordValidator validator, MemberKeyIndex uniqueRecords) {
+		this.batchSizer = batchSizer;
+		this.validator = validator;
+		this.uniqueRecords = uniqueRecords;
+		this.batch = new ArrayList<>(batchSizer.getSize());
+	}
+
+	// Returns false if the key was already seen in this file
+	public boolean markUnique(long keyHigh, long keyLow) {
+		if (!uniqueRecords.add(keyHigh, keyLow)) {
+			return false;
+		}
+		if (checkpointer != null) {
+			checkpointer.keyAdded(keyHigh, keyLow);
+		}
+		return true;
+	}
+
+	// Adds a valid record, returns true once the batch is full
+	public boolean addValid(Member member) {
+		batch.add(member);
+		validCount++;
+		return batch.size() >= batchSizer.getSize();
+	}
+
+	public void addInvalid() {
+		invalidCount++;
+	}
+
+	public void addAlreadyPresent() {
+		alreadyPresentCount++;
+	}
+
+	public void addUpdated() {
+		updatedCount++;
+	}
+
+	// Hands over the pending records and starts a new batch
+	public List<Member> drainBatch() {
+		return drainBatch(0);
+	}
+
+	// Same, line is the last line of the file resolved so far
+	public List<Member> drainBatch(long line) {
+		List<Member> members = batch;
+		batch = new ArrayList<>(batchSizer.getSize());
+		if (checkpointer != null) {
+			checkpointer.batchDrained(members, line, validCount, invalidCount, alreadyPresentCount, updatedCount);
+		}
+		return members;
+	}
+
+	// nanos is the time the batch took to write and commit. Returns how long
+	// the writer should wait before its next commit.
+	public long batchCommitted(List<Member> members, long nanos) {
+		batchesCommitted.incrementAndGet();
+		if (checkpointer != null) {
+			checkpointer.batchCommitted(members);
+		}
+		return batchSizer.committed(members.size(), nanos);
+	}
+
+	// Counters of a resumed job as they were at its checkpoint, set before it starts
+	void restore(int validCount, int invalidCount, int alreadyPresentCount, int updatedCount,
+			int batchesCommitted) {
+		this.validCount = validCount;
+		this.invalidCount = invalidCount;
+		this.alreadyPresentCount = alreadyPresentCount;
+		this.updatedCount = updatedCount;
+		this.batchesCommitted.set(batchesCommitted);
+	}
+
+	public boolean hasPendingRecords() {
+		return !batch.isEmpty();
+	}
+
+	public int getUniqueRecordCount() {
+		return uniqueRecords.size();
+	}
+
+	// Has to be set before the upload starts
+	void logRejects(RejectedRowLog rejectLog) {
+		this.rejectLog = rejectLog;
+	}
+
+	public RejectedRowLog getRejectLog() {
+		return rejectLog;
+	}
+
+	// Has to be set before the upload starts
+	void checkpointWith(IngestCheckpointer checkpointer) {
+		this.checkpointer = checkpointer;
+	}
+
+	boolean isCheckpointed() {
+		return checkpointer != null;
+	}
+
+	public long getLineOffset() {
+		return lineOffset;
+	}
+
+	// The input is the header followed by the lines after the given one
+	void startAtLine(long line) {
+		this.lineOffset = line - 1;
+	}
+
+	void skipTo(long line) {
+		this.skipToLine = line;
+	}
+
+	public long getSkipToLine() {
+		return skipToLine;
+	}
+
+	public MemberRecordValidator getValidator() {
+		return validator;
+	}
+
+	public int getValidCount() {
+		return validCount;
+	}
+
+	public int getInvalidCount() {
+		return invalidCount;
+	}
+
+	public int getAlreadyPresentCount() {
+		return alreadyPresentCount;
+	}
+
+	public int getUpdatedCount() {
+		return updatedCount;
+	}
+
+	public int getRowsRead() {
+		return validCount + invalidCount + alreadyPresentCount;
+	}
+
+	public int getBatchesCommitted() {
+		return batchesCommitted.get();
+	}
+
+	public int getBatchSize() {
+		return batchSizer.getSize();
+	}
+
+	public double getBatchLatencyMs() {
+		return batchSizer.getAverageLatencyMs();
+	}
+
+	public double getBatchRowsPerSecond() {
+		return batchSizer.getAverageRowsPerSecond();
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.example.demo.service;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+import com.example.demo.dto.CsvProcessingResult;
+
+import lombok.Getter;
+
+// An upload that is processed in the background, see IngestJobService
+@Getter
+public class IngestJob {
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	private final String id;
+	private final Path file;
+	private final long totalBytes;
+	private final IngestContext context;
+	private final long submittedAt = System.currentTimeMillis();
+
+	private volatile Status status = Status.QUEUED;
+	private volatile long startedAt;
+	private volatile long finishedAt;
+	private volatile CountingInputStream input;
+	// Bytes of the file a resumed job does not read again
+	private volatile long bytesSkipped;
+	private volatile CsvProcessingResult result;
+	private volatile String error;
+	// Set when the rejected rows could not all be written, the job goes on
+	private volatile String rejectsError;
+
+	IngestJob(Path file, long totalBytes, IngestContext context) {
+		this(UUID.randomUUID().toString(), file, totalBytes, context);
+	}
+
+	IngestJob(String id, Path file, long totalBytes, IngestContext context) {
+		this.id = id;
+		this.file = file;
+		this.totalBytes = totalBytes;
+		this.context = context;
+	}
+
+	void started(CountingInputStream input, long bytesSkipped) {
+		this.input = input;
+		this.bytesSkipped = bytesSkipped;
+		this.startedAt = System.currentTimeMillis();
+		this.status = Status.RUNNING;
+	}
+
+	void completed(CsvProcessingResult result) {
+		this.result = result;
+		this.finishedAt = System.currentTimeMillis();
+		this.status = Status.COMPLETED;
+	}
+
+	void failed(String error) {
+		this.error = error;
+		this.finishedAt = System.currentTimeMillis();
+		this.status = Status.FAILED;
+	}
+
+	void rejectsFailed(String rejectsError) {
+		this.rejectsError = rejectsError;
+	}
+
+	public boolean isFinished() {
+		return status == Status.COMPLETED || status == Status.FAILED;
+	}
+
+	public long getBytesRead() {
+		CountingInputStream in = input;
+		return in != null ? bytesSkipped + in.getCount() : 0;
+	}
+
+}
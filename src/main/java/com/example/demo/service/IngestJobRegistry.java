@@ -0,0 +1,63 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Keeps the most recent ingest jobs. When there are more than max-retained jobs
+// the oldest finished ones are dropped, jobs that are still running are kept.
+@Component
+public class IngestJobRegistry {
+
+	@Value("${csv.jobs.max-retained:100}")
+	private int maxRetained;
+
+	private final Map<String, IngestJob> jobs = new LinkedHashMap<>();
+
+	public synchronized void register(IngestJob job) {
+		jobs.put(job.getId(), job);
+		evictFinished();
+	}
+
+	// Takes back a job that could not be started, unless another run replaced it
+	public synchronized void remove(IngestJob job) {
+		jobs.remove(job.getId(), job);
+	}
+
+	public synchronized Optional<IngestJob> find(String id) {
+		return Optional.ofNullable(jobs.get(id));
+	}
+
+	public synchronized int size() {
+		return jobs.size();
+	}
+
+	private void evictFinished() {
+		Iterator<IngestJob> it = jobs.values().iterator();
+		while (jobs.size() > maxRetained && it.hasNext()) {
+			IngestJob job = it.next();
+			if (job.isFinished()) {
+				it.remove();
+				deleteRejects(job);
+			}
+		}
+	}
+
+	private void deleteRejects(IngestJob job) {
+		RejectedRowLog rejectLog = job.getContext().getRejectLog();
+		if (rejectLog != null) {
+			try {
+				Files.deleteIfExists(rejectLog.getFile());
+			} catch (IOException e) {
+				// left for whoever cleans the rejects directory
+			}
+		}
+	}
+
+}
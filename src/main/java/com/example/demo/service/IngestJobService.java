@@ -0,0 +1,422 @@
+package com.example.demo.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.demo.dto.CsvProcessingResult;
+import com.example.demo.dto.IngestJobStatus;
+import com.example.demo.entity.IngestCheckpoint;
+import com.example.demo.exceptions.CsvProcessingException;
+import com.example.demo.exceptions.IngestBusyException;
+import com.example.demo.exceptions.IngestJobNotFinishedException;
+import com.example.demo.exceptions.IngestJobNotFoundException;
+import com.example.demo.repository.IngestCheckpointRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Runs uploads in the background so the HTTP request returns right away.
+// The upload is first copied to a spool file because the multipart file and
+// the request body are gone once the request is finished.
+//
+// While a job runs its progress is saved as an IngestCheckpoint. A job that
+// failed, or was running when the application stopped, keeps its spool file and
+// goes on after its checkpoint when resumed: the committed rows are neither read
+// nor inserted again. Rows committed after the last checkpoint are read again and
+// found in the existing member check, so they are counted as already present.
+//
+// A job that has started max-attempts times without finishing is not resumed on
+// start any more, it is marked failed. Failed jobs nobody resumes are dropped
+// with their files after failed-retention-hours.
+//
+// Rejected rows are a by-product: when their file cannot be written the job
+// still completes, the status reports rejectsError.
+@Slf4j
+@Service
+public class IngestJobService {
+
+	@Autowired
+	private CSVProcessingService csvProcessingService;
+
+	@Autowired
+	private IngestJobRegistry ingestJobRegistry;
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	@Autowired
+	private ExecutorService csvPipelineExecutor;
+
+	@Autowired
+	private IngestCheckpointRepository ingestCheckpointRepository;
+
+	@Autowired
+	private FeedSchemaRegistry feedSchemaRegistry;
+
+	// Uploaded files and the duplicate check keys of unfinished jobs
+	@Value("${csv.jobs.spool-dir:${java.io.tmpdir}/csv-jobs}")
+	private Path spoolDir;
+
+	// Shortest time between two checkpoint saves of a job, 0 saves after every batch
+	@Value("${csv.jobs.checkpoint.interval-ms:1000}")
+	private long checkpointIntervalMs;
+
+	@Value("${csv.jobs.resume-on-start:true}")
+	private boolean resumeOnStart;
+
+	// A job that keeps bringing the application down is only resumed this often
+	@Value("${csv.jobs.max-attempts:3}")
+	private int maxAttempts;
+
+	@Value("${csv.jobs.failed-retention-hours:72}")
+	private long failedRetentionHours;
+
+	// Rejected rows of every job go to a gzip file that can be downloaded from
+	// GET /api/csv/jobs/{id}/rejects, the file is deleted with the job
+	@Value("${csv.jobs.rejects.enabled:true}")
+	private boolean rejectsEnabled;
+
+	@Value("${csv.jobs.rejects.dir:${java.io.tmpdir}/csv-rejects}")
+	private Path rejectsDir;
+
+	// Chunks of rejected rows that may wait for the file before more are dropped
+	@Value("${csv.jobs.rejects.queue-capacity:64}")
+	private int rejectsQueueCapacity;
+
+	// The job waits in the ingest queue with the others of the submitter, see IngestScheduler
+	public IngestJobStatus submit(MultipartFile file, String feed, String submitter) {
+		ingestScheduler.checkAdmission();
+		discardExpiredJobs();
+		// An unknown feed is refused before the file is stored
+		feedSchemaRegistry.get(feed);
+		String jobId = UUID.randomUUID().toString();
+		try {
+			Path path = spoolFile(jobId);
+			file.transferTo(path);
+			return submit(jobId, path, feed, submitter);
+		} catch (IOException e) {
+			throw new CsvProcessingException("Could not store uploaded file", e);
+		}
+	}
+
+	public IngestJobStatus submit(InputStream body, String feed, String submitter) {
+		// Refused before the body is copied
+		ingestScheduler.checkAdmission();
+		discardExpiredJobs();
+		feedSchemaRegistry.get(feed);
+		String jobId = UUID.randomUUID().toString();
+		try {
+			Path path = spoolFile(jobId);
+			Files.copy(body, path, StandardCopyOption.REPLACE_EXISTING);
+			return submit(jobId, path, feed, submitter);
+		} catch (IOException e) {
+			throw new CsvProcessingException("Could not store uploaded file", e);
+		}
+	}
+
+	// The duplicate check is sized for the stored file
+	private IngestJobStatus submit(String jobId, Path path, String feed, String submitter) throws IOException {
+		IngestContext context = csvProcessingService.createContext(feed, Files.size(path));
+		IngestJob job = new IngestJob(jobId, path, Files.size(path), context);
+		IngestCheckpoint checkpoint = new IngestCheckpoint(jobId, context.getValidator().getSchema().getName(),
+				job.getTotalBytes());
+		ingestCheckpointRepository.save(checkpoint);
+		// Registered first, a job that starts right away is already found by its id
+		ingestJobRegistry.register(job);
+		try {
+			ingestScheduler.submit(submitter, () -> run(job, checkpoint));
+		} catch (IngestBusyException e) {
+			// The queue filled up while the file was copied
+			ingestJobRegistry.remove(job);
+			ingestCheckpointRepository.deleteById(jobId);
+			deleteQuietly(path);
+			throw e;
+		}
+		return toStatus(job);
+	}
+
+	// Continues a failed job after its last checkpoint
+	public IngestJobStatus resume(String jobId, String submitter) {
+		if (!ingestCheckpointRepository.existsById(jobId)) {
+			throw new IngestJobNotFoundException("No unfinished ingest job: " + jobId);
+		}
+		// Of two requests resuming the same job only one moves it out of FAILED
+		if (ingestCheckpointRepository.updateStatus(jobId, IngestCheckpoint.FAILED, IngestCheckpoint.QUEUED,
+				System.currentTimeMillis()) == 0) {
+			throw new IngestJobNotFinishedException("Ingest job is still queued or running: " + jobId);
+		}
+		IngestCheckpoint checkpoint = ingestCheckpointRepository.findById(jobId)
+				.orElseThrow(() -> new IngestJobNotFoundException("No unfinished ingest job: " + jobId));
+		try {
+			return resume(checkpoint, submitter, true);
+		} catch (IOException e) {
+			saveStatus(checkpoint, IngestCheckpoint.FAILED);
+			throw new CsvProcessingException("Could not resume ingest job " + jobId, e);
+		} catch (RuntimeException e) {
+			saveStatus(checkpoint, IngestCheckpoint.FAILED);
+			throw e;
+		}
+	}
+
+	// Jobs that were queued or running when the application stopped
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeUnfinishedJobs() {
+		discardExpiredJobs();
+		if (!resumeOnStart) {
+			return;
+		}
+		for (IngestCheckpoint checkpoint : ingestCheckpointRepository
+				.findByStatusIn(List.of(IngestCheckpoint.QUEUED, IngestCheckpoint.RUNNING))) {
+			if (checkpoint.getAttempts() >= maxAttempts) {
+				// Can still be resumed by hand
+				saveStatus(checkpoint, IngestCheckpoint.FAILED);
+				continue;
+			}
+			try {
+				// Admitted before the restart, so not refused when the queue is full
+				resume(checkpoint, IngestScheduler.SYSTEM, false);
+			} catch (IOException | RuntimeException e) {
+				saveStatus(checkpoint, IngestCheckpoint.FAILED);
+			}
+		}
+	}
+
+	private IngestJobStatus resume(IngestCheckpoint checkpoint, String submitter, boolean limited)
+			throws IOException {
+		String jobId = checkpoint.getJobId();
+		Path path = spoolFile(jobId);
+		if (!Files.exists(path)) {
+			throw new IngestJobNotFoundException("Spool file of ingest job is gone: " + jobId);
+		}
+		IngestContext context = csvProcessingService.createContext(checkpoint.getFeed(), checkpoint.getTotalBytes());
+		context.restore(checkpoint.getValidCount(), checkpoint.getInvalidCount(), checkpoint.getAlreadyPresentCount(),
+				checkpoint.getUpdatedCount(), checkpoint.getBatchesCommitted());
+		if (checkpoint.getKeyCount() > 0) {
+			IngestCheckpointer.readKeys(keysFile(jobId), checkpoint.getKeyCount(), context);
+		}
+		IngestJob job = new IngestJob(jobId, path, checkpoint.getTotalBytes(), context);
+		saveStatus(checkpoint, IngestCheckpoint.QUEUED);
+		IngestJob failed = ingestJobRegistry.find(jobId).orElse(null);
+		ingestJobRegistry.register(job);
+		try {
+			if (limited) {
+				ingestScheduler.submit(submitter, () -> run(job, checkpoint));
+			} else {
+				ingestScheduler.resubmit(submitter, () -> run(job, checkpoint));
+			}
+		} catch (IngestBusyException e) {
+			// The failed run stays the one reported
+			ingestJobRegistry.remove(job);
+			if (failed != null) {
+				ingestJobRegistry.register(failed);
+			}
+			throw e;
+		}
+		return toStatus(job);
+	}
+
+	public IngestJobStatus getStatus(String jobId) {
+		IngestJob job = ingestJobRegistry.find(jobId)
+				.orElseThrow(() -> new IngestJobNotFoundException("Ingest job not found: " + jobId));
+		return toStatus(job);
+	}
+
+	// The rejected rows of a finished job
+	public Path getRejects(String jobId) {
+		IngestJob job = ingestJobRegistry.find(jobId)
+				.orElseThrow(() -> new IngestJobNotFoundException("Ingest job not found: " + jobId));
+		RejectedRowLog rejectLog = job.getContext().getRejectLog();
+		if (rejectLog == null) {
+			throw new IngestJobNotFoundException("No rejected rows recorded for job: " + jobId);
+		}
+		if (!job.isFinished()) {
+			throw new IngestJobNotFinishedException("Ingest job is still running: " + jobId);
+		}
+		return rejectLog.getFile();
+	}
+
+	private void run(IngestJob job, IngestCheckpoint checkpoint) {
+		CsvProcessingResult result;
+		try {
+			result = process(job, checkpoint);
+		} catch (IOException | RuntimeException e) {
+			job.failed(e.getMessage());
+			saveStatus(checkpoint, IngestCheckpoint.FAILED);
+			return;
+		}
+		// Nothing left to resume
+		ingestCheckpointRepository.deleteById(job.getId());
+		deleteQuietly(job.getFile());
+		deleteQuietly(keysFile(job.getId()));
+		job.completed(result);
+	}
+
+	// The checkpointer and the reject log are closed before this returns, so
+	// their files are complete once the job is (unless rejectsError is set)
+	private CsvProcessingResult process(IngestJob job, IngestCheckpoint checkpoint) throws IOException {
+		long bytesSkipped = 0;
+		boolean compressed;
+		try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(job.getFile()))) {
+			compressed = CompressedInput.detect(in) != CompressedInput.Format.PLAIN;
+		}
+		byte[] header = null;
+		if (compressed) {
+			// No way to seek in a compressed file, the committed records are read but skipped
+			job.getContext().skipTo(checkpoint.getLineNumber());
+		} else if (checkpoint.getLineNumber() > 0) {
+			try (InputStream in = Files.newInputStream(job.getFile())) {
+				header = in.readNBytes((int) IngestCheckpointer.headerLength(job.getFile()));
+			}
+			bytesSkipped = checkpoint.getByteOffset() - header.length;
+			job.getContext().startAtLine(checkpoint.getLineNumber());
+		}
+
+		// A job that ran before adds to the rejects of its earlier runs
+		RejectedRowLog rejectLog = openRejectLog(job, checkpoint.getAttempts() > 0);
+		try (InputStream source = header == null ? Files.newInputStream(job.getFile())
+				: openAfterCheckpoint(job.getFile(), header, checkpoint.getByteOffset());
+				CountingInputStream in = new CountingInputStream(source);
+				IngestCheckpointer checkpointer = openCheckpointer(job, checkpoint, compressed)) {
+			checkpoint.setAttempts(checkpoint.getAttempts() + 1);
+			saveStatus(checkpoint, IngestCheckpoint.RUNNING);
+			job.started(in, bytesSkipped);
+			return csvProcessingService.processCsvStream(in, job.getContext());
+		} finally {
+			closeRejectLog(job, rejectLog);
+		}
+	}
+
+	private static void closeRejectLog(IngestJob job, RejectedRowLog rejectLog) {
+		if (rejectLog == null) {
+			return;
+		}
+		try {
+			rejectLog.close();
+		} catch (IOException | RuntimeException e) {
+			log.warn("Rejected rows of ingest job {} could not be written", job.getId(), e);
+			job.rejectsFailed(e.getMessage());
+		}
+	}
+
+	// The header line followed by the lines after the checkpoint
+	private static InputStream openAfterCheckpoint(Path file, byte[] header, long byteOffset) throws IOException {
+		FileChannel rest = FileChannel.open(file);
+		try {
+			rest.position(byteOffset);
+			return new SequenceInputStream(new ByteArrayInputStream(header), Channels.newInputStream(rest));
+		} catch (IOException | RuntimeException e) {
+			rest.close();
+			throw e;
+		}
+	}
+
+	private IngestCheckpointer openCheckpointer(IngestJob job, IngestCheckpoint checkpoint, boolean compressed)
+			throws IOException {
+		IngestCheckpointer checkpointer = new IngestCheckpointer(checkpoint, job.getFile(), compressed,
+				keysFile(job.getId()), ingestCheckpointRepository, checkpointIntervalMs);
+		job.getContext().checkpointWith(checkpointer);
+		return checkpointer;
+	}
+
+	private void saveStatus(IngestCheckpoint checkpoint, String status) {
+		checkpoint.setStatus(status);
+		checkpoint.setUpdatedAt(System.currentTimeMillis());
+		try {
+			ingestScheduler.withConnection(() -> ingestCheckpointRepository.save(checkpoint));
+		} catch (RuntimeException e) {
+			// The job is left with its previous status and is resumed on the next start
+		}
+	}
+
+	// Failed jobs nobody resumed within failed-retention-hours give up their
+	// checkpoint, spool file, keys file and rejected rows
+	void discardExpiredJobs() {
+		long before = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(failedRetentionHours);
+		for (IngestCheckpoint checkpoint : ingestCheckpointRepository
+				.findByStatusAndUpdatedAtLessThan(IngestCheckpoint.FAILED, before)) {
+			String jobId = checkpoint.getJobId();
+			if (ingestCheckpointRepository.deleteExpired(jobId, before) > 0) {
+				deleteQuietly(spoolDir.resolve(jobId + ".csv"));
+				deleteQuietly(keysFile(jobId));
+				if (ingestJobRegistry.find(jobId).isEmpty()) {
+					deleteQuietly(rejectsFile(jobId));
+				}
+			}
+		}
+	}
+
+	private Path spoolFile(String jobId) throws IOException {
+		Files.createDirectories(spoolDir);
+		return spoolDir.resolve(jobId + ".csv");
+	}
+
+	private Path keysFile(String jobId) {
+		return spoolDir.resolve(jobId + ".keys");
+	}
+
+	private Path rejectsFile(String jobId) {
+		return rejectsDir.resolve(jobId + "-rejects.csv.gz");
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// left for whoever cleans the spool directory
+		}
+	}
+
+	RejectedRowLog openRejectLog(IngestJob job, boolean append) throws IOException {
+		if (!rejectsEnabled) {
+			return null;
+		}
+		Files.createDirectories(rejectsDir);
+		RejectedRowLog rejectLog = new RejectedRowLog(rejectsFile(job.getId()),
+				csvPipelineExecutor, rejectsQueueCapacity, append);
+		job.getContext().logRejects(rejectLog);
+		return rejectLog;
+	}
+
+	private IngestJobStatus toStatus(IngestJob job) {
+		IngestContext context = job.getContext();
+		long end = job.isFinished() ? job.getFinishedAt() : System.currentTimeMillis();
+		long elapsedMs = job.getStartedAt() > 0 ? end - job.getStartedAt() : 0;
+		int rowsRead = context.getRowsRead();
+		double rowsPerSecond = elapsedMs > 0 ? rowsRead * 1000.0 / elapsedMs : 0;
+
+		// Estimate the remaining time from the share of the file read so far
+		Long etaSeconds = null;
+		long bytesRead = job.getBytesRead();
+		if (job.getStatus() == IngestJob.Status.RUNNING && bytesRead > 0) {
+			long remainingBytes = Math.max(job.getTotalBytes() - bytesRead, 0);
+			etaSeconds = elapsedMs * remainingBytes / bytesRead / 1000;
+		}
+
+		RejectedRowLog rejectLog = context.getRejectLog();
+		return new IngestJobStatus(job.getId(), job.getStatus().name(), bytesRead, job.getTotalBytes(), rowsRead,
+				context.getValidCount(), context.getInvalidCount(), context.getAlreadyPresentCount(),
+				rowsPerSecond, context.getBatchesCommitted(),
+				context.getBatchSize(), context.getBatchLatencyMs(), context.getBatchRowsPerSecond(),
+				rejectLog != null ? rejectLog.getWritten() : 0, rejectLog != null ? rejectLog.getDropped() : 0,
+				job.getRejectsError(), etaSeconds, job.getResult(), job.getError());
+	}
+
+}
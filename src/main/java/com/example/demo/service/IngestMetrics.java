@@ -0,0 +1,148 @@
+package com.example.demo.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+
+// Meters of the upload pipeline, exposed through /actuator/metrics and
+// /actuator/prometheus. Rates (rows per second and so on) are left to the
+// monitoring system, e.g. rate(csv_ingest_rows_total[1m]).
+//
+// Everything called per row only increments an existing counter, meters are
+// created up front or once per rejection rule, so this can stay on in production.
+@Component
+public class IngestMetrics {
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private ExistingMemberIndex existingMemberIndex;
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	@Autowired
+	private ExecutorService csvValidatorExecutor;
+
+	@Autowired
+	private ExecutorService csvJobExecutor;
+
+	@Value("${csv.ingest.writer:jdbc-batch}")
+	private String writerName;
+
+	private Counter rowsParsed;
+	private Counter alreadyPresent;
+	private Timer chunkValidation;
+	private Timer batchInsert;
+	private DistributionSummary batchSize;
+	private Timer upload;
+
+	// One counter per rejection rule, see InvalidRecordException.getRule
+	private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+
+	// Uploads currently running, read by the queue and duplicate check gauges
+	private final Set<CsvIngestPipeline> pipelines = ConcurrentHashMap.newKeySet();
+
+	@PostConstruct
+	void register() {
+		rowsParsed = Counter.builder("csv.ingest.rows").description("Rows read from uploaded files")
+				.register(registry);
+		alreadyPresent = Counter.builder("csv.ingest.already.present")
+				.description("Valid rows skipped because the member is already stored").register(registry);
+		chunkValidation = Timer.builder("csv.ingest.validation")
+				.description("Time to validate one chunk of rows on a validator thread").publishPercentileHistogram()
+				.register(registry);
+		batchInsert = Timer.builder("csv.ingest.batch.insert").description("Time to insert and commit one batch")
+				.tag("writer", writerName).publishPercentileHistogram().register(registry);
+		batchSize = DistributionSummary.builder("csv.ingest.batch.size").description("Members per inserted batch")
+				.tag("writer", writerName).register(registry);
+		upload = Timer.builder("csv.ingest.upload").description("Time to process a whole file").register(registry);
+
+		Gauge.builder("csv.ingest.active", pipelines, Set::size).description("Uploads running right now")
+				.register(registry);
+		Gauge.builder("csv.ingest.queue.depth", this, m -> m.sum(CsvIngestPipeline::getValidatedChunkDepth))
+				.description("Chunks waiting for the ordering stage").tag("queue", "validated-chunks")
+				.register(registry);
+		Gauge.builder("csv.ingest.queue.depth", this, m -> m.sum(CsvIngestPipeline::getBatchDepth))
+				.description("Batches waiting for a writer thread").tag("queue", "batches").register(registry);
+		Gauge.builder("csv.ingest.dedup.keys", this, m -> m.sum(p -> p.getContext().getUniqueRecordCount()))
+				.description("Keys in the duplicate checks of the running uploads").register(registry);
+		Gauge.builder("csv.ingest.scheduler.running", ingestScheduler, IngestScheduler::getRunning)
+				.description("Uploads and jobs admitted by the ingest scheduler").register(registry);
+		Gauge.builder("csv.ingest.scheduler.queued", ingestScheduler, IngestScheduler::getQueued)
+				.description("Uploads and jobs waiting for a free ingest slot").register(registry);
+		Gauge.builder("csv.ingest.scheduler.write.connections.free", ingestScheduler,
+				IngestScheduler::getFreeWriteConnections)
+				.description("Write connections no upload is using right now").register(registry);
+		Gauge.builder("csv.ingest.scheduler.background.connections.free", ingestScheduler,
+				IngestScheduler::getFreeBackgroundConnections)
+				.description("Connections outside the read reserve no background work is using right now")
+				.register(registry);
+		Gauge.builder("csv.ingest.existing.keys", existingMemberIndex, ExistingMemberIndex::size)
+				.description("Keys of stored members known to the already present check").register(registry);
+
+		new ExecutorServiceMetrics(csvValidatorExecutor, "csvValidatorExecutor", Tags.empty()).bindTo(registry);
+		new ExecutorServiceMetrics(csvJobExecutor, "csvJobExecutor", Tags.empty()).bindTo(registry);
+	}
+
+	void pipelineStarted(CsvIngestPipeline pipeline) {
+		pipelines.add(pipeline);
+	}
+
+	void pipelineFinished(CsvIngestPipeline pipeline) {
+		pipelines.remove(pipeline);
+	}
+
+	void chunkValidated(int rows, long nanos) {
+		rowsParsed.increment(rows);
+		chunkValidation.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	void rejected(String rule) {
+		Counter counter = rejections.get(rule);
+		if (counter == null) {
+			counter = rejections.computeIfAbsent(rule, r -> Counter.builder("csv.ingest.rejected")
+					.description("Rows rejected by the validation rules").tag("rule", r).register(registry));
+		}
+		counter.increment();
+	}
+
+	void alreadyPresent() {
+		alreadyPresent.increment();
+	}
+
+	void batchInserted(int members, long nanos) {
+		batchSize.record(members);
+		batchInsert.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	void uploadFinished(long millis) {
+		upload.record(millis, TimeUnit.MILLISECONDS);
+	}
+
+	private double sum(ToIntFunction<CsvIngestPipeline> value) {
+		int total = 0;
+		for (CsvIngestPipeline pipeline : pipelines) {
+			total += value.applyAsInt(pipeline);
+		}
+		return total;
+	}
+
+}
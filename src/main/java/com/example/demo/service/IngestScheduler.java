@@ -0,0 +1,290 @@
+package com.example.demo.service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.exceptions.CsvProcessingException;
+import com.example.demo.exceptions.IngestBusyException;
+
+import jakarta.annotation.PostConstruct;
+
+// Decides when uploads and background jobs run, so bulk loads cannot take all
+// database connections away from the member queries.
+//
+// At most max-concurrent ingests run at once, the others wait in a queue of
+// queue-capacity entries and are refused with 429 once it is full. The queue is
+// served round robin by submitter: a team that sends ten files does not hold up
+// the next team's single file for all ten.
+//
+// Work in the background that holds a pooled connection (batch writes, the
+// checkpoint saved with a batch, index loads and rebuilds, the stats rebuild and
+// export ranges) shares pool size - read-reserve connections, the read-reserve
+// connections are left for the member queries. Batches also count against
+// write-connections, so writers do not take the whole budget from the rest, and
+// export ranges against csv.export.connections, see MemberExportService.
+@Service
+public class IngestScheduler {
+
+	// Submitter of jobs resumed at startup
+	public static final String SYSTEM = "system";
+
+	@Autowired
+	private ExecutorService csvJobExecutor;
+
+	@Value("${csv.ingest.scheduler.max-concurrent:2}")
+	private int maxConcurrent;
+
+	@Value("${csv.ingest.scheduler.queue-capacity:16}")
+	private int queueCapacity;
+
+	@Value("${csv.ingest.scheduler.write-connections:4}")
+	private int writeConnectionCount;
+
+	// Connections of the pool background work never takes
+	@Value("${csv.ingest.scheduler.read-reserve:4}")
+	private int readReserve;
+
+	@Value("${spring.datasource.hikari.maximum-pool-size:10}")
+	private int poolSize;
+
+	// Longest time a synchronous upload waits for its turn
+	@Value("${csv.ingest.scheduler.max-wait-ms:600000}")
+	private long maxWaitMs;
+
+	// Sent as Retry-After when an ingest is refused
+	@Value("${csv.ingest.scheduler.retry-after-seconds:30}")
+	private long retryAfterSeconds;
+
+	private Semaphore writeConnections;
+	private Semaphore backgroundConnections;
+
+	// Waiting ingests per submitter, and the submitters in the order they are served
+	private final Map<String, ArrayDeque<Ticket>> waiting = new HashMap<>();
+	private final ArrayDeque<String> turns = new ArrayDeque<>();
+	private int queued;
+	private int running;
+
+	// An ingest waiting for its turn, task is null for a synchronous upload
+	private static final class Ticket {
+
+		private final String submitter;
+		private final Runnable task;
+		private final CompletableFuture<Void> started = new CompletableFuture<>();
+
+		Ticket(String submitter, Runnable task) {
+			this.submitter = submitter;
+			this.task = task;
+		}
+	}
+
+	// Held by a synchronous upload while it runs
+	public final class Permit implements AutoCloseable {
+
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private Permit() {
+		}
+
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				finished();
+			}
+		}
+	}
+
+	@PostConstruct
+	void init() {
+		if (readReserve < 0 || readReserve >= poolSize) {
+			throw new IllegalStateException("csv.ingest.scheduler.read-reserve must be at least 0 and below the pool size "
+					+ poolSize + ": " + readReserve);
+		}
+		writeConnections = new Semaphore(writeConnectionCount, true);
+		backgroundConnections = new Semaphore(poolSize - readReserve, true);
+	}
+
+	// Waits until the upload may run, the caller runs it on its own thread and
+	// closes the permit afterwards
+	public Permit acquire(String submitter) {
+		Ticket ticket = enqueue(submitter, null, true);
+		try {
+			ticket.started.get(maxWaitMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			if (cancel(ticket)) {
+				throw new IngestBusyException("Timed out waiting for a free ingest slot", retryAfterSeconds);
+			}
+			// Started just now
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (!cancel(ticket)) {
+				finished();
+			}
+			throw new CsvProcessingException("Interrupted while waiting for a free ingest slot", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e);
+		}
+		return new Permit();
+	}
+
+	// Runs the task on the job executor once it is its turn
+	public void submit(String submitter, Runnable task) {
+		enqueue(submitter, task, true);
+	}
+
+	// Same without the queue limit, for jobs that were admitted before a restart
+	public void resubmit(String submitter, Runnable task) {
+		enqueue(submitter, task, false);
+	}
+
+	// Refuses early when a new ingest would not be queued, e.g. before a large
+	// body is spooled. The ingest can still be refused when it is submitted.
+	public synchronized void checkAdmission() {
+		if (running >= maxConcurrent && queued >= queueCapacity) {
+			throw busy();
+		}
+	}
+
+	// Waits for one of the write connections, see csv.ingest.scheduler.write-connections.
+	// Returns false if none became free within the timeout.
+	boolean acquireWriteConnection(long timeoutMs) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		if (!writeConnections.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		if (!backgroundConnections.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+			writeConnections.release();
+			return false;
+		}
+		return true;
+	}
+
+	void releaseWriteConnection() {
+		backgroundConnections.release();
+		writeConnections.release();
+	}
+
+	// Runs background work that holds a pooled connection once one of the
+	// connections outside the read reserve is free
+	public <T> T withConnection(Supplier<T> work) {
+		try {
+			backgroundConnections.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CsvProcessingException("Interrupted while waiting for a database connection", e);
+		}
+		try {
+			return work.get();
+		} finally {
+			backgroundConnections.release();
+		}
+	}
+
+	public void withConnection(Runnable work) {
+		withConnection(() -> {
+			work.run();
+			return null;
+		});
+	}
+
+	public synchronized int getQueued() {
+		return queued;
+	}
+
+	public synchronized int getRunning() {
+		return running;
+	}
+
+	public int getFreeWriteConnections() {
+		return writeConnections.availablePermits();
+	}
+
+	public int getFreeBackgroundConnections() {
+		return backgroundConnections.availablePermits();
+	}
+
+	// Background connections left when every write connection is taken
+	public int getConnectionsBesideWriters() {
+		return poolSize - readReserve - writeConnectionCount;
+	}
+
+	private synchronized Ticket enqueue(String submitter, Runnable task, boolean limited) {
+		if (limited && running >= maxConcurrent && queued >= queueCapacity) {
+			throw busy();
+		}
+		Ticket ticket = new Ticket(submitter, task);
+		ArrayDeque<Ticket> tickets = waiting.computeIfAbsent(submitter, s -> new ArrayDeque<>());
+		if (tickets.isEmpty()) {
+			turns.addLast(submitter);
+		}
+		tickets.addLast(ticket);
+		queued++;
+		dispatch();
+		return ticket;
+	}
+
+	// Takes a ticket out of the queue, false if it has already started
+	private synchronized boolean cancel(Ticket ticket) {
+		ArrayDeque<Ticket> tickets = waiting.get(ticket.submitter);
+		if (tickets == null || !tickets.remove(ticket)) {
+			return false;
+		}
+		if (tickets.isEmpty()) {
+			waiting.remove(ticket.submitter);
+			turns.remove(ticket.submitter);
+		}
+		queued--;
+		return true;
+	}
+
+	private synchronized void finished() {
+		running--;
+		dispatch();
+	}
+
+	// Starts waiting ingests while there are free slots, one per submitter in turn
+	private void dispatch() {
+		while (running < maxConcurrent && !turns.isEmpty()) {
+			String submitter = turns.pollFirst();
+			ArrayDeque<Ticket> tickets = waiting.get(submitter);
+			Ticket ticket = tickets.pollFirst();
+			if (tickets.isEmpty()) {
+				waiting.remove(submitter);
+			} else {
+				turns.addLast(submitter);
+			}
+			queued--;
+			running++;
+			if (ticket.task == null) {
+				ticket.started.complete(null);
+			} else {
+				csvJobExecutor.execute(() -> {
+					try {
+						ticket.task.run();
+					} finally {
+						finished();
+					}
+				});
+			}
+		}
+	}
+
+	private IngestBusyException busy() {
+		return new IngestBusyException(
+				"Too many uploads in progress (" + running + " running, " + queued + " queued), try again later",
+				retryAfterSeconds);
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.example.demo.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Writes rows to a response one at a time, either as a JSON array or as
+// newline delimited JSON (one object per line). Nothing is kept after a row is
+// written, so the size of the result does not matter.
+class JsonRowWriter implements Closeable {
+
+	private final ObjectMapper objectMapper;
+	private final JsonGenerator generator;
+	private final boolean ndjson;
+
+	JsonRowWriter(ObjectMapper objectMapper, OutputStream out, boolean ndjson) throws IOException {
+		this.objectMapper = objectMapper;
+		this.ndjson = ndjson;
+		// The response stream is closed by the container, not by us
+		this.generator = objectMapper.getFactory().createGenerator(out)
+				.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		if (!ndjson) {
+			generator.writeStartArray();
+		}
+	}
+
+	void write(Object row) throws IOException {
+		objectMapper.writeValue(generator, row);
+		if (ndjson) {
+			generator.writeRaw('\n');
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!ndjson) {
+			generator.writeEndArray();
+		}
+		generator.close();
+	}
+
+}
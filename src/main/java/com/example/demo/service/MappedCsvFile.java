@@ -0,0 +1,255 @@
+package com.example.demo.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.example.demo.exceptions.CsvProcessingException;
+
+// A CSV file on the server read through memory mappings instead of a Reader.
+//
+// The reading thread only walks the bytes to cut the file into splits of about
+// the requested size, each ending on a line end outside quotes. Turning a split
+// into rows is left to whoever calls Split.parse, so several splits can be
+// tokenized at once straight from the mapped file. A split is a view of the
+// window the reading thread mapped, so there is one mapping per window and not
+// one per split.
+//
+// Rows come out as the CSV reader reads them: fields are separated by commas and
+// may be quoted, a quote inside a quoted field is written twice, a backslash
+// takes the next character as it is and \r\n, \n and \r all end a line (a
+// line end inside quotes becomes \n). Quotes in the middle of an unquoted field
+// are kept as they are, the CSV reader has rules of its own for those.
+final class MappedCsvFile implements Closeable {
+
+	// Largest region mapped at a time, no record may be longer
+	private static final long WINDOW_SIZE = 1L << 30;
+
+	private final FileChannel channel;
+	private final long size;
+	private final String[] header;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+
+	// Where the next split starts, how many lines lie before it and whether the
+	// scan is inside a quoted field
+	private long position;
+	private long lines;
+	private boolean inQuotes;
+
+	private MappedCsvFile(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		Split first = nextSplit(1);
+		this.header = first == null ? null : first.parse(false).rows[0];
+	}
+
+	static MappedCsvFile open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new MappedCsvFile(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	// null for an empty file
+	String[] getHeader() {
+		return header;
+	}
+
+	long getSize() {
+		return size;
+	}
+
+	// Next part of the file after the header, null at the end. A split is never
+	// cut inside a record, so it can be longer than splitBytes.
+	Split nextSplit(long splitBytes) throws IOException {
+		if (position >= size) {
+			return null;
+		}
+		long start = position;
+		long startLines = lines;
+		long target = Math.min(start + splitBytes, size);
+		long pos = start;
+		while (pos < size) {
+			byte b = byteAt(pos++, start, startLines);
+			if (b == '\\') {
+				// Whatever follows is data, unless it ends the line
+				if (pos < size && !endsLine(byteAt(pos, start, startLines))) {
+					pos++;
+				}
+			} else if (b == '"') {
+				inQuotes = !inQuotes;
+			} else if (endsLine(b)) {
+				if (b == '\r' && pos < size && byteAt(pos, start, startLines) == '\n') {
+					pos++;
+				}
+				lines++;
+				if (!inQuotes && pos >= target) {
+					break;
+				}
+			}
+		}
+		position = pos;
+		return new Split(window.slice((int) (start - windowStart), (int) (pos - start)), startLines);
+	}
+
+	// A new window starts where the split does, so every split lies in one window
+	private byte byteAt(long pos, long splitStart, long linesBefore) throws IOException {
+		if (window == null || pos >= windowStart + window.limit()) {
+			if (pos - splitStart >= WINDOW_SIZE) {
+				throw new CsvProcessingException("Record too large at line " + (linesBefore + 1));
+			}
+			windowStart = splitStart;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, splitStart, Math.min(WINDOW_SIZE, size - splitStart));
+		}
+		return window.get((int) (pos - windowStart));
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	// Rows of a split and, when asked for, the line each one ends on, counted
+	// from the start of the file the same way the CSV reader counts them
+	static final class Rows {
+
+		final String[][] rows;
+		final long[] lines;
+
+		Rows(String[][] rows, long[] lines) {
+			this.rows = rows;
+			this.lines = lines;
+		}
+	}
+
+	static final class Split {
+
+		private final ByteBuffer bytes;
+		private final long linesBefore;
+
+		private Split(ByteBuffer bytes, long linesBefore) {
+			this.bytes = bytes;
+			this.linesBefore = linesBefore;
+		}
+
+		// Safe to call on any thread, the split only reads its own view with
+		// absolute gets
+		Rows parse(boolean trackLines) {
+			return tokenize(bytes, linesBefore, trackLines);
+		}
+	}
+
+	static Rows tokenize(ByteBuffer buf, long linesBefore, boolean trackLines) {
+		List<String[]> rows = new ArrayList<>();
+		long[] lines = trackLines ? new long[64] : null;
+		List<String> fields = new ArrayList<>();
+		byte[] scratch = new byte[256];
+		int n = buf.limit();
+		int i = 0;
+		long line = linesBefore;
+
+		while (i < n) {
+			fields.clear();
+			while (true) {
+				int len = 0;
+				if (i < n && buf.get(i) == '"') {
+					i++;
+					while (i < n) {
+						byte b = buf.get(i++);
+						if (b == '"') {
+							if (i < n && buf.get(i) == '"') {
+								i++;
+							} else {
+								break;
+							}
+						} else if (b == '\\') {
+							if (i >= n || endsLine(buf.get(i))) {
+								continue;
+							}
+							b = buf.get(i++);
+						} else if (endsLine(b)) {
+							// Any line end inside quotes is read as \n
+							if (b == '\r' && i < n && buf.get(i) == '\n') {
+								i++;
+							}
+							b = '\n';
+							line++;
+						}
+						if (len == scratch.length) {
+							scratch = Arrays.copyOf(scratch, len * 2);
+						}
+						scratch[len++] = b;
+					}
+				}
+				// Unquoted bytes, or whatever follows a closing quote up to the separator
+				while (true) {
+					int from = i;
+					while (i < n && !endsField(buf.get(i)) && buf.get(i) != '\\') {
+						i++;
+					}
+					if (len + i - from + 1 > scratch.length) {
+						scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, len + i - from + 1));
+					}
+					buf.get(from, scratch, len, i - from);
+					len += i - from;
+					if (i >= n || buf.get(i) != '\\') {
+						break;
+					}
+					// The byte after a backslash is data, a backslash before a line end is dropped
+					i++;
+					if (i < n && !endsLine(buf.get(i))) {
+						scratch[len++] = buf.get(i++);
+					}
+				}
+				fields.add(new String(scratch, 0, len, StandardCharsets.UTF_8));
+				if (i < n && buf.get(i) == ',') {
+					i++;
+					continue;
+				}
+				break;
+			}
+
+			// Line end, \r\n, \n or \r, the last line may have none
+			if (i < n && buf.get(i) == '\r') {
+				i++;
+				if (i < n && buf.get(i) == '\n') {
+					i++;
+				}
+			} else if (i < n) {
+				i++;
+			}
+			line++;
+			if (lines != null) {
+				if (rows.size() == lines.length) {
+					lines = Arrays.copyOf(lines, lines.length * 2);
+				}
+				lines[rows.size()] = line;
+			}
+			rows.add(fields.toArray(new String[0]));
+		}
+		return new Rows(rows.toArray(new String[0][]), lines);
+	}
+
+	private static boolean endsField(byte b) {
+		return b == ',' || endsLine(b);
+	}
+
+	private static boolean endsLine(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+}
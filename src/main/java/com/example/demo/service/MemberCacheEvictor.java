@@ -0,0 +1,120 @@
+package com.example.demo.service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.CacheConfig;
+import com.example.demo.config.VersionedCaffeineCache;
+import com.example.demo.entity.Member;
+import com.example.demo.repository.MemberRepository;
+
+// Drops exactly the cached lookups a committed batch changes: the first and
+// last names of the new members and the name patterns that match them. All
+// other entries stay, they only expire through the cache TTL.
+//
+// MySQL compares names case insensitively and ignores trailing spaces, so the
+// names are compared the same way here. Accent insensitive matches are not
+// detected, those entries are refreshed by the TTL.
+@Component
+public class MemberCacheEvictor {
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@EventListener
+	public void onMembersCommitted(MembersCommittedEvent event) {
+		List<Member> members = event.getMembers();
+		// Lookups already running may have read the rows from before the commit
+		for (String name : List.of(CacheConfig.MEMBERS_BY_FIRST_NAME, CacheConfig.MEMBERS_BY_LAST_NAME,
+				CacheConfig.MEMBERS_BY_NAME_PATTERN)) {
+			((VersionedCaffeineCache) cacheManager.getCache(name)).invalidateReads();
+		}
+		Set<String> firstNames = new HashSet<>();
+		Set<String> lastNames = new HashSet<>();
+		for (Member member : members) {
+			firstNames.add(normalize(member.getUniqId().getFirstName()));
+			lastNames.add(normalize(member.getUniqId().getLastName()));
+		}
+
+		entries(CacheConfig.MEMBERS_BY_FIRST_NAME).keySet()
+				.removeIf(key -> firstNames.contains(normalize((String) key)));
+		entries(CacheConfig.MEMBERS_BY_LAST_NAME).keySet()
+				.removeIf(key -> lastNames.contains(normalize((String) key)));
+		entries(CacheConfig.MEMBERS_BY_NAME_PATTERN).keySet().removeIf(key -> {
+			List<?> patterns = (List<?>) key;
+			String firstPattern = normalize((String) patterns.get(0));
+			String lastPattern = normalize((String) patterns.get(1));
+			for (Member member : members) {
+				if (like(normalize(member.getUniqId().getFirstName()), firstPattern)
+						&& like(normalize(member.getUniqId().getLastName()), lastPattern)) {
+					return true;
+				}
+			}
+			return false;
+		});
+	}
+
+	private Map<Object, Object> entries(String name) {
+		return ((CaffeineCache) cacheManager.getCache(name)).getNativeCache().asMap();
+	}
+
+	private static String normalize(String name) {
+		return name == null ? "" : name.stripTrailing().toLowerCase(Locale.ROOT);
+	}
+
+	// SQL LIKE with % and _ and the escape character of MemberRepository. Greedy: a mismatch after a
+	// % only moves the start of that % one character on, so the time is linear
+	// in value times pattern length however many % the pattern has.
+	static boolean like(String value, String pattern) {
+		int v = 0;
+		int p = 0;
+		// Position after the last % in the pattern, and where its match in the value ends
+		int wildcard = -1;
+		int wildcardEnd = 0;
+		while (v < value.length()) {
+			if (p < pattern.length() && pattern.charAt(p) == '%') {
+				while (p < pattern.length() && pattern.charAt(p) == '%') {
+					p++;
+				}
+				wildcard = p;
+				wildcardEnd = v;
+				continue;
+			}
+			if (p < pattern.length()) {
+				char c = pattern.charAt(p);
+				int width = 1;
+				if (c == MemberRepository.LIKE_ESCAPE && p + 1 < pattern.length()) {
+					c = pattern.charAt(p + 1);
+					width = 2;
+				} else if (c == '_') {
+					c = value.charAt(v);
+				}
+				if (value.charAt(v) == c) {
+					v++;
+					p += width;
+					continue;
+				}
+			}
+			if (wildcard < 0) {
+				return false;
+			}
+			// Let the last % take one more character
+			v = ++wildcardEnd;
+			p = wildcard;
+		}
+		while (p < pattern.length() && pattern.charAt(p) == '%') {
+			p++;
+		}
+		return p == pattern.length();
+	}
+
+}
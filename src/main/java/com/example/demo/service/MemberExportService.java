@@ -0,0 +1,376 @@
+package com.example.demo.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.exceptions.CsvProcessingException;
+import com.example.demo.exceptions.IngestBusyException;
+import com.example.demo.repository.MemberExportRepository;
+
+import jakarta.annotation.PostConstruct;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Writes the members table out as CSV in the upload format, so an export can be
+// uploaded again.
+//
+// The dates of birth are cut into ranges (dob leads the primary key, so every
+// range is a slice of the index). Up to csv.export.parallelism ranges are read at
+// once, each on its own connection with a forward-only cursor, and turned into
+// blocks of CSV bytes straight from the result set. The calling thread writes
+// the blocks of the first range, then the next, so the file is in key order.
+// Every range holds at most queue-blocks blocks, a reader that gets that far
+// ahead waits, so memory does not depend on the size of the table.
+//
+// With gzip every block is compressed by the thread that read it into a gzip
+// member of its own. Concatenated members are a valid gzip file.
+//
+// The ranges are read in separate transactions, rows written while the export
+// runs may or may not be part of it.
+//
+// A range keeps its connection while it waits for a slow client, so all exports
+// together hold at most csv.export.connections of them, which must fit beside the
+// write connections in the background budget of IngestScheduler. An export takes
+// one when it is reserved and reads its ranges with it one after the other, it
+// reads up to parallelism ranges at once while more are free. At most
+// max-concurrent exports run at once, further ones are refused with 429.
+//
+// The calling thread takes the connections and hands them from one range to the
+// next in order, so the range it writes out always has one.
+@Service
+public class MemberExportService {
+
+	public static final String HEADER = "id,firstName,lastName,dob,gender,education,houseNumber,address1,address2,"
+			+ "city,pincode,mobile,company,monthlySalary\n";
+
+	// Marks the end of a range
+	private static final byte[] END = new byte[0];
+
+	@Autowired
+	private MemberExportRepository memberExportRepository;
+
+	@Autowired
+	private ExecutorService csvPipelineExecutor;
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	@Value("${csv.export.parallelism:4}")
+	private int parallelism;
+
+	// Ranges per reading thread, more ranges even out ranges of very different sizes
+	@Value("${csv.export.ranges-per-thread:8}")
+	private int rangesPerThread;
+
+	@Value("${csv.export.fetch-size:10000}")
+	private int fetchSize;
+
+	// Characters of CSV per block
+	@Value("${csv.export.block-size:262144}")
+	private int blockSize;
+
+	@Value("${csv.export.queue-blocks:8}")
+	private int queueBlocks;
+
+	@Value("${csv.export.max-concurrent:2}")
+	private int maxConcurrent;
+
+	@Value("${csv.export.connections:2}")
+	private int connectionCount;
+
+	@Value("${csv.ingest.scheduler.retry-after-seconds:30}")
+	private long retryAfterSeconds;
+
+	private Semaphore running;
+	private Semaphore connections;
+
+	@PostConstruct
+	void init() {
+		int besideWriters = ingestScheduler.getConnectionsBesideWriters();
+		if (connectionCount < 1 || connectionCount > besideWriters) {
+			throw new IllegalStateException("csv.export.connections must be at least 1 and at most the "
+					+ besideWriters + " background connections beside the write connections: " + connectionCount);
+		}
+		running = new Semaphore(maxConcurrent);
+		connections = new Semaphore(connectionCount);
+	}
+
+	// Criteria of an export, null for no limit
+	@Getter
+	@AllArgsConstructor
+	public static class Filter {
+
+		private final LocalDate startDob;
+		private final LocalDate endDob;
+		private final BigDecimal minSalary;
+		private final BigDecimal maxSalary;
+		private final String firstNamePrefix;
+		private final String lastNamePrefix;
+	}
+
+	// Takes one of the max-concurrent export slots and a connection, before the
+	// response starts so a refusal can still be a 429. export gives them back when
+	// it returns.
+	public void reserve() {
+		if (!running.tryAcquire()) {
+			throw busy();
+		}
+		if (!connections.tryAcquire()) {
+			running.release();
+			throw busy();
+		}
+	}
+
+	private IngestBusyException busy() {
+		return new IngestBusyException("Too many exports running, try again later", retryAfterSeconds);
+	}
+
+	// Writes the export reserved with reserve
+	public void export(Filter filter, boolean gzip, OutputStream out) throws IOException {
+		try {
+			write(filter, gzip, out);
+		} finally {
+			running.release();
+		}
+	}
+
+	private void write(Filter filter, boolean gzip, OutputStream out) throws IOException {
+		List<RangeReader> ranges = split(filter, gzip);
+		byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+		out.write(gzip ? gzip(header, header.length) : header);
+
+		// The connection taken by reserve
+		int held = 1;
+		int started = 0;
+		try {
+			if (!ranges.isEmpty()) {
+				csvPipelineExecutor.execute(ranges.get(started++));
+			}
+			for (RangeReader range : ranges) {
+				// More ranges at once while connections are free, never waiting for one
+				while (started < ranges.size() && held < parallelism && connections.tryAcquire()) {
+					held++;
+					csvPipelineExecutor.execute(ranges.get(started++));
+				}
+				byte[] block;
+				while ((block = range.take()) != END) {
+					out.write(block);
+				}
+				if (range.failure != null) {
+					throw new CsvProcessingException("Export failed", range.failure);
+				}
+				// One range done, its connection reads the next one
+				if (started < ranges.size()) {
+					csvPipelineExecutor.execute(ranges.get(started++));
+				} else {
+					held--;
+					connections.release();
+				}
+			}
+			out.flush();
+		} finally {
+			// Stops the readers still running when the client went away or a range failed
+			for (int i = 0; i < started; i++) {
+				ranges.get(i).cancelled = true;
+			}
+			connections.release(held);
+		}
+	}
+
+	// Ranges of about the same number of days between the lowest and highest date
+	// of birth the filter allows
+	private List<RangeReader> split(Filter filter, boolean gzip) {
+		List<RangeReader> ranges = new ArrayList<>();
+		LocalDate[] bounds = memberExportRepository.findDobBounds();
+		if (bounds == null) {
+			return ranges;
+		}
+		LocalDate from = filter.getStartDob() != null && filter.getStartDob().isAfter(bounds[0]) ? filter.getStartDob()
+				: bounds[0];
+		LocalDate to = filter.getEndDob() != null && filter.getEndDob().isBefore(bounds[1]) ? filter.getEndDob()
+				: bounds[1];
+		long days = ChronoUnit.DAYS.between(from, to) + 1;
+		if (days <= 0) {
+			return ranges;
+		}
+		long count = Math.min(days, (long) parallelism * rangesPerThread);
+		for (long i = 0; i < count; i++) {
+			ranges.add(new RangeReader(filter, from.plusDays(days * i / count), from.plusDays(days * (i + 1) / count),
+					gzip));
+		}
+		return ranges;
+	}
+
+	private byte[] gzip(byte[] data, int length) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 4 + 64);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes, 64 * 1024) {
+			{
+				def.setLevel(Deflater.BEST_SPEED);
+			}
+		}) {
+			out.write(data, 0, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// Reads one range of dates of birth into blocks of CSV
+	private final class RangeReader implements Runnable {
+
+		private final Filter filter;
+		private final LocalDate from;
+		private final LocalDate to;
+		private final boolean gzip;
+		private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(queueBlocks);
+		private final StringBuilder csv = new StringBuilder(blockSize + 1024);
+
+		private volatile boolean cancelled;
+		private volatile Throwable failure;
+
+		RangeReader(Filter filter, LocalDate from, LocalDate to, boolean gzip) {
+			this.filter = filter;
+			this.from = from;
+			this.to = to;
+			this.gzip = gzip;
+		}
+
+		@Override
+		public void run() {
+			try {
+				// Waits for a connection outside the read reserve
+				ingestScheduler.withConnection(() -> memberExportRepository.forEachMemberInDobRange(from, to,
+						filter.getMinSalary(), filter.getMaxSalary(), filter.getFirstNamePrefix(),
+						filter.getLastNamePrefix(), fetchSize, this::appendRow));
+				flush();
+			} catch (CancellationException e) {
+				// The export was stopped, nobody reads this range any more
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			try {
+				put(END);
+			} catch (CancellationException e) {
+				// Nobody waits for the end either
+			}
+		}
+
+		byte[] take() throws IOException {
+			try {
+				return blocks.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Export interrupted", e);
+			}
+		}
+
+		private void appendRow(ResultSet rs) throws SQLException {
+			for (int column = 1; column <= 14; column++) {
+				if (column > 1) {
+					csv.append(',');
+				}
+				if (column == 4) {
+					appendDob(rs.getObject(column, LocalDate.class));
+				} else if (column == 14) {
+					BigDecimal salary = rs.getBigDecimal(column);
+					if (salary != null) {
+						csv.append(salary.toPlainString());
+					}
+				} else {
+					appendText(rs.getString(column));
+				}
+			}
+			csv.append('\n');
+			if (csv.length() >= blockSize) {
+				flush();
+			}
+		}
+
+		// dd-MM-yyyy like the uploads
+		private void appendDob(LocalDate dob) {
+			appendDigits(dob.getDayOfMonth(), 2);
+			csv.append('-');
+			appendDigits(dob.getMonthValue(), 2);
+			csv.append('-');
+			appendDigits(dob.getYear(), 4);
+		}
+
+		private void appendDigits(int value, int digits) {
+			for (int div = digits == 4 ? 1000 : 10; div > 0; div /= 10) {
+				csv.append((char) ('0' + value / div % 10));
+			}
+		}
+
+		// Quoted only when needed, null and "" both come out empty
+		private void appendText(String value) {
+			if (value == null) {
+				return;
+			}
+			boolean quote = false;
+			for (int i = 0; i < value.length() && !quote; i++) {
+				char c = value.charAt(i);
+				quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+			}
+			if (!quote) {
+				csv.append(value);
+				return;
+			}
+			csv.append('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '"') {
+					csv.append('"');
+				}
+				csv.append(c);
+			}
+			csv.append('"');
+		}
+
+		private void flush() {
+			if (csv.isEmpty()) {
+				return;
+			}
+			byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+			csv.setLength(0);
+			put(gzip ? gzip(bytes, bytes.length) : bytes);
+		}
+
+		// Waits while the range is queue-blocks ahead of the writer
+		private void put(byte[] block) {
+			try {
+				while (!blocks.offer(block, 100, TimeUnit.MILLISECONDS)) {
+					if (cancelled) {
+						throw new CancellationException();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+		}
+	}
+
+}
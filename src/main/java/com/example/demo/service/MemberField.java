@@ -0,0 +1,29 @@
+package com.example.demo.service;
+
+// Member properties a feed column can be mapped to, named as in the feed files
+enum MemberField {
+
+	MEMBER_ID("memberId"), FIRST_NAME("firstName"), LAST_NAME("lastName"), DOB("dob"), GENDER("gender"),
+	EDUCATION("education"), HOUSE_NUMBER("houseNumber"), ADDRESS1("address1"), ADDRESS2("address2"),
+	PIN_CODE("pinCode"), CITY("city"), MOBILE("mobile"), COMPANY("company"), MONTHLY_SALARY("monthlySalary");
+
+	private final String propertyName;
+
+	MemberField(String propertyName) {
+		this.propertyName = propertyName;
+	}
+
+	static MemberField of(String propertyName) {
+		for (MemberField field : values()) {
+			if (field.propertyName.equals(propertyName)) {
+				return field;
+			}
+		}
+		throw new IllegalArgumentException("Unknown member field: " + propertyName);
+	}
+
+	String getPropertyName() {
+		return propertyName;
+	}
+
+}
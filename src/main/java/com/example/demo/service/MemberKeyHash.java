@@ -0,0 +1,178 @@
+package com.example.demo.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+
+// 128 bit hash of a duplicate key, computed straight from the row without
+// building the joined key string. Hashing the fields with '|' in between gives
+// the same value as hashing the joined string, so two rows get the same hash
+// exactly when firstName|lastName|gender|dob is the same (up to collisions,
+// which at 128 bits do not happen in practice).
+final class MemberKeyHash {
+
+	private static final long SEED_HIGH = 0xcbf29ce484222325L;
+	private static final long SEED_LOW = 0x9e3779b97f4a7c15L;
+
+	private MemberKeyHash() {
+	}
+
+	static long high(String[] data, int[] columns) {
+		long h = SEED_HIGH;
+		for (int k = 0; k < columns.length; k++) {
+			if (k > 0) {
+				h = mixHigh(h, '|');
+			}
+			String s = data[columns[k]];
+			for (int i = 0; i < s.length(); i++) {
+				h = mixHigh(h, s.charAt(i));
+			}
+		}
+		return fmix64(h);
+	}
+
+	static long low(String[] data, int[] columns) {
+		long h = SEED_LOW;
+		for (int k = 0; k < columns.length; k++) {
+			if (k > 0) {
+				h = mixLow(h, '|');
+			}
+			String s = data[columns[k]];
+			for (int i = 0; i < s.length(); i++) {
+				h = mixLow(h, s.charAt(i));
+			}
+		}
+		return fmix64(h);
+	}
+
+	static long high(String joinedKey) {
+		long h = SEED_HIGH;
+		for (int i = 0; i < joinedKey.length(); i++) {
+			h = mixHigh(h, joinedKey.charAt(i));
+		}
+		return fmix64(h);
+	}
+
+	static long low(String joinedKey) {
+		long h = SEED_LOW;
+		for (int i = 0; i < joinedKey.length(); i++) {
+			h = mixLow(h, joinedKey.charAt(i));
+		}
+		return fmix64(h);
+	}
+
+	// Hash of the primary key of a stored member, firstName|lastName|gender|yyyy-MM-dd.
+	// Unlike the upload key this uses the parsed date, so 1-5-1990 and 01-05-1990
+	// are the same member, just like in the database.
+	static long high(MemberId id) {
+		long h = SEED_HIGH;
+		h = mixHigh(mixHigh(h, id.getFirstName()), '|');
+		h = mixHigh(mixHigh(h, id.getLastName()), '|');
+		h = mixHigh(mixHigh(h, id.getGender()), '|');
+		LocalDate dob = id.getDob();
+		h = mixHighNumber(h, dob.getYear(), 4);
+		h = mixHighNumber(mixHigh(h, '-'), dob.getMonthValue(), 2);
+		h = mixHighNumber(mixHigh(h, '-'), dob.getDayOfMonth(), 2);
+		return fmix64(h);
+	}
+
+	static long low(MemberId id) {
+		long h = SEED_LOW;
+		h = mixLow(mixLow(h, id.getFirstName()), '|');
+		h = mixLow(mixLow(h, id.getLastName()), '|');
+		h = mixLow(mixLow(h, id.getGender()), '|');
+		LocalDate dob = id.getDob();
+		h = mixLowNumber(h, dob.getYear(), 4);
+		h = mixLowNumber(mixLow(h, '-'), dob.getMonthValue(), 2);
+		h = mixLowNumber(mixLow(h, '-'), dob.getDayOfMonth(), 2);
+		return fmix64(h);
+	}
+
+	// 64 bit hash of the fields of a member outside its key, never 0 or 1 (see
+	// MemberRowHashIndex). The salary is hashed without trailing zeros so 25000 and
+	// 25000.00 count as the same value.
+	static long rowHash(Member member) {
+		long h = SEED_HIGH;
+		h = mixField(h, member.getMemberId());
+		h = mixField(h, member.getEducation());
+		h = mixField(h, member.getHouseNumber());
+		h = mixField(h, member.getAddress1());
+		h = mixField(h, member.getAddress2());
+		h = mixField(h, member.getPinCode());
+		h = mixField(h, member.getCity());
+		h = mixField(h, member.getMobile());
+		h = mixField(h, member.getCompany());
+		BigDecimal salary = member.getMonthlySalary();
+		h = mixField(h, salary != null ? salary.stripTrailingZeros().toPlainString() : null);
+		h = fmix64(h);
+		return h == 0 || h == 1 ? 2 : h;
+	}
+
+	// A field followed by a unit separator, null is hashed differently from ""
+	private static long mixField(long h, String s) {
+		if (s == null) {
+			return mixHigh(h, '\u0000');
+		}
+		return mixHigh(mixHigh(h, s), '\u001f');
+	}
+
+	private static long mixHigh(long h, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			h = mixHigh(h, s.charAt(i));
+		}
+		return h;
+	}
+
+	private static long mixLow(long h, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			h = mixLow(h, s.charAt(i));
+		}
+		return h;
+	}
+
+	// Mixes the zero padded decimal digits of a positive number
+	private static long mixHighNumber(long h, int value, int digits) {
+		for (int div = pow10(digits - 1); div > 0; div /= 10) {
+			h = mixHigh(h, (char) ('0' + value / div % 10));
+		}
+		return h;
+	}
+
+	private static long mixLowNumber(long h, int value, int digits) {
+		for (int div = pow10(digits - 1); div > 0; div /= 10) {
+			h = mixLow(h, (char) ('0' + value / div % 10));
+		}
+		return h;
+	}
+
+	private static int pow10(int exponent) {
+		int result = 1;
+		for (int i = 0; i < exponent; i++) {
+			result *= 10;
+		}
+		return result;
+	}
+
+	// FNV-1a step
+	private static long mixHigh(long h, char c) {
+		return (h ^ c) * 0x100000001b3L;
+	}
+
+	// Multiply-rotate step with a different constant so the two halves are independent
+	private static long mixLow(long h, char c) {
+		return Long.rotateLeft(h + c, 27) * 0xc2b2ae3d27d4eb4fL;
+	}
+
+	// MurmurHash3 finalizer
+	static long fmix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
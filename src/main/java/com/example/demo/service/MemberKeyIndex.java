@@ -0,0 +1,223 @@
+package com.example.demo.service;
+
+import java.nio.ByteBuffer;
+
+// Set of 128 bit key hashes in an open addressing table of primitive longs, 16
+// bytes per slot and nothing allocated per lookup. The table can live off heap
+// in direct buffers so very large files do not add to GC work.
+//
+// An optional Bloom filter sits in front of the table. It is much smaller than
+// the table, so lookups of keys that are not there (the usual case when checking
+// against existing members) mostly never touch the table. A Bloom filter hit is
+// always confirmed against the exact hashes in the table. The filter is sized
+// for the keys the table holds before it has to grow, and built again with the
+// table, so it keeps its false positive rate however many keys are added.
+//
+// Not thread safe.
+public class MemberKeyIndex {
+
+	private static final double MAX_LOAD = 0.75;
+
+	// Slots per direct buffer, 2^26 * 16 bytes = 1GB
+	private static final int SEGMENT_BITS = 26;
+
+	private final boolean offHeap;
+	private final int bloomBitsPerKey;
+
+	private BloomFilter bloom;
+
+	private int capacity;
+	private int mask;
+	private int size;
+
+	// On heap: high and low hash of slot i at 2i and 2i+1
+	private long[] slots;
+	// Off heap: slot i at byte (i & segment mask) * 16 of segment i >>> SEGMENT_BITS
+	private ByteBuffer[] segments;
+
+	public MemberKeyIndex(int expectedKeys, boolean offHeap, int bloomBitsPerKey) {
+		this.offHeap = offHeap;
+		this.bloomBitsPerKey = bloomBitsPerKey;
+		allocate(tableSizeFor(expectedKeys));
+	}
+
+	// Adds the key, returns false if it was already there
+	public boolean add(long high, long low) {
+		if (high == 0 && low == 0) {
+			// 0/0 marks an empty slot
+			low = 1;
+		}
+		if (bloom == null || bloom.mightContain(high, low)) {
+			if (findSlot(high, low) >= 0) {
+				return false;
+			}
+		}
+		if (size + 1 > capacity * MAX_LOAD) {
+			resize();
+		}
+		insert(high, low);
+		size++;
+		return true;
+	}
+
+	public boolean contains(long high, long low) {
+		if (high == 0 && low == 0) {
+			low = 1;
+		}
+		if (bloom != null && !bloom.mightContain(high, low)) {
+			return false;
+		}
+		return findSlot(high, low) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Bytes used by the table and the Bloom filter
+	public long memoryBytes() {
+		return (long) capacity * 16 + (bloom != null ? bloom.memoryBytes() : 0);
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	private int findSlot(long high, long low) {
+		int slot = (int) high & mask;
+		while (true) {
+			long h = high(slot);
+			long l = low(slot);
+			if (h == high && l == low) {
+				return slot;
+			}
+			if (h == 0 && l == 0) {
+				return -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void insert(long high, long low) {
+		int slot = (int) high & mask;
+		while (high(slot) != 0 || low(slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		set(slot, high, low);
+		if (bloom != null) {
+			bloom.put(high, low);
+		}
+	}
+
+	private void resize() {
+		int oldCapacity = capacity;
+		long[] oldSlots = slots;
+		ByteBuffer[] oldSegments = segments;
+		allocate(capacity * 2);
+		for (int i = 0; i < oldCapacity; i++) {
+			long h;
+			long l;
+			if (oldSlots != null) {
+				h = oldSlots[2 * i];
+				l = oldSlots[2 * i + 1];
+			} else {
+				ByteBuffer segment = oldSegments[i >>> SEGMENT_BITS];
+				int offset = (i & ((1 << SEGMENT_BITS) - 1)) * 16;
+				h = segment.getLong(offset);
+				l = segment.getLong(offset + 8);
+			}
+			if (h != 0 || l != 0) {
+				insert(h, l);
+			}
+		}
+	}
+
+	private void allocate(int newCapacity) {
+		if (newCapacity < 0 || (!offHeap && newCapacity > (1 << 29))) {
+			throw new IllegalStateException("Key index is full");
+		}
+		capacity = newCapacity;
+		mask = newCapacity - 1;
+		// Empty, the keys are put in again by whoever grows the table
+		bloom = bloomBitsPerKey > 0 ? new BloomFilter((int) (newCapacity * MAX_LOAD), bloomBitsPerKey) : null;
+		if (offHeap) {
+			slots = null;
+			int segmentSlots = Math.min(newCapacity, 1 << SEGMENT_BITS);
+			segments = new ByteBuffer[newCapacity / segmentSlots];
+			for (int i = 0; i < segments.length; i++) {
+				segments[i] = ByteBuffer.allocateDirect(segmentSlots * 16);
+			}
+		} else {
+			segments = null;
+			slots = new long[newCapacity * 2];
+		}
+	}
+
+	private long high(int slot) {
+		if (slots != null) {
+			return slots[2 * slot];
+		}
+		return segments[slot >>> SEGMENT_BITS].getLong((slot & ((1 << SEGMENT_BITS) - 1)) * 16);
+	}
+
+	private long low(int slot) {
+		if (slots != null) {
+			return slots[2 * slot + 1];
+		}
+		return segments[slot >>> SEGMENT_BITS].getLong((slot & ((1 << SEGMENT_BITS) - 1)) * 16 + 8);
+	}
+
+	private void set(int slot, long high, long low) {
+		if (slots != null) {
+			slots[2 * slot] = high;
+			slots[2 * slot + 1] = low;
+		} else {
+			ByteBuffer segment = segments[slot >>> SEGMENT_BITS];
+			int offset = (slot & ((1 << SEGMENT_BITS) - 1)) * 16;
+			segment.putLong(offset, high);
+			segment.putLong(offset + 8, low);
+		}
+	}
+
+	private static int tableSizeFor(int expectedKeys) {
+		long needed = (long) Math.ceil(Math.max(expectedKeys, 16) / MAX_LOAD);
+		return (int) Math.min(Long.highestOneBit(needed - 1) << 1, 1 << 30);
+	}
+
+	// Plain Bloom filter using double hashing on the two halves of the key hash
+	private static final class BloomFilter {
+
+		private final long[] bits;
+		private final long bitCount;
+		private final int hashes;
+
+		BloomFilter(int expectedKeys, int bitsPerKey) {
+			long wanted = Math.max((long) expectedKeys * bitsPerKey, 64);
+			bits = new long[(int) Math.min((wanted + 63) / 64, Integer.MAX_VALUE - 8)];
+			bitCount = (long) bits.length * 64;
+			hashes = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+		}
+
+		void put(long high, long low) {
+			for (int i = 0; i < hashes; i++) {
+				long bit = Long.remainderUnsigned(high + i * low, bitCount);
+				bits[(int) (bit >>> 6)] |= 1L << bit;
+			}
+		}
+
+		boolean mightContain(long high, long low) {
+			for (int i = 0; i < hashes; i++) {
+				long bit = Long.remainderUnsigned(high + i * low, bitCount);
+				if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		long memoryBytes() {
+			return (long) bits.length * 8;
+		}
+	}
+
+}
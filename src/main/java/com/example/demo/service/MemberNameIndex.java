@@ -0,0 +1,412 @@
+package com.example.demo.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.dto.MemberDto;
+import com.example.demo.dto.NameIndexStatsDto;
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+import com.example.demo.repository.CSVProcessingRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+// In memory index for the name-pattern search. Every member gets an ordinal and
+// its MemberDto fields are kept in column arrays. Two arrays of ordinals sorted
+// by first and by last name (ignoring case, like MySQL) turn a prefix into a
+// contiguous range found by binary search, so a last name prefix does not scan
+// anything either.
+//
+// Members committed by uploads are appended unsorted and scanned linearly until
+// there are enough of them to merge into the sorted arrays. A committed member
+// whose key is already indexed (an upsert) updates that entry instead.
+//
+// Off by default, see member.name-index.enabled.
+@Slf4j
+@Component
+public class MemberNameIndex {
+
+	@Autowired
+	private CSVProcessingRepository csvProcessingRepository;
+
+	@Autowired
+	private ExecutorService csvPipelineExecutor;
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	@Value("${member.name-index.enabled:false}")
+	private boolean enabled;
+
+	@Value("${member.name-index.fetch-size:10000}")
+	private int fetchSize;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Columns columns;
+
+	// Members committed while a rebuild is reading the table
+	private List<Member> committedDuringRebuild;
+
+	private volatile boolean ready;
+	private volatile long lastRebuildMs;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		if (enabled) {
+			CompletableFuture.runAsync(this::rebuild, csvPipelineExecutor).exceptionally(e -> {
+				// Queries go to the database until a later rebuild succeeds
+				log.error("Building the member name index failed", e);
+				return null;
+			});
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// True when the index is loaded. The prefixes are plain text, the database
+	// query escapes the LIKE wildcards in them.
+	public boolean canServe(String firstNamePrefix, String lastNamePrefix) {
+		return enabled && ready;
+	}
+
+	// Members whose first and last name start with the given prefixes, ignoring case
+	public List<MemberDto> find(String firstNamePrefix, String lastNamePrefix) {
+		lock.readLock().lock();
+		try {
+			return columns.find(firstNamePrefix, lastNamePrefix);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Reads all members again, queries keep using the old index (or the database)
+	// until the new one is complete. If the scan fails the old index stays.
+	public synchronized void rebuild() {
+		if (!enabled) {
+			return;
+		}
+		long startTime = System.currentTimeMillis();
+		lock.writeLock().lock();
+		try {
+			committedDuringRebuild = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		Columns fresh = new Columns();
+		try {
+			ingestScheduler.withConnection(() -> csvProcessingRepository.forEachMemberSummary(fetchSize, fresh::add));
+			fresh.sortAll();
+		} catch (RuntimeException e) {
+			lock.writeLock().lock();
+			try {
+				committedDuringRebuild = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			throw e;
+		}
+		lock.writeLock().lock();
+		try {
+			// A member committed while the scan ran may already be in it
+			for (Member member : committedDuringRebuild) {
+				fresh.put(member);
+			}
+			committedDuringRebuild = null;
+			columns = fresh;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		lastRebuildMs = System.currentTimeMillis() - startTime;
+		ready = true;
+	}
+
+	@EventListener
+	public void onMembersCommitted(MembersCommittedEvent event) {
+		if (!enabled) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if (committedDuringRebuild != null) {
+				committedDuringRebuild.addAll(event.getMembers());
+			}
+			// The old index stays current while a rebuild runs, in case it fails
+			if (columns != null) {
+				for (Member member : event.getMembers()) {
+					columns.put(member);
+				}
+				columns.mergeIfNeeded();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public NameIndexStatsDto getStats() {
+		lock.readLock().lock();
+		try {
+			Columns c = columns;
+			return new NameIndexStatsDto(enabled, ready, c != null ? c.size : 0, c != null ? c.size - c.sortedSize : 0,
+					c != null ? c.estimatedBytes() : 0, lastRebuildMs, c != null ? c.merges : 0);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Column store of the indexed members plus the two sorted ordinal arrays
+	static final class Columns {
+
+		private String[] memberIds = new String[1024];
+		private String[] firstNames = new String[1024];
+		private String[] lastNames = new String[1024];
+		private String[] genders = new String[1024];
+		private String[] cities = new String[1024];
+		private int[] dobs = new int[1024];
+		private int size;
+
+		// Ordinals 0..sortedSize-1 sorted by name, later ordinals are pending
+		private int[] byFirstName = new int[0];
+		private int[] byLastName = new int[0];
+		private int sortedSize;
+		private long merges;
+
+		// Ordinals of the pending members added by put, by key
+		private final Map<String, Integer> pendingKeys = new HashMap<>();
+
+		// Gender and city repeat a lot, every distinct value is kept once
+		private final Map<String, String> shared = new HashMap<>();
+		private long stringBytes;
+
+		void add(MemberDto member) {
+			add(member.getMemberId(), member.getFirstName(), member.getLastName(), member.getDob(),
+					member.getGender(), member.getCity());
+		}
+
+		void add(Member member) {
+			add(member.getMemberId(), member.getUniqId().getFirstName(), member.getUniqId().getLastName(),
+					member.getUniqId().getDob(), member.getUniqId().getGender(), member.getCity());
+		}
+
+		// Adds a committed member, or updates the stored one with the same key (an
+		// upsert). Keys are compared ignoring case like the primary key in MySQL.
+		void put(Member member) {
+			MemberId id = member.getUniqId();
+			int dob = (int) id.getDob().toEpochDay();
+			int o = indexOf(id.getFirstName(), id.getLastName(), dob, id.getGender());
+			if (o < 0) {
+				pendingKeys.put(pendingKey(id.getFirstName(), id.getLastName(), dob, id.getGender()), size);
+				add(member);
+				return;
+			}
+			memberIds[o] = member.getMemberId();
+			cities[o] = share(member.getCity());
+		}
+
+		private int indexOf(String firstName, String lastName, int dob, String gender) {
+			int[] range = range(byFirstName, firstNames, firstName);
+			for (int i = range[0]; i < range[1]; i++) {
+				int o = byFirstName[i];
+				if (firstNames[o].equalsIgnoreCase(firstName) && lastNames[o].equalsIgnoreCase(lastName)
+						&& dobs[o] == dob && genders[o].equalsIgnoreCase(gender)) {
+					return o;
+				}
+			}
+			Integer pending = pendingKeys.get(pendingKey(firstName, lastName, dob, gender));
+			return pending != null ? pending : -1;
+		}
+
+		private static String pendingKey(String firstName, String lastName, int dob, String gender) {
+			return firstName.toLowerCase(Locale.ROOT) + '\0' + lastName.toLowerCase(Locale.ROOT) + '\0' + dob + '\0'
+					+ gender.toLowerCase(Locale.ROOT);
+		}
+
+		private void add(String memberId, String firstName, String lastName, LocalDate dob, String gender,
+				String city) {
+			if (size == firstNames.length) {
+				int capacity = size * 2;
+				memberIds = Arrays.copyOf(memberIds, capacity);
+				firstNames = Arrays.copyOf(firstNames, capacity);
+				lastNames = Arrays.copyOf(lastNames, capacity);
+				genders = Arrays.copyOf(genders, capacity);
+				cities = Arrays.copyOf(cities, capacity);
+				dobs = Arrays.copyOf(dobs, capacity);
+			}
+			memberIds[size] = memberId;
+			firstNames[size] = firstName;
+			lastNames[size] = lastName;
+			genders[size] = share(gender);
+			cities[size] = share(city);
+			dobs[size] = (int) dob.toEpochDay();
+			stringBytes += stringBytes(memberId) + stringBytes(firstName) + stringBytes(lastName);
+			size++;
+		}
+
+		private String share(String value) {
+			if (value == null) {
+				return null;
+			}
+			String existing = shared.putIfAbsent(value, value);
+			if (existing != null) {
+				return existing;
+			}
+			stringBytes += stringBytes(value);
+			return value;
+		}
+
+		void sortAll() {
+			byFirstName = sortedOrdinals(0, size, firstNames);
+			byLastName = sortedOrdinals(0, size, lastNames);
+			sortedSize = size;
+			pendingKeys.clear();
+		}
+
+		// Merges the pending ordinals once they are more than an eighth of the sorted ones
+		void mergeIfNeeded() {
+			int pending = size - sortedSize;
+			if (pending < Math.max(1024, sortedSize / 8)) {
+				return;
+			}
+			byFirstName = merge(byFirstName, sortedOrdinals(sortedSize, size, firstNames), firstNames);
+			byLastName = merge(byLastName, sortedOrdinals(sortedSize, size, lastNames), lastNames);
+			sortedSize = size;
+			pendingKeys.clear();
+			merges++;
+		}
+
+		List<MemberDto> find(String firstNamePrefix, String lastNamePrefix) {
+			int[] firstRange = range(byFirstName, firstNames, firstNamePrefix);
+			int[] lastRange = range(byLastName, lastNames, lastNamePrefix);
+			List<MemberDto> result = new ArrayList<>();
+
+			// Walk the smaller of the two ranges and check the other prefix
+			if (firstRange[1] - firstRange[0] <= lastRange[1] - lastRange[0]) {
+				for (int i = firstRange[0]; i < firstRange[1]; i++) {
+					int o = byFirstName[i];
+					if (startsWith(lastNames[o], lastNamePrefix)) {
+						result.add(toDto(o));
+					}
+				}
+			} else {
+				for (int i = lastRange[0]; i < lastRange[1]; i++) {
+					int o = byLastName[i];
+					if (startsWith(firstNames[o], firstNamePrefix)) {
+						result.add(toDto(o));
+					}
+				}
+			}
+			for (int o = sortedSize; o < size; o++) {
+				if (startsWith(firstNames[o], firstNamePrefix) && startsWith(lastNames[o], lastNamePrefix)) {
+					result.add(toDto(o));
+				}
+			}
+			return result;
+		}
+
+		long estimatedBytes() {
+			// 4 bytes per reference or int, assuming compressed references
+			long arrays = (long) firstNames.length * 6 * 4 + (long) (byFirstName.length + byLastName.length) * 4;
+			return arrays + stringBytes;
+		}
+
+		private MemberDto toDto(int o) {
+			return new MemberDto(memberIds[o], firstNames[o], lastNames[o], LocalDate.ofEpochDay(dobs[o]), genders[o],
+					cities[o]);
+		}
+
+		// Start (inclusive) and end (exclusive) of the names starting with prefix
+		private int[] range(int[] sorted, String[] names, String prefix) {
+			int from = lowerBound(sorted, names, prefix);
+			int to = from;
+			while (to < sortedSize && startsWith(names[sorted[to]], prefix)) {
+				to++;
+			}
+			return new int[] { from, to };
+		}
+
+		// First position whose name is not less than key
+		private int lowerBound(int[] sorted, String[] names, String key) {
+			int low = 0;
+			int high = sortedSize;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (String.CASE_INSENSITIVE_ORDER.compare(names[sorted[mid]], key) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		private static boolean startsWith(String name, String prefix) {
+			return name.regionMatches(true, 0, prefix, 0, prefix.length());
+		}
+
+		private static long stringBytes(String s) {
+			// Object header, fields and byte array, one byte per char for Latin-1 text
+			return s == null ? 0 : 40 + s.length();
+		}
+
+		private static int[] sortedOrdinals(int from, int to, String[] names) {
+			int[] ordinals = new int[to - from];
+			for (int i = 0; i < ordinals.length; i++) {
+				ordinals[i] = from + i;
+			}
+			mergeSort(ordinals, new int[ordinals.length], 0, ordinals.length, names);
+			return ordinals;
+		}
+
+		private static void mergeSort(int[] a, int[] tmp, int from, int to, String[] names) {
+			if (to - from < 2) {
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			mergeSort(a, tmp, from, mid, names);
+			mergeSort(a, tmp, mid, to, names);
+			System.arraycopy(a, from, tmp, from, to - from);
+			int i = from;
+			int j = mid;
+			for (int k = from; k < to; k++) {
+				if (j >= to || (i < mid && String.CASE_INSENSITIVE_ORDER.compare(names[tmp[i]], names[tmp[j]]) <= 0)) {
+					a[k] = tmp[i++];
+				} else {
+					a[k] = tmp[j++];
+				}
+			}
+		}
+
+		private static int[] merge(int[] a, int[] b, String[] names) {
+			int[] result = new int[a.length + b.length];
+			int i = 0;
+			int j = 0;
+			for (int k = 0; k < result.length; k++) {
+				if (j >= b.length || (i < a.length && String.CASE_INSENSITIVE_ORDER.compare(names[a[i]], names[b[j]]) <= 0)) {
+					result[k] = a[i++];
+				} else {
+					result[k] = b[j++];
+				}
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.example.demo.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import com.example.demo.entity.MemberId;
+import com.example.demo.exceptions.InvalidRecordException;
+
+// Continuation token of the keyset listing: the key of the row a page starts
+// after (or ends before), packed and base64url encoded so clients treat it as
+// an opaque string.
+final class MemberPageToken {
+
+	private MemberPageToken() {
+	}
+
+	static String encode(MemberId key) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeUTF(key.getFirstName());
+			out.writeUTF(key.getLastName());
+			out.writeLong(key.getDob().toEpochDay());
+			out.writeUTF(key.getGender());
+			out.flush();
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static MemberId decode(String token) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+			return new MemberId(in.readUTF(), in.readUTF(), LocalDate.ofEpochDay(in.readLong()), in.readUTF());
+		} catch (IOException | RuntimeException e) {
+			throw new InvalidRecordException("Invalid page token");
+		}
+	}
+
+}
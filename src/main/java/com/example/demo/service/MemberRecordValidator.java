@@ -0,0 +1,133 @@
+package com.example.demo.service;
+
+import static com.example.demo.service.MemberField.ADDRESS1;
+import static com.example.demo.service.MemberField.ADDRESS2;
+import static com.example.demo.service.MemberField.CITY;
+import static com.example.demo.service.MemberField.COMPANY;
+import static com.example.demo.service.MemberField.DOB;
+import static com.example.demo.service.MemberField.EDUCATION;
+import static com.example.demo.service.MemberField.FIRST_NAME;
+import static com.example.demo.service.MemberField.GENDER;
+import static com.example.demo.service.MemberField.HOUSE_NUMBER;
+import static com.example.demo.service.MemberField.LAST_NAME;
+import static com.example.demo.service.MemberField.MEMBER_ID;
+import static com.example.demo.service.MemberField.MOBILE;
+import static com.example.demo.service.MemberField.MONTHLY_SALARY;
+import static com.example.demo.service.MemberField.PIN_CODE;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+import com.example.demo.exceptions.InvalidRecordException;
+import com.example.demo.service.FieldRules.FieldCheck;
+
+// Validation of one upload row against a compiled feed schema. Instances are
+// immutable and shared by all validator threads of an upload.
+public class MemberRecordValidator {
+
+	private final CompiledFeedSchema schema;
+	private final LocalDate today;
+
+	// Copied from the schema so the row loop only reads final fields
+	private final int minColumns;
+	private final int[] requiredColumns;
+	private final int[] keyColumns;
+	private final int[] checkColumns;
+	private final FieldCheck[] checks;
+	private final int[] cleanAddressColumns;
+	// Index of the checks that parse the date of birth and the salary
+	private final int dobCheck;
+	private final int salaryCheck;
+
+	MemberRecordValidator(CompiledFeedSchema schema, FieldCheck[] checks, LocalDate today) {
+		this.schema = schema;
+		this.today = today;
+		this.minColumns = schema.getMinColumns();
+		this.requiredColumns = schema.getRequiredColumns();
+		this.keyColumns = schema.getKeyColumns();
+		this.checkColumns = schema.getCheckColumns();
+		this.checks = checks;
+		this.cleanAddressColumns = schema.getCleanAddressColumns();
+		int dob = -1;
+		int salary = -1;
+		for (int i = 0; i < checks.length; i++) {
+			if (checks[i].getField() == DOB) {
+				dob = i;
+			} else if (checks[i].getField() == MONTHLY_SALARY) {
+				salary = i;
+			}
+		}
+		this.dobCheck = dob;
+		this.salaryCheck = salary;
+	}
+
+	public ValidatedRecord validate(String[] data) {
+		boolean keyed = false;
+		long keyHigh = 0;
+		long keyLow = 0;
+		try {
+			// Validate record length
+			if (data.length < minColumns) {
+				throw new InvalidRecordException("Insufficient fields", "insufficient_fields");
+			}
+
+			// Trim all fields
+			for (int i = 0; i < data.length; i++) {
+				data[i] = data[i] != null ? data[i].trim() : "";
+			}
+
+			// Validating required fields
+			for (int column : requiredColumns) {
+				if (data[column].isEmpty()) {
+					throw new InvalidRecordException("Empty fields", "empty_fields");
+				}
+			}
+
+			// Hash the unique key of the record, duplicates are checked by resolveRecord
+			keyHigh = MemberKeyHash.high(data, keyColumns);
+			keyLow = MemberKeyHash.low(data, keyColumns);
+			keyed = true;
+
+			// Run the column checks in schema order, the first failure rejects the row
+			LocalDate dob = null;
+			BigDecimal monthlySalary = null;
+			for (int i = 0; i < checks.length; i++) {
+				Object value = checks[i].check(data[checkColumns[i]]);
+				if (i == dobCheck) {
+					dob = (LocalDate) value;
+				} else if (i == salaryCheck) {
+					monthlySalary = (BigDecimal) value;
+				}
+			}
+
+			// Clean address fields
+			for (int column : cleanAddressColumns) {
+				data[column] = FieldRules.cleanAddress(data[column]);
+			}
+
+			// Creating member object and saving it to database
+			MemberId memberId = new MemberId(schema.text(data, FIRST_NAME), schema.text(data, LAST_NAME), dob,
+					schema.text(data, GENDER));
+			Member member = new Member(memberId, schema.text(data, MEMBER_ID), schema.text(data, EDUCATION),
+					schema.text(data, HOUSE_NUMBER), schema.text(data, ADDRESS1), schema.text(data, ADDRESS2),
+					schema.text(data, PIN_CODE), schema.text(data, CITY), schema.text(data, MOBILE),
+					schema.text(data, COMPANY), monthlySalary, null);
+			member.setRowHash(MemberKeyHash.rowHash(member));
+
+			return ValidatedRecord.valid(keyHigh, keyLow, member);
+		} catch (InvalidRecordException e) {
+			return keyed ? ValidatedRecord.invalid(keyHigh, keyLow, e) : ValidatedRecord.invalid(e);
+		}
+	}
+
+	public CompiledFeedSchema getSchema() {
+		return schema;
+	}
+
+	public LocalDate getToday() {
+		return today;
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.example.demo.service;
+
+// Row hash of every stored member by the 128 bit hash of its key, in an open
+// addressing table of primitive longs: high, low and row hash of slot i at 3i,
+// 3i+1 and 3i+2, 24 bytes per slot and nothing allocated per lookup.
+//
+// Not thread safe.
+class MemberRowHashIndex {
+
+	// Returned by get for keys that are not there
+	static final long ABSENT = 0;
+	// Stored for members whose row hash is not known, it matches no row
+	static final long UNKNOWN = 1;
+
+	private static final double MAX_LOAD = 0.75;
+
+	private int capacity;
+	private int mask;
+	private int size;
+	private long[] slots;
+
+	MemberRowHashIndex(int expectedKeys) {
+		allocate(tableSizeFor(expectedKeys));
+	}
+
+	// Adds the key or replaces its row hash
+	void put(long high, long low, long rowHash) {
+		if (high == 0 && low == 0) {
+			// 0/0 marks an empty slot
+			low = 1;
+		}
+		int slot = findSlot(high, low);
+		if (slots[3 * slot] == 0 && slots[3 * slot + 1] == 0) {
+			if (size + 1 > capacity * MAX_LOAD) {
+				resize();
+				slot = findSlot(high, low);
+			}
+			slots[3 * slot] = high;
+			slots[3 * slot + 1] = low;
+			size++;
+		}
+		slots[3 * slot + 2] = rowHash;
+	}
+
+	long get(long high, long low) {
+		if (high == 0 && low == 0) {
+			low = 1;
+		}
+		int slot = findSlot(high, low);
+		return slots[3 * slot] == 0 && slots[3 * slot + 1] == 0 ? ABSENT : slots[3 * slot + 2];
+	}
+
+	int size() {
+		return size;
+	}
+
+	// Slot of the key, or the empty slot where it would go
+	private int findSlot(long high, long low) {
+		int slot = (int) high & mask;
+		while (true) {
+			long h = slots[3 * slot];
+			long l = slots[3 * slot + 1];
+			if ((h == high && l == low) || (h == 0 && l == 0)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void resize() {
+		long[] old = slots;
+		allocate(capacity * 2);
+		for (int i = 0; i < old.length; i += 3) {
+			if (old[i] != 0 || old[i + 1] != 0) {
+				int slot = findSlot(old[i], old[i + 1]);
+				slots[3 * slot] = old[i];
+				slots[3 * slot + 1] = old[i + 1];
+				slots[3 * slot + 2] = old[i + 2];
+			}
+		}
+	}
+
+	private void allocate(int newCapacity) {
+		if (newCapacity < 0 || newCapacity > (1 << 29)) {
+			throw new IllegalStateException("Row hash index is full");
+		}
+		capacity = newCapacity;
+		mask = newCapacity - 1;
+		slots = new long[newCapacity * 3];
+	}
+
+	private static int tableSizeFor(int expectedKeys) {
+		long needed = (long) Math.ceil(Math.max(expectedKeys, 16) / MAX_LOAD);
+		return (int) Math.min(Long.highestOneBit(needed - 1) << 1, 1 << 29);
+	}
+
+}
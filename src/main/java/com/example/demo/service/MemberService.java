@@ -1,22 +1,45 @@
 package com.example.demo.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.demo.dto.CacheStatsDto;
 import com.example.demo.dto.MemberDto;
+import com.example.demo.dto.MemberPage;
 import com.example.demo.dto.MemberSalaryDto;
+import com.example.demo.dto.MemberStatDto;
+import com.example.demo.dto.NameIndexStatsDto;
 import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
 import com.example.demo.exceptions.InvalidRecordException;
 import com.example.demo.exceptions.MemberNotFoundException;
 import com.example.demo.repository.MemberRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import jakarta.persistence.EntityManager;
 
 @Service
 public class MemberService {
@@ -24,6 +47,28 @@ public class MemberService {
 	@Autowired
 	private MemberRepository memberRepository;
 
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private MemberNameIndex memberNameIndex;
+
+	@Autowired
+	private MemberStatsService memberStatsService;
+
+	// How long the total shown by the keyset listing is reused before counting again
+	@Value("${member.page.count-cache-seconds:60}")
+	private int countCacheSeconds;
+
+	private volatile long cachedCount = -1;
+	private volatile long cachedCountAt;
+
 	// Creating service which fetches records by member first name
 	public List<Member> getMemberByFirstName(String firstName) {
 
@@ -46,10 +91,13 @@ public class MemberService {
 
 	// Fetches the Records based on given pattern
 	public List<MemberDto> getMembersByNamePattern(String firstNamePrefix, String lastNamePrefix) {
-		String firstNamePattern = firstNamePrefix + "%";
-		String lastNamePattern = lastNamePrefix + "%";
-
-		List<MemberDto> members = memberRepository.findMembersByNamePattern(firstNamePattern, lastNamePattern);
+		List<MemberDto> members;
+		if (memberNameIndex.canServe(firstNamePrefix, lastNamePrefix)) {
+			members = memberNameIndex.find(firstNamePrefix, lastNamePrefix);
+		} else {
+			members = memberRepository.findMembersByNamePattern(MemberRepository.startsWith(firstNamePrefix),
+					MemberRepository.startsWith(lastNamePrefix));
+		}
 
 		if (members.isEmpty()) {
 			throw new MemberNotFoundException("No matched records found for this name pattern");
@@ -59,26 +107,115 @@ public class MemberService {
 
 	// fetch the records between two dates
 	public List<Member> getMembersByDobRange(String startDateStr, String endDateStr) {
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+		LocalDate startDate = parseDob(startDateStr);
+		LocalDate endDate = parseDob(endDateStr);
 
-		try {
-			LocalDate startDate = LocalDate.parse(startDateStr, formatter);
-			LocalDate endDate = LocalDate.parse(endDateStr, formatter);
+		List<Member> members = memberRepository.findMembersByDobBetween(startDate, endDate);
 
-			List<Member> members = memberRepository.findMembersByDobBetween(startDate, endDate);
+		if (members.isEmpty()) {
+			throw new MemberNotFoundException("No members found in the specified date range");
+		}
+		return members;
+	}
 
-			if (members.isEmpty()) {
-				throw new MemberNotFoundException("No members found in the specified date range");
-			}
-			return members;
+	// Size and hit/miss counts of the member lookup caches
+	public List<CacheStatsDto> getCacheStats() {
+		List<CacheStatsDto> result = new ArrayList<>();
+		for (String name : cacheManager.getCacheNames()) {
+			Cache<Object, Object> cache = ((CaffeineCache) cacheManager.getCache(name)).getNativeCache();
+			CacheStats stats = cache.stats();
+			result.add(new CacheStatsDto(name, cache.estimatedSize(), stats.hitCount(), stats.missCount(),
+					stats.hitRate(), stats.evictionCount()));
+		}
+		return result;
+	}
+
+	public NameIndexStatsDto getNameIndexStats() {
+		return memberNameIndex.getStats();
+	}
+
+	public NameIndexStatsDto rebuildNameIndex() {
+		memberNameIndex.rebuild();
+		return memberNameIndex.getStats();
+	}
+
+	public Map<String, Map<String, MemberStatDto>> getMemberStats(String dimension, String value) {
+		return memberStatsService.getStats(dimension, value);
+	}
+
+	public Map<String, Map<String, MemberStatDto>> rebuildMemberStats() {
+		memberStatsService.rebuild();
+		return memberStatsService.getStats(null, null);
+	}
+
+	// Parses a date of birth given as a request parameter
+	public LocalDate parseDob(String date) {
+		try {
+			return LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
 		} catch (DateTimeParseException e) {
 			throw new InvalidRecordException("Invalid date format. Please use dd-MM-yyyy format");
 		}
 	}
 
+	// Writes the members between two dates to the output as they are read from the
+	// database. Every entity is detached once it is written, so the persistence
+	// context stays empty however many rows there are.
+	@Transactional(readOnly = true)
+	public void writeMembersByDobRange(LocalDate startDate, LocalDate endDate, boolean ndjson, OutputStream out)
+			throws IOException {
+		try (Stream<Member> members = memberRepository.streamMembersByDobBetween(startDate, endDate);
+				JsonRowWriter writer = new JsonRowWriter(objectMapper, out, ndjson)) {
+			Iterator<Member> it = members.iterator();
+			while (it.hasNext()) {
+				Member member = it.next();
+				writer.write(member);
+				entityManager.detach(member);
+			}
+		}
+	}
+
+	// Same for the salary query, DTOs are not tracked so nothing has to be detached
+	@Transactional(readOnly = true)
+	public void writeMembersBySalary(BigDecimal salary, boolean ndjson, OutputStream out) throws IOException {
+		try (Stream<MemberSalaryDto> members = memberRepository.streamBySalary(salary);
+				JsonRowWriter writer = new JsonRowWriter(objectMapper, out, ndjson)) {
+			Iterator<MemberSalaryDto> it = members.iterator();
+			while (it.hasNext()) {
+				writer.write(it.next());
+			}
+		}
+	}
+
 	// fetch the records Salary greater than 2000
 	public List<MemberSalaryDto> getMembersBySalary(String salary) {
-		return memberRepository.findBySalary(salary);
+		return memberRepository.findBySalary(parseSalary(salary));
+	}
+
+	// Members with a salary in the given range, lowest first
+	public List<MemberSalaryDto> getMembersBySalaryRange(String minSalary, String maxSalary, int limit) {
+		checkLimit(limit);
+		return memberRepository.findBySalaryRange(parseSalary(minSalary), parseSalary(maxSalary), Limit.of(limit));
+	}
+
+	// The members with the highest salaries
+	public List<MemberSalaryDto> getTopSalaries(int limit) {
+		checkLimit(limit);
+		return memberRepository.findTopSalaries(Limit.of(limit));
+	}
+
+	// Parses a salary given as a request parameter
+	public BigDecimal parseSalary(String salary) {
+		try {
+			return new BigDecimal(salary.trim());
+		} catch (NumberFormatException e) {
+			throw new InvalidRecordException("Invalid salary: " + salary);
+		}
+	}
+
+	private static void checkLimit(int limit) {
+		if (limit < 1 || limit > 1000) {
+			throw new InvalidRecordException("Limit must be between 1 and 1000");
+		}
 	}
 
 	// fetching all records
@@ -87,4 +224,60 @@ public class MemberService {
 		return memberRepository.findAll(PageRequest.of(page, size));
 	}
 
+	// Fetches one page of members in name order using keyset pagination. With
+	// after= the page starts after that row, with before= it ends before it, with
+	// neither it is the first page. Every page costs the same however deep it is.
+	public MemberPage getMembersPage(String after, String before, int size, boolean withTotal) {
+		if (size < 1 || size > 1000) {
+			throw new InvalidRecordException("Page size must be between 1 and 1000");
+		}
+		// One extra row tells whether there is another page in that direction
+		Limit limit = Limit.of(size + 1);
+		List<Member> rows;
+		boolean hasNext;
+		boolean hasPrevious;
+
+		if (before != null) {
+			MemberId key = MemberPageToken.decode(before);
+			rows = new ArrayList<>(memberRepository.findPageBefore(key.getFirstName(), key.getLastName(),
+					key.getDob(), key.getGender(), limit));
+			hasPrevious = rows.size() > size;
+			hasNext = true;
+			if (hasPrevious) {
+				rows.remove(size);
+			}
+			Collections.reverse(rows);
+		} else {
+			if (after != null) {
+				MemberId key = MemberPageToken.decode(after);
+				rows = new ArrayList<>(memberRepository.findPageAfter(key.getFirstName(), key.getLastName(),
+						key.getDob(), key.getGender(), limit));
+			} else {
+				rows = new ArrayList<>(memberRepository.findFirstPage(limit));
+			}
+			hasNext = rows.size() > size;
+			hasPrevious = after != null;
+			if (hasNext) {
+				rows.remove(size);
+			}
+		}
+
+		String nextToken = hasNext && !rows.isEmpty() ? MemberPageToken.encode(rows.get(rows.size() - 1).getUniqId())
+				: null;
+		String previousToken = hasPrevious && !rows.isEmpty() ? MemberPageToken.encode(rows.get(0).getUniqId())
+				: null;
+		return new MemberPage(rows, size, nextToken, previousToken, withTotal ? countMembers() : null);
+	}
+
+	// COUNT(*) over the whole table is slow on large tables, so the result is
+	// reused for a while
+	public long countMembers() {
+		long now = System.currentTimeMillis();
+		if (cachedCount < 0 || now - cachedCountAt > countCacheSeconds * 1000L) {
+			cachedCount = memberRepository.count();
+			cachedCountAt = now;
+		}
+		return cachedCount;
+	}
+
 }
\ No newline at end of file
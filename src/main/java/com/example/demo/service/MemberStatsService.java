@@ -0,0 +1,300 @@
+package com.example.demo.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BinaryOperator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.dto.MemberStatDto;
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+import com.example.demo.entity.MemberStat;
+import com.example.demo.entity.MemberStatId;
+import com.example.demo.exceptions.InvalidRecordException;
+import com.example.demo.repository.CSVProcessingRepository;
+import com.example.demo.repository.MemberStatRepository;
+
+import jakarta.annotation.PostConstruct;
+
+// Member counts and salary figures per city, company, year of birth and salary
+// band, so reports do not have to group the members table.
+//
+// Every batch an upload writes is folded into a small set of deltas, which are
+// added to the member_stats rows in the transaction that inserts the batch and
+// to the copy kept here once it is committed. Reading a bucket is a map lookup.
+// Age bands are made from the years of birth when they are read, so they do not
+// go stale as members get older.
+//
+// An insert skips stored members, so they are not counted. The existing member
+// index already left them out of the batch, without it they are read in the
+// batch transaction. An upsert replaces them, so they are read and locked in
+// that transaction and their old values are taken out of the counts and sums.
+// Min and max cannot be taken back, after updates they are bounds until the
+// stats are rebuilt.
+//
+// Buckets are compared like MySQL compares the member_stats key, ignoring case
+// and trailing spaces. A bucket keeps the spelling it was first stored with.
+@Service
+public class MemberStatsService {
+
+	public static final String CITY = "city";
+	public static final String COMPANY = "company";
+	public static final String BIRTH_YEAR = "birth_year";
+	public static final String SALARY_BAND = "salary_band";
+	// Only offered when reading, made from BIRTH_YEAR
+	public static final String AGE_BAND = "age_band";
+
+	private static final List<String> DIMENSIONS = List.of(CITY, COMPANY, AGE_BAND, SALARY_BAND);
+
+	// Lower bounds of the salary bands
+	private static final BigDecimal[] SALARY_BANDS = { BigDecimal.ZERO, BigDecimal.valueOf(10000),
+			BigDecimal.valueOf(25000), BigDecimal.valueOf(50000), BigDecimal.valueOf(100000) };
+
+	private static final Comparator<MemberStatId> ID_ORDER = Comparator.comparing(MemberStatId::getDimension)
+			.thenComparing(id -> normalize(id.getBucket()));
+
+	@Autowired
+	private MemberStatRepository memberStatRepository;
+
+	@Autowired
+	private CSVProcessingRepository csvProcessingRepository;
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	@Value("${member.stats.enabled:true}")
+	private boolean enabled;
+
+	// Rows read at a time when the stats are computed again from the members table
+	@Value("${member.stats.fetch-size:10000}")
+	private int fetchSize;
+
+	// Each bucket is replaced by a merged copy under the lock of its map bin, so
+	// batches touching different buckets do not wait on each other and readers
+	// never see half of an update. Keyed by the normalized id, see key.
+	private final Map<MemberStatId, MemberStat> stats = new ConcurrentHashMap<>();
+
+	// Before the web server starts and before interrupted jobs are resumed, so no
+	// batch commits between reading the rows and installing them
+	@PostConstruct
+	public void load() {
+		if (enabled) {
+			stats.clear();
+			memberStatRepository.findAll().forEach(stat -> stats.put(key(stat.getId()), stat));
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// Stats change of a batch about to be written, given the members already
+	// stored under its keys: an upsert replaces them, an insert skips those
+	// members. Sorted so the rows are always locked in the same order.
+	public List<MemberStat> aggregate(List<Member> members, List<Member> stored, boolean upsert) {
+		if (!enabled) {
+			return List.of();
+		}
+		Set<String> storedKeys = new HashSet<>();
+		for (Member member : stored) {
+			storedKeys.add(memberKey(member));
+		}
+		Map<MemberStatId, MemberStat> delta = new TreeMap<>(ID_ORDER);
+		for (Member member : members) {
+			if (upsert || !storedKeys.contains(memberKey(member))) {
+				add(delta, member, 1);
+			}
+		}
+		if (upsert) {
+			for (Member member : stored) {
+				add(delta, member, -1);
+			}
+		}
+		return new ArrayList<>(delta.values());
+	}
+
+	// Called once the batch the stats belong to is committed
+	public void addCommitted(List<MemberStat> delta) {
+		for (MemberStat stat : delta) {
+			stats.merge(key(stat.getId()), stat, MemberStatsService::merge);
+		}
+	}
+
+	// Computes the stats from the members table and replaces the stored ones.
+	// Meant for existing data, members written by uploads running at the same
+	// time may be counted twice or not at all.
+	public void rebuild() {
+		Map<MemberStatId, MemberStat> all = new TreeMap<>(ID_ORDER);
+		ingestScheduler.withConnection(() -> {
+			csvProcessingRepository.forEachMemberForStats(fetchSize, member -> add(all, member, 1));
+			csvProcessingRepository.replaceStats(all.values());
+		});
+		stats.clear();
+		all.values().forEach(stat -> stats.put(key(stat.getId()), stat));
+	}
+
+	// All buckets of the dimension, or of every dimension when none is given.
+	// With a value only that bucket is looked up.
+	public Map<String, Map<String, MemberStatDto>> getStats(String dimension, String value) {
+		if (dimension != null && !DIMENSIONS.contains(dimension)) {
+			throw new InvalidRecordException("Unsupported dimension: " + dimension + ", expected one of " + DIMENSIONS);
+		}
+		Map<String, Map<String, MemberStatDto>> result = new LinkedHashMap<>();
+		for (String d : dimension == null ? DIMENSIONS : List.of(dimension)) {
+			Map<String, MemberStat> buckets = value == null ? buckets(d) : bucket(d, value);
+			Map<String, MemberStatDto> dtos = new TreeMap<>();
+			buckets.forEach((bucket, stat) -> {
+				if (stat.getMemberCount() > 0) {
+					dtos.put(bucket, toDto(stat));
+				}
+			});
+			result.put(d, dtos);
+		}
+		return result;
+	}
+
+	private Map<String, MemberStat> buckets(String dimension) {
+		Map<String, MemberStat> buckets = new TreeMap<>();
+		for (MemberStat stat : stats.values()) {
+			String d = stat.getId().getDimension();
+			if (dimension.equals(AGE_BAND) && d.equals(BIRTH_YEAR)) {
+				buckets.merge(ageBand(stat.getId().getBucket()), stat, MemberStatsService::merge);
+			} else if (d.equals(dimension)) {
+				buckets.put(stat.getId().getBucket(), stat);
+			}
+		}
+		return buckets;
+	}
+
+	private Map<String, MemberStat> bucket(String dimension, String value) {
+		MemberStat stat;
+		if (dimension.equals(AGE_BAND)) {
+			// A band is ten years of birth
+			stat = null;
+			int[] ages = parseAgeBand(value);
+			int year = LocalDate.now().getYear();
+			for (int age = ages[0]; age <= ages[1]; age++) {
+				MemberStat yearStat = stats.get(key(new MemberStatId(BIRTH_YEAR, String.valueOf(year - age))));
+				if (yearStat != null) {
+					stat = stat == null ? yearStat : merge(stat, yearStat);
+				}
+			}
+		} else {
+			stat = stats.get(key(new MemberStatId(dimension, value)));
+		}
+		return stat == null ? Map.of() : Map.of(value, stat);
+	}
+
+	// sign is 1 to add the member, -1 to take it out
+	private static void add(Map<MemberStatId, MemberStat> delta, Member member, int sign) {
+		BigDecimal salary = member.getMonthlySalary();
+		add(delta, CITY, nonNull(member.getCity()), salary, sign);
+		add(delta, COMPANY, nonNull(member.getCompany()), salary, sign);
+		add(delta, BIRTH_YEAR, String.valueOf(member.getUniqId().getDob().getYear()), salary, sign);
+		if (salary != null) {
+			add(delta, SALARY_BAND, salaryBand(salary), salary, sign);
+		}
+	}
+
+	private static void add(Map<MemberStatId, MemberStat> delta, String dimension, String bucket, BigDecimal salary,
+			int sign) {
+		MemberStatId id = new MemberStatId(dimension, bucket);
+		MemberStat stat = delta.get(id);
+		if (stat == null) {
+			stat = new MemberStat(id, 0, 0, null, null, null);
+			delta.put(id, stat);
+		}
+		stat.setMemberCount(stat.getMemberCount() + sign);
+		if (salary != null) {
+			BigDecimal signed = sign < 0 ? salary.negate() : salary;
+			stat.setSalaryCount(stat.getSalaryCount() + sign);
+			stat.setSalarySum(stat.getSalarySum() == null ? signed : stat.getSalarySum().add(signed));
+			if (sign > 0) {
+				stat.setSalaryMin(stat.getSalaryMin() == null ? salary : stat.getSalaryMin().min(salary));
+				stat.setSalaryMax(stat.getSalaryMax() == null ? salary : stat.getSalaryMax().max(salary));
+			}
+		}
+	}
+
+	private static MemberStat merge(MemberStat a, MemberStat b) {
+		return new MemberStat(a.getId(), a.getMemberCount() + b.getMemberCount(),
+				a.getSalaryCount() + b.getSalaryCount(), combine(a.getSalarySum(), b.getSalarySum(), BigDecimal::add),
+				combine(a.getSalaryMin(), b.getSalaryMin(), BigDecimal::min),
+				combine(a.getSalaryMax(), b.getSalaryMax(), BigDecimal::max));
+	}
+
+	private static BigDecimal combine(BigDecimal a, BigDecimal b, BinaryOperator<BigDecimal> op) {
+		return a == null ? b : b == null ? a : op.apply(a, b);
+	}
+
+	private static MemberStatDto toDto(MemberStat stat) {
+		BigDecimal average = stat.getSalaryCount() <= 0 ? null
+				: stat.getSalarySum().divide(BigDecimal.valueOf(stat.getSalaryCount()), 2, RoundingMode.HALF_UP);
+		return new MemberStatDto(stat.getMemberCount(), stat.getSalarySum(), stat.getSalaryMin(), stat.getSalaryMax(),
+				average);
+	}
+
+	private static MemberStatId key(MemberStatId id) {
+		return new MemberStatId(id.getDimension(), normalize(id.getBucket()));
+	}
+
+	private static String normalize(String bucket) {
+		return bucket.stripTrailing().toLowerCase(Locale.ROOT);
+	}
+
+	// Primary key of a member as MySQL compares it
+	private static String memberKey(Member member) {
+		MemberId id = member.getUniqId();
+		return normalize(id.getFirstName()) + '\0' + normalize(id.getLastName()) + '\0' + id.getDob() + '\0'
+				+ normalize(id.getGender());
+	}
+
+	private static String nonNull(String value) {
+		return value == null ? "" : value;
+	}
+
+	// e.g. 25000-50000, the highest band is 100000+
+	static String salaryBand(BigDecimal salary) {
+		for (int i = SALARY_BANDS.length - 1; i > 0; i--) {
+			if (salary.compareTo(SALARY_BANDS[i]) >= 0) {
+				return i == SALARY_BANDS.length - 1 ? SALARY_BANDS[i] + "+" : SALARY_BANDS[i] + "-" + SALARY_BANDS[i + 1];
+			}
+		}
+		return SALARY_BANDS[0] + "-" + SALARY_BANDS[1];
+	}
+
+	// Age reached this year, e.g. 30-39
+	private static String ageBand(String birthYear) {
+		int age = LocalDate.now().getYear() - Integer.parseInt(birthYear);
+		int from = Math.floorDiv(age, 10) * 10;
+		return from + "-" + (from + 9);
+	}
+
+	private static int[] parseAgeBand(String band) {
+		String[] parts = band.split("-");
+		try {
+			int from = Integer.parseInt(parts[0]);
+			if (parts.length != 2 || from % 10 != 0 || Integer.parseInt(parts[1]) != from + 9) {
+				throw new NumberFormatException(band);
+			}
+			return new int[] { from, from + 9 };
+		} catch (NumberFormatException e) {
+			throw new InvalidRecordException("Invalid age band: " + band + ", expected e.g. 30-39");
+		}
+	}
+
+}
@@ -0,0 +1,17 @@
+package com.example.demo.service;
+
+import java.util.List;
+
+import com.example.demo.entity.Member;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Published by CSVProcessingService after a batch of members is committed
+@Getter
+@AllArgsConstructor
+public class MembersCommittedEvent {
+
+	private final List<Member> members;
+
+}
@@ -0,0 +1,181 @@
+package com.example.demo.service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.example.demo.exceptions.InvalidRecordException;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+// Rejected rows of one upload, written to a gzip compressed CSV file by a thread
+// of its own. The ordering stage collects the rejects of a chunk and hands them
+// over in one go, it never waits for the file: when the writer falls behind by
+// more than queue-capacity chunks the rows are dropped and counted instead.
+//
+// Each line of the file is: line, reason, message, then the fields of the row.
+// The line is where the record ends in the upload (the header is line 1), the
+// reason is the rule of the InvalidRecordException. Fields are trimmed as the
+// validator left them.
+//
+// A resumed job appends to the file of its earlier runs as another gzip member,
+// gzip readers see one stream. The rows after the last checkpoint are rejected
+// again, those the earlier runs already wrote are skipped. After a crash the
+// file can end in an incomplete member, readers stop there.
+public class RejectedRowLog implements Closeable {
+
+	private static final List<Entry> END = List.of();
+
+	private static final String[] HEADER = { "line", "reason", "message", "fields..." };
+
+	static final class Entry {
+
+		private final long line;
+		private final String[] fields;
+		private final InvalidRecordException error;
+
+		Entry(long line, String[] fields, InvalidRecordException error) {
+			this.line = line;
+			this.fields = fields;
+			this.error = error;
+		}
+	}
+
+	private final Path file;
+	private final BlockingQueue<List<Entry>> queue;
+	private final CSVWriter writer;
+	private final Future<?> writerTask;
+
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile long written;
+
+	// Last line the earlier runs wrote, rows up to it are not written again
+	private long lastLine;
+
+	RejectedRowLog(Path file, ExecutorService executor, int queueCapacity, boolean append) throws IOException {
+		this.file = file;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		boolean earlierRuns = append && Files.exists(file);
+		if (earlierRuns) {
+			readEarlierRuns();
+		}
+		OutputStream target = append
+				? Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+				: Files.newOutputStream(file);
+		OutputStream out = new GZIPOutputStream(new BufferedOutputStream(target), 64 * 1024) {
+			{
+				// Speed over size, the file only has to keep up with the upload
+				def.setLevel(Deflater.BEST_SPEED);
+			}
+		};
+		this.writer = new CSVWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		if (!earlierRuns) {
+			writer.writeNext(HEADER, false);
+		}
+		this.writerTask = executor.submit(this::writeEntries);
+	}
+
+	// Counts the rows already in the file and finds the last line they came from,
+	// up to where the file can be read
+	private void readEarlierRuns() {
+		try (CSVReader reader = new CSVReader(
+				new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+			reader.skip(1);
+			String[] row;
+			while ((row = reader.readNext()) != null) {
+				lastLine = Long.parseLong(row[0]);
+				written++;
+			}
+		} catch (IOException | CsvValidationException | NumberFormatException e) {
+			// The rest of the file was cut off
+		}
+	}
+
+	// Buffer for the rejects of one chunk
+	static List<Entry> newBuffer() {
+		return new ArrayList<>();
+	}
+
+	void submit(List<Entry> entries) {
+		if (!entries.isEmpty() && !queue.offer(entries)) {
+			dropped.addAndGet(entries.size());
+		}
+	}
+
+	// Waits until everything submitted so far is in the file and closes it
+	@Override
+	public void close() throws IOException {
+		try {
+			// The writer thread may have stopped on an error, then nobody takes from the queue
+			boolean ended = false;
+			while (!ended && !writerTask.isDone()) {
+				ended = queue.offer(END, 100, TimeUnit.MILLISECONDS);
+			}
+			writerTask.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			writerTask.cancel(true);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not write rejected rows", e.getCause());
+		}
+	}
+
+	private void writeEntries() {
+		try (CSVWriter out = writer) {
+			List<Entry> entries;
+			while ((entries = queue.take()) != END) {
+				int skipped = 0;
+				for (Entry entry : entries) {
+					if (entry.line <= lastLine) {
+						skipped++;
+						continue;
+					}
+					String[] line = new String[entry.fields.length + 3];
+					line[0] = Long.toString(entry.line);
+					line[1] = entry.error.getRule();
+					line[2] = entry.error.getMessage();
+					System.arraycopy(entry.fields, 0, line, 3, entry.fields.length);
+					out.writeNext(line, false);
+				}
+				written += entries.size() - skipped;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public long getWritten() {
+		return written;
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Member;
+import com.example.demo.exceptions.InvalidRecordException;
+
+import lombok.Getter;
+
+// Result of validating one row on its own. The duplicate check depends on the
+// rows before it, so it is left to the caller and done in file order using
+// the 128 bit hash of the record key.
+@Getter
+public class ValidatedRecord {
+
+	// false when the row was rejected before the duplicate check
+	private final boolean keyed;
+	private final long keyHigh;
+	private final long keyLow;
+	private final Member member;
+	private final InvalidRecordException error;
+
+	private ValidatedRecord(boolean keyed, long keyHigh, long keyLow, Member member, InvalidRecordException error) {
+		this.keyed = keyed;
+		this.keyHigh = keyHigh;
+		this.keyLow = keyLow;
+		this.member = member;
+		this.error = error;
+	}
+
+	public static ValidatedRecord valid(long keyHigh, long keyLow, Member member) {
+		return new ValidatedRecord(true, keyHigh, keyLow, member, null);
+	}
+
+	public static ValidatedRecord invalid(long keyHigh, long keyLow, InvalidRecordException error) {
+		return new ValidatedRecord(true, keyHigh, keyLow, null, error);
+	}
+
+	// Rejected before the key fields were known to be there
+	public static ValidatedRecord invalid(InvalidRecordException error) {
+		return new ValidatedRecord(false, 0, 0, null, error);
+	}
+
+}
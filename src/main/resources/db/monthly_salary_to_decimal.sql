@@ -0,0 +1,72 @@
+-- Converts members.monthly_salary from VARCHAR to DECIMAL(12,2) and indexes it.
+-- ddl-auto=update does not change column types, so run this once on existing
+-- MySQL databases before starting the new version. New databases get the
+-- column and index from the entity mapping.
+--
+-- The ALTER copies the table, run it when uploads are stopped.
+--
+-- Rows stored before the validator read its columns from feed schemas were
+-- built with the Member arguments shifted: education holds address1,
+-- house_number holds address2, address1 the city, address2 the company,
+-- pin_code the education, city the house number, company the salary and
+-- monthly_salary the pin code. Converted as they are, those rows would get
+-- their pin code as salary, so they are moved back into the right columns
+-- first.
+
+-- 1. Keep a copy of every row this script changes: the shifted rows and the
+--    rows whose salary is not a plain number. Drop it once the result is checked.
+CREATE TABLE members_monthly_salary_backup AS
+SELECT *
+FROM members
+WHERE (monthly_salary REGEXP '^[1-9][0-9]{5}$'
+       AND company REGEXP '^[0-9]{1,10}(\\.[0-9]{1,2})?$'
+       AND (pin_code IS NULL OR pin_code NOT REGEXP '^[0-9]{6}$'))
+   OR (monthly_salary IS NOT NULL
+       AND monthly_salary NOT REGEXP '^[0-9]{1,10}(\\.[0-9]{1,2})?$');
+
+-- 2. The shifted rows: a pin code as salary, a number as company and no pin
+--    code in pin_code
+SELECT first_name, last_name, dob, gender, pin_code, city, company, monthly_salary
+FROM members_monthly_salary_backup
+WHERE monthly_salary REGEXP '^[1-9][0-9]{5}$'
+  AND company REGEXP '^[0-9]{1,10}(\\.[0-9]{1,2})?$'
+  AND (pin_code IS NULL OR pin_code NOT REGEXP '^[0-9]{6}$');
+
+-- 3. Move their values back. Read from the copy, an UPDATE of a single table
+--    would see the columns it already assigned.
+UPDATE members m
+JOIN members_monthly_salary_backup b
+  ON b.first_name = m.first_name AND b.last_name = m.last_name
+ AND b.dob = m.dob AND b.gender = m.gender
+SET m.education = b.pin_code,
+    m.house_number = b.city,
+    m.address1 = b.education,
+    m.address2 = b.house_number,
+    m.pin_code = b.monthly_salary,
+    m.city = b.address1,
+    m.company = b.address2,
+    m.monthly_salary = b.company
+WHERE b.monthly_salary REGEXP '^[1-9][0-9]{5}$'
+  AND b.company REGEXP '^[0-9]{1,10}(\\.[0-9]{1,2})?$'
+  AND (b.pin_code IS NULL OR b.pin_code NOT REGEXP '^[0-9]{6}$');
+
+-- 4. Rows whose salary is still not a plain number, these become NULL below.
+--    Their old values stay in members_monthly_salary_backup.
+SELECT first_name, last_name, dob, gender, monthly_salary
+FROM members
+WHERE monthly_salary IS NOT NULL
+  AND monthly_salary NOT REGEXP '^[0-9]{1,10}(\\.[0-9]{1,2})?$';
+
+-- 5. Clear them, MySQL in strict mode refuses the conversion otherwise
+UPDATE members
+SET monthly_salary = NULL
+WHERE monthly_salary IS NOT NULL
+  AND monthly_salary NOT REGEXP '^[0-9]{1,10}(\\.[0-9]{1,2})?$';
+
+-- 6. Change the type and add the index in one table copy
+ALTER TABLE members
+  MODIFY monthly_salary DECIMAL(12,2) NULL,
+  ADD INDEX idx_members_monthly_salary (monthly_salary);
+
+-- 7. After starting the new version, recompute the member stats from the
+--    corrected rows with POST /api/member/stats/rebuild
@@ -0,0 +1,36 @@
+package com.example.demo;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.service.ExistingMemberIndex;
+
+// Upload header and cleanup for the tests that upload members
+public final class TestMembers {
+
+	// Header of the default feed. Kept here rather than taken from the export, so
+	// a change to the export columns does not change what the tests upload.
+	public static final String HEADER = "id,firstName,lastName,dob,gender,education,houseNumber,address1,address2,"
+			+ "city,pincode,mobile,company,monthlySalary\n";
+
+	private TestMembers() {
+	}
+
+	// Empties the members table and the existing member check that mirrors it
+	public static void deleteAll(JdbcTemplate jdbcTemplate, ExistingMemberIndex existingMemberIndex) {
+		jdbcTemplate.update("DELETE FROM members");
+		existingMemberIndex.reload();
+	}
+
+	// Same, and drops the cached member lookups
+	public static void deleteAll(JdbcTemplate jdbcTemplate, ExistingMemberIndex existingMemberIndex,
+			CacheManager cacheManager) {
+		deleteAll(jdbcTemplate, existingMemberIndex);
+		clearCaches(cacheManager);
+	}
+
+	public static void clearCaches(CacheManager cacheManager) {
+		cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+	}
+
+}
@@ -0,0 +1,227 @@
+package com.example.demo.controller;
+
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.example.demo.TestMembers;
+import com.example.demo.service.IngestScheduler;
+import com.example.demo.service.MemberExportService;
+import com.jayway.jsonpath.JsonPath;
+import com.opencsv.CSVReader;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class CSVProcessingControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	@Autowired
+	private MemberExportService memberExportService;
+
+	@Test
+	void jobRunsInBackgroundAndReportsProgress() throws Exception {
+		StringBuilder csv = new StringBuilder(TestMembers.HEADER);
+		for (int i = 0; i < 300; i++) {
+			csv.append(i).append(",JobFirst").append(i).append(",JobLast").append(i)
+					.append(",15/6/1985,F,MSc,12,Main Road,Sector 4,Delhi,110001,8123456789,Initech,40000\n");
+		}
+		csv.append("x,,,,,,,,,,,,,\n");
+		MockMultipartFile file = new MockMultipartFile("file", "members.csv", "text/csv",
+				csv.toString().getBytes(StandardCharsets.UTF_8));
+
+		String jobId = runJob(file);
+
+		mockMvc.perform(get("/api/csv/jobs/{id}", jobId)).andExpect(jsonPath("$.status").value("COMPLETED"))
+				.andExpect(jsonPath("$.rowsRead").value(301)).andExpect(jsonPath("$.validCount").value(300))
+				.andExpect(jsonPath("$.invalidCount").value(1)).andExpect(jsonPath("$.batchesCommitted").value(3))
+				.andExpect(jsonPath("$.batchSize").value(100))
+				.andExpect(jsonPath("$.result.validCount").value(300));
+	}
+
+	@Test
+	void rejectedRowsCanBeDownloaded() throws Exception {
+		String csv = TestMembers.HEADER
+				+ "1,RejFirst,RejLast,15/6/1985,F,MSc,12,Main Road,Sector 4,Delhi,110001,8123456789,Initech,40000\n"
+				+ "2,RejBad,RejLast,15/6/1985,F,MSc,12,Main Road,Sector 4,Delhi,110001,12345,Initech,40000\n"
+				+ "1,RejFirst,RejLast,15/6/1985,F,MSc,12,Main Road,Sector 4,Delhi,110001,8123456789,Initech,40000\n"
+				+ "3,Short\n";
+		MockMultipartFile file = new MockMultipartFile("file", "members.csv", "text/csv",
+				csv.getBytes(StandardCharsets.UTF_8));
+		String jobId = runJob(file);
+		mockMvc.perform(get("/api/csv/jobs/{id}", jobId)).andExpect(jsonPath("$.rejectsWritten").value(3))
+				.andExpect(jsonPath("$.rejectsDropped").value(0));
+
+		byte[] gzip = mockMvc.perform(get("/api/csv/jobs/{id}/rejects", jobId)).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsByteArray();
+		List<String[]> rows;
+		try (CSVReader reader = new CSVReader(
+				new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(gzip)), StandardCharsets.UTF_8))) {
+			rows = reader.readAll();
+		}
+
+		assertEquals(4, rows.size());
+		assertArrayEquals(new String[] { "3", "mobile", "Invalid mobile: 12345" }, Arrays.copyOf(rows.get(1), 3));
+		assertEquals("RejBad", rows.get(1)[4]);
+		assertArrayEquals(new String[] { "4", "duplicate", "Duplicate record" }, Arrays.copyOf(rows.get(2), 3));
+		assertArrayEquals(new String[] { "5", "insufficient_fields", "Insufficient fields", "3", "Short" }, rows.get(3));
+	}
+
+	@Test
+	void uploadsAreRefusedWhileTheIngestQueueIsFull() throws Exception {
+		MockMultipartFile file = new MockMultipartFile("file", "members.csv", "text/csv",
+				TestMembers.HEADER.getBytes(StandardCharsets.UTF_8));
+		CountDownLatch release = new CountDownLatch(1);
+		// Two running and sixteen waiting, the defaults
+		try (IngestScheduler.Permit first = ingestScheduler.acquire("busy");
+				IngestScheduler.Permit second = ingestScheduler.acquire("busy")) {
+			for (int i = 0; i < 16; i++) {
+				ingestScheduler.submit("busy", release::countDown);
+			}
+			mockMvc.perform(multipart("/api/csv/upload").file(file).header("X-Submitter", "team-x"))
+					.andExpect(status().isTooManyRequests()).andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"));
+			mockMvc.perform(multipart("/api/csv/jobs").file(file)).andExpect(status().isTooManyRequests());
+		}
+		assertTrue(release.await(10, TimeUnit.SECONDS));
+
+		mockMvc.perform(multipart("/api/csv/upload").file(file).header("X-Submitter", "team-x"))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void unknownJobIsNotFound() throws Exception {
+		mockMvc.perform(get("/api/csv/jobs/{id}", "does-not-exist")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	void exportIsWrittenInKeyOrderAsCsvAndGzip() throws Exception {
+		DateTimeFormatter format = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+		StringBuilder csv = new StringBuilder(TestMembers.HEADER);
+		// Uploaded newest first, the export has to put them back in order
+		for (int i = 599; i >= 0; i--) {
+			csv.append(i).append(",ExpFirst").append(i).append(",ExpLast,")
+					.append(LocalDate.of(1960, 1, 1).plusDays(i * 3L).format(format))
+					.append(",M,BSc,7,\"Lane 4, Block C\",Sector 9,Pune,411001,9123456789,\"Acme \"\"Labs\"\", Inc\",")
+					.append(20000 + i).append(".50\n");
+		}
+		mockMvc.perform(multipart("/api/csv/upload").file(new MockMultipartFile("file", "members.csv", "text/csv",
+				csv.toString().getBytes(StandardCharsets.UTF_8)))).andExpect(jsonPath("$.validCount").value(600));
+
+		byte[] plain = export("csv");
+		List<String[]> rows;
+		try (CSVReader reader = new CSVReader(new StringReader(new String(plain, StandardCharsets.UTF_8)))) {
+			rows = reader.readAll();
+		}
+
+		assertEquals(601, rows.size());
+		assertEquals("monthlySalary", rows.get(0)[13]);
+		for (int i = 1; i < rows.size(); i++) {
+			assertEquals(LocalDate.of(1960, 1, 1).plusDays((i - 1) * 3L).format(format), rows.get(i)[3]);
+		}
+		assertArrayEquals(new String[] { "0", "ExpFirst0", "ExpLast", "01-01-1960", "M", "BSc", "7",
+				"Lane 4, Block C", "Sector 9", "Pune", "411001", "9123456789", "Acme \"Labs\", Inc", "20000.50" }, rows.get(1));
+
+		// Blocks compressed in parallel, together one gzip stream of the same bytes
+		byte[] gzip = export("gzip");
+		assertTrue(gzip.length < plain.length);
+		assertArrayEquals(plain, new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+	}
+
+	@Test
+	void exportPrefixesMatchLiterally() throws Exception {
+		String csv = TestMembers.HEADER
+				+ "1,Lit_First,LitLast,02-02-1950,F,BSc,1,Road,Area,Pune,411001,9123456789,Initech,30000\n"
+				+ "2,LitXFirst,LitLast,03-02-1950,F,BSc,1,Road,Area,Pune,411001,9123456789,Initech,30000\n";
+		mockMvc.perform(multipart("/api/csv/upload").file(
+				new MockMultipartFile("file", "members.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8))))
+				.andExpect(jsonPath("$.validCount").value(2));
+
+		MvcResult started = mockMvc.perform(get("/api/csv/export").param("firstNamePrefix", "Lit_"))
+				.andExpect(request().asyncStarted()).andReturn();
+		String export = mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk()).andReturn().getResponse()
+				.getContentAsString(StandardCharsets.UTF_8);
+
+		assertTrue(export.contains("Lit_First"));
+		assertFalse(export.contains("LitXFirst"));
+	}
+
+	@Test
+	void exportsBeyondTheLimitAreRefused() throws Exception {
+		MemberExportService.Filter none = new MemberExportService.Filter(null, null, null, null, "NoSuchMember", null);
+		// Two running, the default
+		memberExportService.reserve();
+		memberExportService.reserve();
+		try {
+			mockMvc.perform(get("/api/csv/export")).andExpect(status().isTooManyRequests())
+					.andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"));
+		} finally {
+			memberExportService.export(none, false, OutputStream.nullOutputStream());
+			memberExportService.export(none, false, OutputStream.nullOutputStream());
+		}
+
+		MvcResult started = mockMvc.perform(get("/api/csv/export").param("firstNamePrefix", "NoSuchMember"))
+				.andExpect(request().asyncStarted()).andReturn();
+		mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+	}
+
+	private byte[] export(String format) throws Exception {
+		MvcResult started = mockMvc
+				.perform(get("/api/csv/export").param("firstNamePrefix", "ExpFirst").param("endDate", "31-12-1969")
+						.param("format", format))
+				.andExpect(request().asyncStarted()).andReturn();
+		return mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk()).andReturn().getResponse()
+				.getContentAsByteArray();
+	}
+
+	// Submits the file and waits until the job has finished
+	private String runJob(MockMultipartFile file) throws Exception {
+		String body = mockMvc.perform(multipart("/api/csv/jobs").file(file)).andExpect(status().isAccepted())
+				.andExpect(jsonPath("$.jobId", notNullValue())).andReturn().getResponse().getContentAsString();
+		String jobId = JsonPath.read(body, "$.jobId");
+
+		String jobStatus = "QUEUED";
+		for (int i = 0; i < 100 && !jobStatus.equals("COMPLETED") && !jobStatus.equals("FAILED"); i++) {
+			Thread.sleep(50);
+			String statusBody = mockMvc.perform(get("/api/csv/jobs/{id}", jobId)).andExpect(status().isOk())
+					.andReturn().getResponse().getContentAsString();
+			jobStatus = JsonPath.read(statusBody, "$.status");
+		}
+		return jobId;
+	}
+
+}
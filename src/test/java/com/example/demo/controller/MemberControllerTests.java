@@ -0,0 +1,211 @@
+package com.example.demo.controller;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.example.demo.TestMembers;
+import com.example.demo.service.CSVProcessingService;
+import com.example.demo.service.ExistingMemberIndex;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MemberControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private CSVProcessingService csvProcessingService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ExistingMemberIndex existingMemberIndex;
+
+	@BeforeEach
+	void loadMembers() {
+		jdbcTemplate.update("DELETE FROM members");
+		existingMemberIndex.reload();
+
+		StringBuilder csv = new StringBuilder(TestMembers.HEADER);
+		for (int i = 0; i < 1500; i++) {
+			// Every third member is born in 1985, the rest in 1995
+			String dob = i % 3 == 0 ? "10-03-1985" : "10-03-1995";
+			csv.append(i).append(",Stream").append(i).append(",Member").append(i).append(',').append(dob)
+					.append(",M,BE,1,Main Road,Area,Pune,411001,9876543210,Acme,").append(30000 + i).append('\n');
+		}
+		csvProcessingService.processCsvStream(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void streamsDobRangeAsNdjson() throws Exception {
+		MvcResult started = mockMvc
+				.perform(get("/api/member/by-dob-range/stream").param("startDate", "01-01-1985")
+						.param("endDate", "31-12-1985"))
+				.andExpect(request().asyncStarted()).andReturn();
+
+		String body = mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk())
+				.andExpect(content().contentType(MediaType.APPLICATION_NDJSON)).andReturn().getResponse()
+				.getContentAsString();
+
+		String[] lines = body.split("\n");
+		assertEquals(500, lines.length);
+		assertTrue(lines[0].contains("\"dob\":\"1985-03-10\""));
+	}
+
+	@Test
+	void streamsSalaryAsJsonArray() throws Exception {
+		MvcResult started = mockMvc
+				.perform(get("/api/member/by-salary/stream").param("salary", "31000").param("format", "json"))
+				.andExpect(request().asyncStarted()).andReturn();
+
+		mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk())
+				.andExpect(content().contentType(MediaType.APPLICATION_JSON)).andExpect(jsonPath("$.length()").value(500))
+				.andExpect(jsonPath("$[0].monthlySalary").exists());
+	}
+
+	@Test
+	void salaryIsComparedAsNumber() throws Exception {
+		// As text "30000" < "4000", as numbers every member matches
+		mockMvc.perform(get("/api/member/by-salary").param("salary", "4000")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(1500));
+
+		mockMvc.perform(get("/api/member/by-salary-range").param("minSalary", "30100").param("maxSalary", "30102.5"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.length()").value(3))
+				.andExpect(jsonPath("$[0].monthlySalary").value(30100.0));
+
+		mockMvc.perform(get("/api/member/top-salaries").param("limit", "2")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].monthlySalary").value(31499.0))
+				.andExpect(jsonPath("$[1].monthlySalary").value(31498.0));
+
+		mockMvc.perform(get("/api/member/by-salary").param("salary", "lots")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void statsFollowUploads() throws Exception {
+		// Start from the members loaded above, stats of earlier tests are dropped
+		mockMvc.perform(post("/api/member/stats/rebuild")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.city.Pune.members").value(1500))
+				.andExpect(jsonPath("$.salary_band['25000-50000'].members").value(1500))
+				.andExpect(jsonPath("$.city.Pune.salaryAverage").value(30749.5));
+
+		StringBuilder csv = new StringBuilder(TestMembers.HEADER);
+		for (int i = 0; i < 100; i++) {
+			csv.append(i).append(",Stats").append(i).append(",Member").append(i)
+					.append(",10-03-1985,F,BE,1,Main Road,Area,Mumbai,400001,9876543210,Globex,").append(120000 + i)
+					.append('\n');
+		}
+		csvProcessingService.processCsvStream(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+
+		mockMvc.perform(get("/api/member/stats").param("dimension", "city").param("value", "Mumbai"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.city.Mumbai.members").value(100))
+				.andExpect(jsonPath("$.city.Mumbai.salaryMin").value(120000.0))
+				.andExpect(jsonPath("$.city.Mumbai.salaryMax").value(120099.0));
+		assertEquals(100, jdbcTemplate.queryForObject(
+				"SELECT member_count FROM member_stats WHERE dimension = 'city' AND bucket = 'Mumbai'", Long.class));
+		assertEquals(1500, jdbcTemplate.queryForObject(
+				"SELECT member_count FROM member_stats WHERE dimension = 'city' AND bucket = 'Pune'", Long.class));
+		int age = LocalDate.now().getYear() - 1985;
+		String band = age / 10 * 10 + "-" + (age / 10 * 10 + 9);
+		mockMvc.perform(get("/api/member/stats").param("dimension", "age_band").param("value", band))
+				.andExpect(jsonPath("$.age_band['" + band + "'].members").value(600));
+
+		// What the uploads added is what a full rebuild finds
+		String incremental = mockMvc.perform(get("/api/member/stats")).andExpect(jsonPath("$.company.Acme.members").value(1500))
+				.andExpect(jsonPath("$.salary_band['100000+'].members").value(100)).andReturn().getResponse()
+				.getContentAsString();
+		String rebuilt = mockMvc.perform(post("/api/member/stats/rebuild")).andReturn().getResponse().getContentAsString();
+		assertEquals(rebuilt, incremental);
+
+		// A row stored outside the uploads is skipped and not counted again once the
+		// existing member index is reloaded, a city that only differs in case is the
+		// same bucket
+		jdbcTemplate.update("INSERT INTO members (first_name, last_name, dob, gender, member_id, education, "
+				+ "house_number, address1, address2, pin_code, city, mobile, company, monthly_salary) VALUES "
+				+ "('Stored', 'Member', '1985-03-10', 'F', '1', 'BE', '1', 'Main Road', 'Area', '400001', 'Mumbai', "
+				+ "'9876543210', 'Globex', 50000)");
+		existingMemberIndex.reload();
+		mockMvc.perform(post("/api/member/stats/rebuild")).andExpect(jsonPath("$.city.Mumbai.members").value(101));
+		String more = TestMembers.HEADER
+				+ "2,Stored,Member,10-03-1985,F,BE,1,Main Road,Area,Mumbai,400001,9876543210,Globex,60000\n"
+				+ "3,Lower,Case,10-03-1985,F,BE,1,Main Road,Area,mumbai,400001,9876543210,Globex,60000\n";
+		csvProcessingService.processCsvStream(new ByteArrayInputStream(more.getBytes(StandardCharsets.UTF_8)));
+		mockMvc.perform(get("/api/member/stats").param("dimension", "city").param("value", "Mumbai"))
+				.andExpect(jsonPath("$.city.Mumbai.members").value(102));
+
+		mockMvc.perform(get("/api/member/stats").param("dimension", "planet")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void keysetPagesWalkTheWholeTableInNameOrder() throws Exception {
+		List<String> expected = jdbcTemplate.queryForList(
+				"SELECT first_name FROM members ORDER BY first_name, last_name, dob, gender", String.class);
+
+		List<String> seen = new ArrayList<>();
+		String after = null;
+		String lastPage;
+		do {
+			MockHttpServletRequestBuilder request = get("/api/member/page").param("size", "400").param("count", "true");
+			if (after != null) {
+				request.param("after", after);
+			}
+			lastPage = mockMvc.perform(request).andExpect(status().isOk())
+					.andExpect(jsonPath("$.totalItems").value(1500)).andReturn().getResponse().getContentAsString();
+			seen.addAll(JsonPath.read(lastPage, "$.content[*].uniqId.firstName"));
+			after = JsonPath.read(lastPage, "$.nextToken");
+		} while (after != null);
+		assertEquals(expected, seen);
+
+		// Going back from the last page gives the page before it
+		String before = JsonPath.read(lastPage, "$.previousToken");
+		String previous = mockMvc.perform(get("/api/member/page").param("size", "400").param("before", before))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		List<String> names = JsonPath.read(previous, "$.content[*].uniqId.firstName");
+		assertEquals(expected.subList(800, 1200), names);
+	}
+
+	@Test
+	void keysetView() throws Exception {
+		mockMvc.perform(get("/api/page/keyset").param("size", "5")).andExpect(status().isOk())
+				.andExpect(content().string(containsString("Total members: 1500")));
+	}
+
+	@Test
+	void badPageTokenIsRejected() throws Exception {
+		mockMvc.perform(get("/api/member/page").param("after", "not-a-token")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void badDateIsRejectedBeforeStreaming() throws Exception {
+		mockMvc.perform(get("/api/member/by-dob-range/stream").param("startDate", "1985").param("endDate",
+				"31-12-1985")).andExpect(status().isBadRequest());
+	}
+
+}
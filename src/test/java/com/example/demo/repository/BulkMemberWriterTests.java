@@ -0,0 +1,164 @@
+package com.example.demo.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.example.demo.config.LocalInfileConfig;
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@SpringBootTest
+class BulkMemberWriterTests {
+
+	private static final int ROWS = 5000;
+	private static final int BATCH = 500;
+
+	@Autowired
+	private JdbcBatchMemberWriter jdbcBatchMemberWriter;
+
+	@Autowired
+	private MultiRowInsertMemberWriter multiRowInsertMemberWriter;
+
+	@Autowired
+	private LoadDataMemberWriter loadDataMemberWriter;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@BeforeEach
+	void cleanTable() {
+		jdbcTemplate.update("DELETE FROM members");
+	}
+
+	@Test
+	void jdbcBatchWriter() {
+		writeAndVerify(jdbcBatchMemberWriter);
+	}
+
+	@Test
+	void multiRowWriter() {
+		writeAndVerify(multiRowInsertMemberWriter);
+	}
+
+	@Test
+	void loadDataWriter() throws Exception {
+		assumeMySql();
+		writeAndVerify(loadDataMemberWriter);
+	}
+
+	@Test
+	void jdbcBatchWriterUpserts() {
+		upsertAndVerify(jdbcBatchMemberWriter);
+	}
+
+	@Test
+	void multiRowWriterUpserts() {
+		upsertAndVerify(multiRowInsertMemberWriter);
+	}
+
+	@Test
+	void loadDataWriterUpserts() throws Exception {
+		assumeMySql();
+		upsertAndVerify(loadDataMemberWriter);
+	}
+
+	@Test
+	void upsertsNameTheInsertedRowLikeTheStatsMerge() {
+		String aliased = MemberColumns.updateAll(true);
+		assertTrue(aliased.startsWith("member_id = new.member_id, education = new.education"));
+		assertTrue(aliased.endsWith("row_hash = new.row_hash"));
+		assertFalse(aliased.contains("VALUES("));
+		assertTrue(MemberColumns.updateAll(false).endsWith("row_hash = VALUES(row_hash)"));
+	}
+
+	@Test
+	void localInfileIsOnlyAllowedForTheLoadDataWriter() {
+		assertFalse(((HikariDataSource) dataSource).getDataSourceProperties().containsKey("allowLoadLocalInfile"));
+
+		LocalInfileConfig config = new LocalInfileConfig();
+		config.setEnvironment(new MockEnvironment().withProperty("csv.ingest.writer", "load-data"));
+		try (HikariDataSource loadDataSource = new HikariDataSource()) {
+			config.postProcessBeforeInitialization(loadDataSource, "dataSource");
+			assertEquals("true", loadDataSource.getDataSourceProperties().getProperty("allowLoadLocalInfile"));
+		}
+	}
+
+	private void assumeMySql() throws Exception {
+		try (Connection con = dataSource.getConnection()) {
+			assumeTrue(con.getMetaData().getDatabaseProductName().equals("MySQL"), "LOAD DATA needs MySQL");
+		}
+	}
+
+	private void writeAndVerify(BulkMemberWriter writer) {
+		List<Member> members = members(ROWS);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ROWS; i += BATCH) {
+			writer.write(members.subList(i, i + BATCH));
+		}
+		long elapsed = System.nanoTime() - start;
+		log.info("{}: {} rows in {} ms, {} rows/sec", writer.getName(), ROWS, elapsed / 1_000_000,
+				Math.round(ROWS * 1e9 / elapsed));
+
+		assertEquals(ROWS, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+		assertEquals("Street, 7", jdbcTemplate.queryForObject(
+				"SELECT address1 FROM members WHERE first_name = 'First7' AND last_name = 'Last7'", String.class));
+
+		// Rows that are already there are skipped, not failed
+		writer.write(members.subList(0, BATCH));
+		assertEquals(ROWS, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+	}
+
+	// Stored rows get every column outside the key from the upsert, new keys are inserted
+	private void upsertAndVerify(BulkMemberWriter writer) {
+		writer.write(members(BATCH));
+		List<Member> changed = members(BATCH + 10);
+		for (Member member : changed) {
+			member.setCity("Mumbai");
+			member.setMonthlySalary(new BigDecimal("45000.00"));
+			member.setRowHash(42L);
+		}
+
+		writer.upsert(changed);
+
+		assertEquals(BATCH + 10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+		assertEquals(BATCH + 10, jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM members WHERE city = 'Mumbai' AND monthly_salary = 45000 AND row_hash = 42",
+				Integer.class));
+	}
+
+	private static List<Member> members(int count) {
+		List<Member> members = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			MemberId id = new MemberId("First" + i, "Last" + i, LocalDate.of(1980, 1, 1).plusDays(i % 5000), "M");
+			members.add(new Member(id, "M" + i, "BE", String.valueOf(i), "Street, " + i, "Area\t" + i, "411001", "Pune",
+					"9876543210", "Acme", new BigDecimal("30000.00"), null));
+		}
+		return members;
+	}
+
+}
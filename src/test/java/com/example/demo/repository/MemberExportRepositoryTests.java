@@ -0,0 +1,39 @@
+package com.example.demo.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class MemberExportRepositoryTests {
+
+	@Autowired
+	private DataSource dataSource;
+
+	// The export sorts by KEY_ORDER so every range is read along the primary key,
+	// a schema created in another order would sort every range instead
+	@Test
+	void keyOrderIsThePrimaryKeyOfTheGeneratedSchema() throws Exception {
+		Map<Integer, String> columns = new TreeMap<>();
+		try (Connection connection = dataSource.getConnection();
+				ResultSet rs = connection.getMetaData().getPrimaryKeys(null, null, "members")) {
+			while (rs.next()) {
+				columns.put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME").toLowerCase());
+			}
+		}
+
+		assertEquals(Arrays.asList(MemberExportRepository.KEY_ORDER.split(", ")), List.copyOf(columns.values()));
+	}
+
+}
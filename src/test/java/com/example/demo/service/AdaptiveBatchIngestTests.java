@@ -0,0 +1,77 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import com.example.demo.TestMembers;
+import com.example.demo.dto.CsvProcessingResult;
+import com.example.demo.entity.Member;
+import com.example.demo.repository.CSVProcessingRepository;
+
+@SpringBootTest(properties = { "csv.ingest.batch.adaptive=true", "csv.ingest.batch.initial-size=100",
+		"csv.ingest.batch.min-size=50", "csv.ingest.batch.max-size=2000", "csv.ingest.batch.increase-step=100",
+		"csv.ingest.batch.target-latency-ms=250", "csv.ingest.batch.backoff-max-ms=20", "csv.ingest.queue-capacity=4" })
+class AdaptiveBatchIngestTests {
+
+	private static final int ROWS = 6000;
+
+	@Autowired
+	private CSVProcessingService csvProcessingService;
+
+	@MockitoSpyBean
+	private CSVProcessingRepository csvProcessingRepository;
+
+	// The sizing rules are covered by AdaptiveBatchSizerTests, this checks that an
+	// upload converges on the size its commit latency allows
+	@Test
+	void uploadBatchesSettleAtTheTargetLatency() throws Exception {
+		// Every commit takes 20 ms plus 0.5 ms per member on top of the in-memory database
+		List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+		doAnswer(invocation -> {
+			List<Member> members = invocation.getArgument(0);
+			sizes.add(members.size());
+			Thread.sleep(20 + members.size() / 2);
+			return invocation.callRealMethod();
+		}).when(csvProcessingRepository).batchInsert(anyList(), anyList(), any());
+
+		StringBuilder csv = new StringBuilder(TestMembers.HEADER);
+		for (int i = 0; i < ROWS; i++) {
+			csv.append(i).append(",Adaptive").append(i).append(",Batch").append(i)
+					.append(",12-03-1982,F,MBA,5,Hill Road,Block 2,Nagpur,440001,7123456789,Globex,30000\n");
+		}
+		IngestContext context = csvProcessingService.createContext(FeedSchemaRegistry.DEFAULT_FEED);
+		CsvProcessingResult result = csvProcessingService
+				.processCsvStream(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), context);
+
+		assertEquals(ROWS, result.getValidCount());
+		assertEquals(100, sizes.get(0));
+		// 20 ms + 0.5 ms per member reaches the 250 ms target at 460 members, a bit
+		// less with the time the database itself takes. A batch within the target
+		// raises the size to one step above it, a slower one halves it, so the size
+		// never passes 560 and the later batches swing around the crossing. The
+		// lower bound leaves room for the database time.
+		int crossing = (250 - 20) * 2;
+		List<Integer> settled = sizes.subList(sizes.size() / 2, sizes.size());
+		double average = settled.stream().mapToInt(Integer::intValue).average().orElseThrow();
+		assertTrue(sizes.stream().allMatch(size -> size <= crossing + 100), "grew past the target: " + sizes);
+		assertTrue(context.getBatchSize() <= crossing + 100, "final size " + context.getBatchSize());
+		assertTrue(average >= crossing / 4.0 && average <= crossing, "did not settle: " + sizes);
+		assertTrue(context.getBatchLatencyMs() > 20, "latency " + context.getBatchLatencyMs());
+		assertTrue(context.getBatchRowsPerSecond() > 0);
+	}
+
+}
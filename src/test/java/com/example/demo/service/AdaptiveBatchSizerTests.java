@@ -0,0 +1,87 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+// The sizing rules against made up commit times, no database involved
+class AdaptiveBatchSizerTests {
+
+	// 20 ms plus 0.5 ms per member, the target of 250 ms is met up to 460 members
+	private static long latency(int members) {
+		return TimeUnit.MICROSECONDS.toNanos(20_000 + members * 500L);
+	}
+
+	private static AdaptiveBatchSizer sizer() {
+		return new AdaptiveBatchSizer(100, 50, 2000, 100, 0.5, 250, 20);
+	}
+
+	@Test
+	void sizeSettlesWhereCommitsMeetTheTarget() {
+		AdaptiveBatchSizer sizer = sizer();
+		List<Integer> sizes = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			int size = sizer.getSize();
+			sizes.add(size);
+			sizer.committed(size, latency(size));
+		}
+
+		assertEquals(List.of(100, 200, 300, 400, 500, 250), sizes.subList(0, 6));
+		// Grows by the step up to the first size over the target, then halves
+		assertTrue(sizes.subList(50, 100).stream().allMatch(size -> size >= 230 && size <= 560), "sizes " + sizes);
+		assertTrue(sizer.getAverageLatencyMs() > 100 && sizer.getAverageLatencyMs() < 300,
+				"latency " + sizer.getAverageLatencyMs());
+	}
+
+	@Test
+	void staleBatchesDoNotChangeTheSizeTwice() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 50, 2000, 100, 0.5, 250, 20);
+		sizer.committed(1000, latency(1000));
+		assertEquals(500, sizer.getSize());
+		// Cut at the old size, already queued when the size was cut
+		sizer.committed(1000, latency(1000));
+		assertEquals(500, sizer.getSize());
+
+		// A small batch from before does not raise a size that already grew
+		sizer.committed(100, latency(100));
+		assertEquals(500, sizer.getSize());
+		sizer.committed(400, latency(400));
+		assertEquals(500, sizer.getSize());
+		sizer.committed(450, latency(450));
+		assertEquals(550, sizer.getSize());
+	}
+
+	@Test
+	void slowCommitsBackOffUpToTheLimit() {
+		AdaptiveBatchSizer sizer = sizer();
+		assertEquals(0, sizer.committed(100, TimeUnit.MILLISECONDS.toNanos(100)));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(10), sizer.committed(100, TimeUnit.MILLISECONDS.toNanos(260)));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(20), sizer.committed(100, TimeUnit.SECONDS.toNanos(5)));
+		assertEquals(50, sizer.getSize());
+	}
+
+	@Test
+	void fixedSizeNeverChanges() {
+		AdaptiveBatchSizer sizer = AdaptiveBatchSizer.fixed(300);
+		sizer.committed(300, TimeUnit.MILLISECONDS.toNanos(1));
+		sizer.committed(300, TimeUnit.SECONDS.toNanos(60));
+		assertEquals(300, sizer.getSize());
+	}
+
+	@Test
+	void invalidSettingsAreRefused() {
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(100, 0, 2000, 100, 0.5, 250, 20));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(100, 50, 40, 100, 0.5, 250, 20));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(100, 50, 2000, -1, 0.5, 250, 20));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(100, 50, 2000, 100, 1, 250, 20));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(100, 50, 2000, 100, 0.5, 0, 20));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(100, 50, 2000, 100, 0.5, 250, -1));
+	}
+
+}
@@ -0,0 +1,238 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.TestMembers;
+import com.example.demo.dto.CsvProcessingResult;
+import com.example.demo.exceptions.LocalFileNotAllowedException;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+@SpringBootTest(properties = "csv.ingest.local.base-dir=target/test-local")
+class CSVProcessingServiceTests {
+
+	@Autowired
+	private CSVProcessingService csvProcessingService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ExistingMemberIndex existingMemberIndex;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@BeforeEach
+	void cleanTable() {
+		TestMembers.deleteAll(jdbcTemplate, existingMemberIndex);
+	}
+
+	// Builds a file with the given number of valid rows, every 10th row is
+	// repeated as a duplicate and every 7th row gets an invalid mobile number
+	static String buildCsv(String prefix, int rows) {
+		StringBuilder sb = new StringBuilder(TestMembers.HEADER);
+		for (int i = 0; i < rows; i++) {
+			String row = i + ",First" + prefix + i + ",Last" + prefix + i + ",01-01-1990,M,BTech," + i
+					+ ",Street #1,Area 2,Pune,411001,9876543210,Acme,25000\n";
+			sb.append(row);
+			if (i % 10 == 0) {
+				sb.append(row);
+			}
+			if (i % 7 == 0) {
+				sb.append(i + ",Bad" + prefix + i + ",Row,01-01-1990,F,BA,1,Street,Area,Pune,411001,12345,Acme,1000\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	static byte[] gzip(String csv) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(csv.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	static int duplicates(int rows) {
+		return (rows + 9) / 10;
+	}
+
+	static int badMobiles(int rows) {
+		return (rows + 6) / 7;
+	}
+
+	@Test
+	void flushesTrailingPartialBatch() {
+		String csv = buildCsv("Tail", 250);
+
+		CsvProcessingResult result = csvProcessingService
+				.processCsvStream(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(250, result.getValidCount());
+		assertEquals(duplicates(250) + badMobiles(250), result.getInvalidCount());
+		assertEquals(250, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+	}
+
+	@Test
+	void compressedUploadsAreReadLikePlainOnes() throws IOException {
+		int rows = 3000;
+
+		// Two gzip members one after the other, as written by parallel compressors
+		String csv = buildCsv("Gzip", rows);
+		int split = csv.indexOf('\n', csv.length() / 2) + 1;
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		gzip.write(gzip(csv.substring(0, split)));
+		gzip.write(gzip(csv.substring(split)));
+
+		ByteArrayOutputStream zstd = new ByteArrayOutputStream();
+		try (OutputStream out = new ZstdOutputStream(zstd)) {
+			out.write(buildCsv("Zstd", rows).getBytes(StandardCharsets.UTF_8));
+		}
+
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(zip)) {
+			out.putNextEntry(new ZipEntry("members.csv"));
+			out.write(buildCsv("Zip", rows).getBytes(StandardCharsets.UTF_8));
+		}
+
+		for (ByteArrayOutputStream upload : List.of(gzip, zstd, zip)) {
+			CsvProcessingResult result = csvProcessingService
+					.processCsvStream(new ByteArrayInputStream(upload.toByteArray()));
+
+			assertEquals(rows, result.getValidCount());
+			assertEquals(duplicates(rows) + badMobiles(rows), result.getInvalidCount());
+		}
+		assertEquals(3 * rows, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+	}
+
+	@Test
+	void localFileIsParsedInSplits() throws IOException {
+		int rows = 5000;
+		Path dir = Files.createDirectories(Path.of("target/test-local"));
+		Files.writeString(dir.resolve("members.csv"), buildCsv("Local", rows), StandardCharsets.UTF_8);
+
+		CsvProcessingResult result = csvProcessingService.processLocalFile("members.csv", "default");
+
+		assertEquals(rows, result.getValidCount());
+		assertEquals(duplicates(rows) + badMobiles(rows), result.getInvalidCount());
+		assertEquals(rows, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+		assertEquals("FirstLocal4999", jdbcTemplate
+				.queryForObject("SELECT first_name FROM members WHERE last_name = 'LastLocal4999'", String.class));
+	}
+
+	@Test
+	void localFilesOutsideTheBaseDirAreRefused() throws IOException {
+		Files.createDirectories(Path.of("target/test-local"));
+
+		assertThrows(LocalFileNotAllowedException.class,
+				() -> csvProcessingService.processLocalFile("../../pom.xml", "default"));
+		assertThrows(LocalFileNotAllowedException.class,
+				() -> csvProcessingService.processLocalFile(Path.of("pom.xml").toAbsolutePath().toString(), "default"));
+		assertThrows(LocalFileNotAllowedException.class,
+				() -> csvProcessingService.processLocalFile("missing.csv", "default"));
+	}
+
+	@Test
+	void uploadIsRecordedInTheIngestMetrics() {
+		double rows = meterRegistry.counter("csv.ingest.rows").count();
+		double duplicate = meterRegistry.counter("csv.ingest.rejected", "rule", "duplicate").count();
+		double mobile = meterRegistry.counter("csv.ingest.rejected", "rule", "mobile").count();
+		Timer batchInsert = meterRegistry.get("csv.ingest.batch.insert").timer();
+		long batches = batchInsert.count();
+
+		csvProcessingService.processCsvStream(
+				new ByteArrayInputStream(buildCsv("Metrics", 250).getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(250 + duplicates(250) + badMobiles(250), meterRegistry.counter("csv.ingest.rows").count() - rows);
+		assertEquals(duplicates(250),
+				meterRegistry.counter("csv.ingest.rejected", "rule", "duplicate").count() - duplicate);
+		assertEquals(badMobiles(250), meterRegistry.counter("csv.ingest.rejected", "rule", "mobile").count() - mobile);
+		assertEquals(3, batchInsert.count() - batches);
+		assertEquals(0, meterRegistry.get("csv.ingest.active").gauge().value());
+	}
+
+	@Test
+	void concurrentUploadsKeepSeparateCounts() throws Exception {
+		int[] sizes = { 1000, 450, 733, 99, 1201, 5 };
+		ExecutorService executor = Executors.newFixedThreadPool(sizes.length);
+		try {
+			List<Future<CsvProcessingResult>> futures = new ArrayList<>();
+			for (int f = 0; f < sizes.length; f++) {
+				String csv = buildCsv("F" + f + "_", sizes[f]);
+				futures.add(executor.submit(() -> csvProcessingService
+						.processCsvStream(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))));
+			}
+
+			int totalRows = 0;
+			for (int f = 0; f < sizes.length; f++) {
+				CsvProcessingResult result = futures.get(f).get();
+				assertEquals(sizes[f], result.getValidCount());
+				assertEquals(duplicates(sizes[f]) + badMobiles(sizes[f]), result.getInvalidCount());
+				totalRows += sizes[f];
+			}
+			assertEquals(totalRows, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void sameFileUploadedTwiceIsReportedAsAlreadyPresent() {
+		String csv = buildCsv("Twice", 40);
+
+		CsvProcessingResult first = csvProcessingService
+				.processCsvStream(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+		CsvProcessingResult second = csvProcessingService
+				.processCsvStream(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(40, first.getValidCount());
+		assertEquals(0, first.getAlreadyPresentCount());
+		assertEquals(0, second.getValidCount());
+		assertEquals(40, second.getAlreadyPresentCount());
+		// Duplicates within the file and bad rows are still reported as invalid
+		assertEquals(first.getInvalidCount(), second.getInvalidCount());
+	}
+
+	@Test
+	void rowsStoredBeforeStartupAreFoundAfterReload() {
+		csvProcessingService.processCsvStream(
+				new ByteArrayInputStream(buildCsv("Stored", 30).getBytes(StandardCharsets.UTF_8)));
+		existingMemberIndex.reload();
+
+		// Same members with the date written differently, the key uses the parsed date
+		String csv = buildCsv("Stored", 30).replace("01-01-1990", "1/1/1990");
+		CsvProcessingResult result = csvProcessingService
+				.processCsvStream(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(0, result.getValidCount());
+		assertEquals(30, result.getAlreadyPresentCount());
+		assertEquals(30, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+	}
+
+}
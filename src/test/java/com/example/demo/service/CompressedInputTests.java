@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+// A compressed upload has to end with an error, never early, when the
+// read-ahead thread cannot finish it
+class CompressedInputTests {
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@AfterEach
+	void stop() {
+		executor.shutdownNow();
+	}
+
+	// About 4 MB of CSV, many more blocks than are read ahead
+	private static byte[] csv() {
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; csv.length() < 4 * 1024 * 1024; i++) {
+			csv.append(i).append(",First").append(i).append(",Last").append(i).append(",Pune\n");
+		}
+		return csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(data);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	void gzipIsReadInFull() throws Exception {
+		byte[] csv = csv();
+		try (InputStream in = CompressedInput.open(new ByteArrayInputStream(gzip(csv)), executor, Long.MAX_VALUE)) {
+			assertArrayEquals(csv, in.readAllBytes());
+		}
+	}
+
+	@Test
+	void interruptedReadAheadFailsTheRead() throws Exception {
+		try (InputStream in = CompressedInput.open(new ByteArrayInputStream(gzip(csv())), executor, Long.MAX_VALUE)) {
+			in.read();
+			// Interrupts the read-ahead thread while most of the file is still compressed
+			executor.shutdownNow();
+			assertThrows(InterruptedIOException.class, in::readAllBytes);
+		}
+	}
+
+	@Test
+	void inflatingPastTheLimitFails() throws Exception {
+		try (InputStream in = CompressedInput.open(new ByteArrayInputStream(gzip(csv())), executor, 1024 * 1024)) {
+			IOException e = assertThrows(IOException.class, in::readAllBytes);
+			assertTrue(e.getMessage().contains("larger than 1048576 bytes"), e.getMessage());
+		}
+	}
+
+}
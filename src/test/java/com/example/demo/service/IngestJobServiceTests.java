@@ -0,0 +1,317 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import com.example.demo.TestMembers;
+import com.example.demo.dto.IngestJobStatus;
+import com.example.demo.entity.IngestCheckpoint;
+import com.example.demo.entity.Member;
+import com.example.demo.exceptions.IngestJobNotFinishedException;
+import com.example.demo.repository.BulkMemberWriter;
+import com.example.demo.repository.IngestCheckpointRepository;
+import com.example.demo.repository.JdbcBatchMemberWriter;
+
+// One writer thread so batches are committed in order and the failure hits a known batch
+@SpringBootTest(properties = { "csv.ingest.writer=failing-once", "csv.ingest.writer-threads=1",
+		"csv.jobs.checkpoint.interval-ms=0", "csv.jobs.spool-dir=target/test-spool" })
+class IngestJobServiceTests {
+
+	// Fails the given write once, like a node going away in the middle of a job
+	static class FailingOnceWriter implements BulkMemberWriter {
+
+		private final JdbcBatchMemberWriter delegate;
+		final AtomicInteger writes = new AtomicInteger();
+		private final AtomicInteger rowsWritten = new AtomicInteger();
+		volatile int failAt = -1;
+
+		FailingOnceWriter(JdbcBatchMemberWriter delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String getName() {
+			return "failing-once";
+		}
+
+		@Override
+		public void write(List<Member> members) {
+			failOnce();
+			delegate.write(members);
+			rowsWritten.addAndGet(members.size());
+		}
+
+		@Override
+		public void upsert(List<Member> members) {
+			failOnce();
+			delegate.upsert(members);
+			rowsWritten.addAndGet(members.size());
+		}
+
+		private void failOnce() {
+			if (writes.incrementAndGet() == failAt) {
+				failAt = -1;
+				throw new IllegalStateException("Connection lost");
+			}
+		}
+	}
+
+	@TestConfiguration
+	static class Config {
+
+		@Bean
+		FailingOnceWriter failingOnceWriter(JdbcBatchMemberWriter delegate) {
+			return new FailingOnceWriter(delegate);
+		}
+	}
+
+	@MockitoSpyBean
+	private IngestJobService ingestJobService;
+
+	@Autowired
+	private IngestCheckpointRepository ingestCheckpointRepository;
+
+	@Autowired
+	private FailingOnceWriter writer;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ExistingMemberIndex existingMemberIndex;
+
+	@Value("${csv.jobs.spool-dir}")
+	private Path spoolDir;
+
+	@BeforeEach
+	void cleanTable() {
+		TestMembers.deleteAll(jdbcTemplate, existingMemberIndex);
+	}
+
+	private IngestJobStatus await(String jobId) throws InterruptedException {
+		IngestJobStatus status = ingestJobService.getStatus(jobId);
+		for (int i = 0; i < 200 && !status.getStatus().equals("COMPLETED") && !status.getStatus().equals("FAILED"); i++) {
+			Thread.sleep(50);
+			status = ingestJobService.getStatus(jobId);
+		}
+		return status;
+	}
+
+	@Test
+	void failedJobResumesAfterItsLastCheckpoint() throws Exception {
+		int rows = 1000;
+		// Windows line ends, the checkpoint offset has to land after the \r\n
+		String csv = CSVProcessingServiceTests.buildCsv("Resume", rows).replace("\n", "\r\n");
+		int invalid = CSVProcessingServiceTests.duplicates(rows) + CSVProcessingServiceTests.badMobiles(rows);
+		writer.writes.set(0);
+		writer.failAt = 5;
+
+		String jobId = ingestJobService
+				.submit(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "default", "tests").getJobId();
+		assertEquals("FAILED", await(jobId).getStatus());
+
+		// Four batches of 100 made it, the checkpoint stops right after the fourth
+		IngestCheckpoint checkpoint = ingestCheckpointRepository.findById(jobId).orElseThrow();
+		assertEquals(IngestCheckpoint.FAILED, checkpoint.getStatus());
+		assertEquals(400, checkpoint.getValidCount());
+		assertEquals(4, checkpoint.getBatchesCommitted());
+		assertEquals(1, checkpoint.getAttempts());
+		assertTrue(checkpoint.getByteOffset() > 0);
+		assertEquals(400, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+
+		writer.rowsWritten.set(0);
+		ingestJobService.resume(jobId, "tests");
+		IngestJobStatus status = await(jobId);
+
+		assertEquals("COMPLETED", status.getStatus());
+		// Only the rows after the checkpoint were inserted, the counts cover the whole file
+		assertEquals(rows - 400, writer.rowsWritten.get());
+		assertEquals(rows, status.getValidCount());
+		assertEquals(invalid, status.getInvalidCount());
+		assertEquals(0, status.getAlreadyPresentCount());
+		assertEquals(rows, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+		assertFalse(ingestCheckpointRepository.existsById(jobId));
+		assertFalse(Files.exists(spoolDir.resolve(jobId + ".csv")));
+	}
+
+	@Test
+	void failedGzipJobResumesAfterItsLastCheckpoint() throws Exception {
+		int rows = 1000;
+		String csv = CSVProcessingServiceTests.buildCsv("Gzip", rows);
+		writer.writes.set(0);
+		writer.failAt = 3;
+
+		String jobId = ingestJobService
+				.submit(new ByteArrayInputStream(CSVProcessingServiceTests.gzip(csv)), "default", "tests").getJobId();
+		assertEquals("FAILED", await(jobId).getStatus());
+
+		IngestCheckpoint checkpoint = ingestCheckpointRepository.findById(jobId).orElseThrow();
+		assertEquals(200, checkpoint.getValidCount());
+		assertTrue(checkpoint.getLineNumber() > 0);
+
+		writer.rowsWritten.set(0);
+		ingestJobService.resume(jobId, "tests");
+		IngestJobStatus status = await(jobId);
+
+		assertEquals("COMPLETED", status.getStatus());
+		assertEquals(rows - 200, writer.rowsWritten.get());
+		assertEquals(rows, status.getValidCount());
+		assertEquals(0, status.getAlreadyPresentCount());
+		assertEquals(rows, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+	}
+
+	@Test
+	void rejectsOfTheFailedRunStayInTheFileAfterAResume() throws Exception {
+		int rows = 1000;
+		String csv = CSVProcessingServiceTests.buildCsv("Rejects", rows);
+		int invalid = CSVProcessingServiceTests.duplicates(rows) + CSVProcessingServiceTests.badMobiles(rows);
+		writer.writes.set(0);
+		writer.failAt = 5;
+
+		String jobId = ingestJobService
+				.submit(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "default", "tests").getJobId();
+		assertEquals("FAILED", await(jobId).getStatus());
+		List<String> beforeResume = readRejects(ingestJobService.getRejects(jobId));
+		assertTrue(beforeResume.size() > 1);
+
+		ingestJobService.resume(jobId, "tests");
+		IngestJobStatus status = await(jobId);
+		assertEquals("COMPLETED", status.getStatus());
+
+		// One header, every rejected row once, the rows of the failed run first
+		List<String> lines = readRejects(ingestJobService.getRejects(jobId));
+		assertEquals(beforeResume, lines.subList(0, beforeResume.size()));
+		assertEquals(invalid + 1, lines.size());
+		assertEquals(invalid, status.getInvalidCount());
+		assertEquals(invalid, status.getRejectsWritten());
+	}
+
+	// Lines of the reject file, all gzip members of it
+	private static List<String> readRejects(Path file) throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+			return reader.lines().toList();
+		}
+	}
+
+	@Test
+	void onlyOneResumeClaimsAFailedJob() {
+		IngestCheckpoint checkpoint = new IngestCheckpoint("claimed-job", "default", 10);
+		checkpoint.setStatus(IngestCheckpoint.RUNNING);
+		ingestCheckpointRepository.save(checkpoint);
+
+		assertThrows(IngestJobNotFinishedException.class, () -> ingestJobService.resume("claimed-job", "tests"));
+		assertEquals(IngestCheckpoint.RUNNING, ingestCheckpointRepository.findById("claimed-job").orElseThrow().getStatus());
+
+		checkpoint.setStatus(IngestCheckpoint.FAILED);
+		ingestCheckpointRepository.save(checkpoint);
+		long now = System.currentTimeMillis();
+		assertEquals(1, ingestCheckpointRepository.updateStatus("claimed-job", IngestCheckpoint.FAILED,
+				IngestCheckpoint.QUEUED, now));
+		assertEquals(0, ingestCheckpointRepository.updateStatus("claimed-job", IngestCheckpoint.FAILED,
+				IngestCheckpoint.QUEUED, now));
+		ingestCheckpointRepository.deleteById("claimed-job");
+	}
+
+	@Test
+	void jobThatKeepsCrashingIsNotResumedOnStart() {
+		IngestCheckpoint checkpoint = new IngestCheckpoint("crashing-job", "default", 10);
+		checkpoint.setStatus(IngestCheckpoint.RUNNING);
+		checkpoint.setAttempts(3);
+		ingestCheckpointRepository.save(checkpoint);
+
+		ingestJobService.resumeUnfinishedJobs();
+
+		assertEquals(IngestCheckpoint.FAILED, ingestCheckpointRepository.findById("crashing-job").orElseThrow().getStatus());
+		ingestCheckpointRepository.deleteById("crashing-job");
+	}
+
+	@Test
+	void failedJobsExpireWithTheirFiles() throws Exception {
+		IngestCheckpoint expired = new IngestCheckpoint("expired-job", "default", 10);
+		expired.setStatus(IngestCheckpoint.FAILED);
+		expired.setUpdatedAt(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(73));
+		ingestCheckpointRepository.save(expired);
+		IngestCheckpoint recent = new IngestCheckpoint("recent-job", "default", 10);
+		recent.setStatus(IngestCheckpoint.FAILED);
+		ingestCheckpointRepository.save(recent);
+		Files.createDirectories(spoolDir);
+		Files.writeString(spoolDir.resolve("expired-job.csv"), "id\n");
+		Files.writeString(spoolDir.resolve("expired-job.keys"), "");
+
+		ingestJobService.discardExpiredJobs();
+
+		assertFalse(ingestCheckpointRepository.existsById("expired-job"));
+		assertFalse(Files.exists(spoolDir.resolve("expired-job.csv")));
+		assertFalse(Files.exists(spoolDir.resolve("expired-job.keys")));
+		assertTrue(ingestCheckpointRepository.existsById("recent-job"));
+		ingestCheckpointRepository.deleteById("recent-job");
+	}
+
+	@Test
+	void rejectFileThatCannotBeWrittenDoesNotFailTheJob() throws Exception {
+		writer.failAt = -1;
+		doAnswer(invocation -> {
+			RejectedRowLog rejectLog = spy((RejectedRowLog) invocation.callRealMethod());
+			doAnswer(close -> {
+				close.callRealMethod();
+				throw new IOException("No space left on device");
+			}).when(rejectLog).close();
+			((IngestJob) invocation.getArgument(0)).getContext().logRejects(rejectLog);
+			return rejectLog;
+		}).when(ingestJobService).openRejectLog(any(), anyBoolean());
+		int rows = 250;
+		String csv = CSVProcessingServiceTests.buildCsv("NoRejects", rows);
+
+		String jobId = ingestJobService
+				.submit(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "default", "tests").getJobId();
+		IngestJobStatus status = await(jobId);
+
+		assertEquals("COMPLETED", status.getStatus());
+		assertEquals(rows, status.getValidCount());
+		assertEquals("No space left on device", status.getRejectsError());
+		assertFalse(ingestCheckpointRepository.existsById(jobId));
+	}
+
+	@Test
+	void completedJobLeavesNoCheckpoint() throws Exception {
+		writer.failAt = -1;
+		String csv = CSVProcessingServiceTests.buildCsv("Done", 250);
+
+		String jobId = ingestJobService
+				.submit(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "default", "tests").getJobId();
+
+		assertEquals("COMPLETED", await(jobId).getStatus());
+		assertFalse(ingestCheckpointRepository.existsById(jobId));
+		assertFalse(Files.exists(spoolDir.resolve(jobId + ".keys")));
+	}
+
+}
@@ -0,0 +1,206 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.exceptions.IngestBusyException;
+
+// Exports send a block per row and read one block ahead of the client
+@SpringBootTest(properties = { "csv.ingest.scheduler.max-concurrent=1", "csv.ingest.scheduler.queue-capacity=4",
+		"csv.ingest.scheduler.max-wait-ms=200", "spring.datasource.hikari.connection-timeout=1000",
+		"csv.export.block-size=64", "csv.export.queue-blocks=1" })
+@AutoConfigureMockMvc
+class IngestSchedulerTests {
+
+	@Autowired
+	private IngestScheduler ingestScheduler;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private MemberExportService memberExportService;
+
+	@Autowired
+	private CSVProcessingService csvProcessingService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void queuedIngestsTakeTurnsBySubmitter() throws Exception {
+		List<String> started = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(4);
+
+		try (IngestScheduler.Permit permit = ingestScheduler.acquire("team-a")) {
+			// The only slot is taken, these have to wait
+			for (String job : List.of("a1", "a2", "a3")) {
+				ingestScheduler.submit("team-a", () -> {
+					started.add(job);
+					done.countDown();
+				});
+			}
+			ingestScheduler.submit("team-b", () -> {
+				started.add("b1");
+				done.countDown();
+			});
+			assertEquals(4, ingestScheduler.getQueued());
+
+			IngestBusyException busy = assertThrows(IngestBusyException.class,
+					() -> ingestScheduler.submit("team-c", () -> {
+					}));
+			assertEquals(30, busy.getRetryAfterSeconds());
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		// team-b does not wait for all of team-a's jobs
+		assertEquals(List.of("a1", "b1", "a2", "a3"), started);
+	}
+
+	@Test
+	void uploadGivesUpWhenNoSlotFreesInTime() {
+		try (IngestScheduler.Permit permit = ingestScheduler.acquire("team-a")) {
+			assertThrows(IngestBusyException.class, () -> ingestScheduler.acquire("team-b"));
+			assertEquals(0, ingestScheduler.getQueued());
+		}
+		try (IngestScheduler.Permit permit = ingestScheduler.acquire("team-b")) {
+			assertEquals(1, ingestScheduler.getRunning());
+		}
+	}
+
+	@Test
+	void memberQueriesGetAConnectionWhileBackgroundWorkTakesItsShare() throws Exception {
+		// The pool of 10 less the read reserve of 4
+		int budget = ingestScheduler.getFreeBackgroundConnections();
+		assertEquals(6, budget);
+		CountDownLatch held = new CountDownLatch(budget);
+		AtomicInteger running = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int i = 0; i <= budget; i++) {
+			Thread worker = new Thread(() -> ingestScheduler.withConnection(() -> {
+				try (Connection connection = dataSource.getConnection()) {
+					running.incrementAndGet();
+					held.countDown();
+					release.await();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}));
+			worker.start();
+			workers.add(worker);
+		}
+		try {
+			assertTrue(held.await(10, TimeUnit.SECONDS));
+			// The task beyond the budget and the writers wait
+			assertFalse(ingestScheduler.acquireWriteConnection(200));
+			assertEquals(budget, running.get());
+
+			// Answered from the database, nobody has that name
+			mockMvc.perform(get("/api/member/getMemberByFirstName").param("firstName", "Reserved"))
+					.andExpect(status().isNotFound());
+		} finally {
+			release.countDown();
+		}
+		for (Thread worker : workers) {
+			worker.join(10000);
+		}
+		assertEquals(budget, ingestScheduler.getFreeBackgroundConnections());
+	}
+
+	@Test
+	void slowExportsLeaveTheWriteConnectionsFree() throws Exception {
+		csvProcessingService.processCsvStream(new ByteArrayInputStream(
+				CSVProcessingServiceTests.buildCsv("SlowExport", 200).getBytes(StandardCharsets.UTF_8)));
+		MemberExportService.Filter filter = new MemberExportService.Filter(null, null, null, null, "FirstSlowExport",
+				null);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Thread> exports = new ArrayList<>();
+		try {
+			// Two clients that take the header and then stop reading
+			for (int i = 0; i < 2; i++) {
+				memberExportService.reserve();
+				Thread export = new Thread(() -> {
+					try {
+						memberExportService.export(filter, false, new OutputStream() {
+							private int writes;
+
+							@Override
+							public void write(int b) {
+							}
+
+							@Override
+							public void write(byte[] b, int off, int len) {
+								if (++writes > 1) {
+									awaitQuietly(release);
+								}
+							}
+						});
+					} catch (Exception e) {
+						// Nothing to check once the client is released
+					}
+				});
+				export.start();
+				exports.add(export);
+			}
+			// Each export reads one range on its connection, the rest of the budget stays with the writers
+			int free = ingestScheduler.getFreeBackgroundConnections();
+			for (int i = 0; i < 100 && free > 4; i++) {
+				Thread.sleep(50);
+				free = ingestScheduler.getFreeBackgroundConnections();
+			}
+			Thread.sleep(200);
+			assertEquals(4, ingestScheduler.getFreeBackgroundConnections());
+			for (int i = 0; i < 4; i++) {
+				assertTrue(ingestScheduler.acquireWriteConnection(1000));
+			}
+			for (int i = 0; i < 4; i++) {
+				ingestScheduler.releaseWriteConnection();
+			}
+			assertThrows(IngestBusyException.class, () -> memberExportService.reserve());
+		} finally {
+			release.countDown();
+			for (Thread export : exports) {
+				export.join(10000);
+			}
+			jdbcTemplate.update("DELETE FROM members WHERE first_name LIKE 'FirstSlowExport%'");
+		}
+		assertEquals(6, ingestScheduler.getFreeBackgroundConnections());
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.opencsv.CSVReader;
+
+// Splitting and tokenizing a mapped file has to give the rows and line numbers
+// the CSV reader gives for the same text
+class MappedCsvFileTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void sameRowsAsCsvReader() throws Exception {
+		Random random = new Random(11);
+		String[] values = { "plain", "", "with space", "\"quoted, comma\"", "\"two\nlines\"", "\"say \"\"hi\"\"\"",
+				"Pune", "\"\"", "naïve" };
+		StringBuilder csv = new StringBuilder("id,name,city\r\n");
+		for (int i = 0; i < 2000; i++) {
+			csv.append(i);
+			for (int f = 0; f < 2; f++) {
+				csv.append(',').append(values[random.nextInt(values.length)]);
+			}
+			csv.append(random.nextBoolean() ? "\n" : "\r\n");
+		}
+		csv.append("last,row,without line end");
+		assertSameRowsAsCsvReader(csv.toString());
+	}
+
+	@Test
+	void backslashesAndCarriageReturnsAsCsvReader() throws Exception {
+		Random random = new Random(13);
+		String[] values = { "plain", "back\\slash", "\"esc \\\" quote\"", "x\\,y", "\\\"lead", "a\\b",
+				"\"cr\rin quotes\"", "\"crlf\r\nin quotes\"", "\"slash\\\nline\"", "" };
+		String[] lineEnds = { "\n", "\r\n", "\r" };
+		StringBuilder csv = new StringBuilder("id,name,city\r");
+		for (int i = 0; i < 2000; i++) {
+			csv.append(i);
+			for (int f = 0; f < 2; f++) {
+				csv.append(',').append(values[random.nextInt(values.length)]);
+			}
+			csv.append(lineEnds[random.nextInt(lineEnds.length)]);
+		}
+		csv.append("last,row,ends with a backslash\\");
+		assertSameRowsAsCsvReader(csv.toString());
+	}
+
+	private void assertSameRowsAsCsvReader(String csv) throws Exception {
+		Path file = dir.resolve("members.csv");
+		Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+		List<String[]> expected = new ArrayList<>();
+		List<Long> expectedLines = new ArrayList<>();
+		try (CSVReader reader = new CSVReader(new StringReader(csv))) {
+			reader.readNext();
+			String[] row;
+			while ((row = reader.readNext()) != null) {
+				expected.add(row);
+				expectedLines.add(reader.getLinesRead());
+			}
+		}
+
+		// Small splits so boundaries land next to quoted line ends
+		for (long splitBytes : new long[] { 1, 37, 4096, Long.MAX_VALUE / 2 }) {
+			List<String[]> rows = new ArrayList<>();
+			List<Long> lines = new ArrayList<>();
+			try (MappedCsvFile mapped = MappedCsvFile.open(file)) {
+				assertArrayEquals(new String[] { "id", "name", "city" }, mapped.getHeader());
+				MappedCsvFile.Split split;
+				while ((split = mapped.nextSplit(splitBytes)) != null) {
+					MappedCsvFile.Rows parsed = split.parse(true);
+					for (int i = 0; i < parsed.rows.length; i++) {
+						rows.add(parsed.rows[i]);
+						lines.add(parsed.lines[i]);
+					}
+				}
+			}
+
+			assertEquals(expected.size(), rows.size(), "split size " + splitBytes);
+			for (int i = 0; i < rows.size(); i++) {
+				assertArrayEquals(expected.get(i), rows.get(i), "row " + i);
+			}
+			assertEquals(expectedLines, lines);
+		}
+	}
+
+}
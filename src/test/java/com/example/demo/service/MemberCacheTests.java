@@ -0,0 +1,146 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.TestMembers;
+import com.example.demo.config.CacheConfig;
+import com.example.demo.config.VersionedCaffeineCache;
+import com.example.demo.dto.MemberDto;
+import com.example.demo.exceptions.MemberNotFoundException;
+
+@SpringBootTest
+class MemberCacheTests {
+
+	@Autowired
+	private MemberService memberService;
+
+	@Autowired
+	private CSVProcessingService csvProcessingService;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ExistingMemberIndex existingMemberIndex;
+
+	@BeforeEach
+	void cleanUp() {
+		TestMembers.deleteAll(jdbcTemplate, existingMemberIndex, cacheManager);
+	}
+
+	private void upload(String firstName, String lastName) {
+		String csv = TestMembers.HEADER + "1," + firstName + "," + lastName
+				+ ",01-01-1990,M,BE,1,Main Road,Area,Pune,411001,9876543210,Acme,25000\n";
+		csvProcessingService.processCsvStream(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private Map<Object, Object> entries(String name) {
+		return ((CaffeineCache) cacheManager.getCache(name)).getNativeCache().asMap();
+	}
+
+	@Test
+	void repeatedLookupIsServedFromCache() {
+		upload("Hot", "Name");
+		long hitsBefore = ((CaffeineCache) cacheManager.getCache(CacheConfig.MEMBERS_BY_FIRST_NAME)).getNativeCache()
+				.stats().hitCount();
+
+		assertEquals(1, memberService.getMemberByFirstName("Hot").size());
+		assertEquals(1, memberService.getMemberByFirstName("Hot").size());
+
+		long hits = ((CaffeineCache) cacheManager.getCache(CacheConfig.MEMBERS_BY_FIRST_NAME)).getNativeCache().stats()
+				.hitCount();
+		assertEquals(1, hits - hitsBefore);
+	}
+
+	@Test
+	void commitDropsOnlyTheLookupsItChanges() {
+		upload("Anil", "Rao");
+		upload("Other", "Person");
+		memberService.getMemberByFirstName("Anil");
+		memberService.getMemberByFirstName("Other");
+		memberService.getMemberByLastName("Person");
+		memberService.getMembersByNamePattern("An", "R");
+		memberService.getMembersByNamePattern("Ot", "P");
+		// Nothing found yet, the empty result is cached too
+		assertThrows(MemberNotFoundException.class, () -> memberService.getMembersByNamePattern("A", "Ku"));
+		assertTrue(entries(CacheConfig.MEMBERS_BY_NAME_PATTERN).containsKey(List.of("A%", "Ku%")));
+
+		upload("Anil", "Kumar");
+
+		assertFalse(entries(CacheConfig.MEMBERS_BY_FIRST_NAME).containsKey("Anil"));
+		assertTrue(entries(CacheConfig.MEMBERS_BY_FIRST_NAME).containsKey("Other"));
+		assertTrue(entries(CacheConfig.MEMBERS_BY_LAST_NAME).containsKey("Person"));
+		assertFalse(entries(CacheConfig.MEMBERS_BY_NAME_PATTERN).containsKey(List.of("A%", "Ku%")));
+		assertTrue(entries(CacheConfig.MEMBERS_BY_NAME_PATTERN).containsKey(List.of("An%", "R%")));
+		assertTrue(entries(CacheConfig.MEMBERS_BY_NAME_PATTERN).containsKey(List.of("Ot%", "P%")));
+
+		// Names are compared like MySQL does, ignoring case
+		upload("OTHER", "Person2");
+		assertFalse(entries(CacheConfig.MEMBERS_BY_FIRST_NAME).containsKey("Other"));
+
+		assertEquals(2, memberService.getMemberByFirstName("Anil").size());
+	}
+
+	@Test
+	void likeMatching() {
+		assertTrue(MemberCacheEvictor.like("anil", "an%"));
+		assertTrue(MemberCacheEvictor.like("anil", "a_i%"));
+		assertTrue(MemberCacheEvictor.like("anil", "%"));
+		assertFalse(MemberCacheEvictor.like("anil", "an"));
+		assertFalse(MemberCacheEvictor.like("an%x", "an!%"));
+		assertTrue(MemberCacheEvictor.like("an%", "an!%"));
+		assertTrue(MemberCacheEvictor.like("anil", "%%n%%l"));
+		assertFalse(MemberCacheEvictor.like("anil", "%n%x"));
+		assertTrue(MemberCacheEvictor.like("a_il", "a!_%"));
+		assertFalse(MemberCacheEvictor.like("anil", "a!_%"));
+		// Backtracking over every % would take far too long here
+		assertFalse(MemberCacheEvictor.like("a".repeat(200), "%a".repeat(40) + "%b"));
+	}
+
+	@Test
+	void patternCharactersInPrefixesMatchThemselves() {
+		upload("Anil", "Rao");
+		upload("A_il", "Rao");
+
+		List<MemberDto> members = memberService.getMembersByNamePattern("A_", "R");
+		assertEquals(1, members.size());
+		assertEquals("A_il", members.get(0).getFirstName());
+		assertThrows(MemberNotFoundException.class, () -> memberService.getMembersByNamePattern("%", "R"));
+	}
+
+	@Test
+	void lookupThatRacedACommitIsNotCached() {
+		upload("Early", "Reader");
+		VersionedCaffeineCache cache = (VersionedCaffeineCache) cacheManager.getCache(CacheConfig.MEMBERS_BY_FIRST_NAME);
+
+		// A lookup misses and reads the table, the members commit before it stores the result
+		assertNull(cache.get("Early"));
+		upload("Early", "Writer");
+		cache.put("Early", List.of());
+
+		assertFalse(entries(CacheConfig.MEMBERS_BY_FIRST_NAME).containsKey("Early"));
+		assertEquals(2, memberService.getMemberByFirstName("Early").size());
+		assertTrue(entries(CacheConfig.MEMBERS_BY_FIRST_NAME).containsKey("Early"));
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+// The hashed index has to give the same answers as the HashSet<String> it replaced
+class MemberKeyIndexTests {
+
+	@Test
+	void sameAnswersAsHashSet() {
+		// Small starting size so every layout goes through several resizes
+		MemberKeyIndex[] indexes = { new MemberKeyIndex(16, false, 0), new MemberKeyIndex(16, true, 0),
+				new MemberKeyIndex(16, false, 10), new MemberKeyIndex(16, true, 10) };
+		Set<String> expected = new HashSet<>();
+		Random random = new Random(7);
+
+		for (int n = 0; n < 200000; n++) {
+			String key = "F" + random.nextInt(300) + "|L" + random.nextInt(300) + "|" + (random.nextBoolean() ? "M" : "F")
+					+ "|1990-01-" + random.nextInt(28);
+			boolean added = expected.add(key);
+			for (MemberKeyIndex index : indexes) {
+				assertEquals(added, index.add(MemberKeyHash.high(key), MemberKeyHash.low(key)), key);
+			}
+		}
+		for (MemberKeyIndex index : indexes) {
+			assertEquals(expected.size(), index.size());
+			for (String key : expected) {
+				assertTrue(index.contains(MemberKeyHash.high(key), MemberKeyHash.low(key)), key);
+			}
+		}
+	}
+
+	@Test
+	void bloomFilterGrowsWithTheTable() {
+		MemberKeyIndex withBloom = new MemberKeyIndex(16, false, 10);
+		MemberKeyIndex without = new MemberKeyIndex(16, false, 0);
+		for (int n = 0; n < 100000; n++) {
+			String key = "Grow" + n + "|Last|M|1990-01-01";
+			withBloom.add(MemberKeyHash.high(key), MemberKeyHash.low(key));
+			without.add(MemberKeyHash.high(key), MemberKeyHash.low(key));
+		}
+		// Still 10 bits for every key, not for the 16 it started with
+		assertTrue(withBloom.memoryBytes() - without.memoryBytes() >= 100000 * 10 / 8);
+	}
+
+	@Test
+	void hashOfFieldsMatchesHashOfJoinedKey() {
+		String[] row = { "x", "Anil", "Rao", "M", "17-05-1990" };
+		int[] keyColumns = { 1, 2, 3, 4 };
+		assertEquals(MemberKeyHash.high("Anil|Rao|M|17-05-1990"), MemberKeyHash.high(row, keyColumns));
+		assertEquals(MemberKeyHash.low("Anil|Rao|M|17-05-1990"), MemberKeyHash.low(row, keyColumns));
+	}
+
+}
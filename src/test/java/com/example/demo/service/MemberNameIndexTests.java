@@ -0,0 +1,202 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import com.example.demo.TestMembers;
+import com.example.demo.dto.MemberDto;
+import com.example.demo.dto.NameIndexStatsDto;
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+import com.example.demo.repository.CSVProcessingRepository;
+import com.example.demo.repository.MemberRepository;
+
+@SpringBootTest(properties = "member.name-index.enabled=true")
+class MemberNameIndexTests {
+
+	// The index ignores case like MySQL does, H2 in the tests does not, so the
+	// names only differ in case from the prefixes in the Columns test
+	private static final String[] FIRST_NAMES = { "Anil", "Anita", "Arun", "Bala", "Babu", "Chitra" };
+	private static final String[] LAST_NAMES = { "Rao", "Raman", "Kumar", "Kapoor", "Shah" };
+
+	@Autowired
+	private MemberNameIndex memberNameIndex;
+
+	@Autowired
+	private MemberRepository memberRepository;
+
+	@MockitoSpyBean
+	private CSVProcessingRepository csvProcessingRepository;
+
+	@Autowired
+	private CSVProcessingService csvProcessingService;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ExistingMemberIndex existingMemberIndex;
+
+	@BeforeEach
+	void cleanUp() {
+		TestMembers.deleteAll(jdbcTemplate, existingMemberIndex, cacheManager);
+	}
+
+	private void upload(int count, int seed) {
+		Random random = new Random(seed);
+		StringBuilder csv = new StringBuilder(TestMembers.HEADER);
+		for (int i = 0; i < count; i++) {
+			csv.append(i).append(',').append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append(',')
+					.append(LAST_NAMES[random.nextInt(LAST_NAMES.length)]).append(',')
+					.append(String.format("%02d-%02d-19%02d", 1 + random.nextInt(28), 1 + random.nextInt(12),
+							50 + random.nextInt(50)))
+					.append(",M,BE,1,Main Road,Area,Pune,411001,9876543210,Acme,25000\n");
+		}
+		csvProcessingService.processCsvStream(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static List<String> keys(List<MemberDto> members) {
+		List<String> keys = new ArrayList<>();
+		for (MemberDto m : members) {
+			keys.add(m.getFirstName() + "|" + m.getLastName() + "|" + m.getDob() + "|" + m.getGender() + "|"
+					+ m.getMemberId() + "|" + m.getCity());
+		}
+		keys.sort(Comparator.naturalOrder());
+		return keys;
+	}
+
+	private void assertSameAsDatabase(String firstNamePrefix, String lastNamePrefix) {
+		assertTrue(memberNameIndex.canServe(firstNamePrefix, lastNamePrefix));
+		assertEquals(keys(memberRepository.findMembersByNamePattern(MemberRepository.startsWith(firstNamePrefix),
+				MemberRepository.startsWith(lastNamePrefix))),
+				keys(memberNameIndex.find(firstNamePrefix, lastNamePrefix)));
+	}
+
+	@Test
+	void indexMatchesDatabaseAndFollowsUploads() {
+		upload(300, 1);
+		memberNameIndex.rebuild();
+		NameIndexStatsDto stats = memberNameIndex.getStats();
+		assertTrue(stats.isReady());
+		assertEquals(memberRepository.count(), stats.getMembers());
+		assertEquals(0, stats.getPendingMembers());
+		assertTrue(stats.getEstimatedBytes() > 0);
+
+		assertSameAsDatabase("An", "Ra");
+		assertSameAsDatabase("A", "");
+		assertSameAsDatabase("", "Kapoor");
+		assertSameAsDatabase("Bala", "Shah");
+		assertSameAsDatabase("Zed", "");
+
+		// Committed members show up without a rebuild
+		upload(50, 2);
+		TestMembers.clearCaches(cacheManager);
+		assertEquals(memberRepository.count(), memberNameIndex.getStats().getMembers());
+		assertSameAsDatabase("An", "Ra");
+		assertSameAsDatabase("", "");
+	}
+
+	@Test
+	void wildcardsInPrefixesMatchThemselves() {
+		upload(300, 1);
+		memberNameIndex.rebuild();
+		assertSameAsDatabase("A%n", "");
+		assertSameAsDatabase("", "R_o");
+		assertSameAsDatabase("A!", "");
+	}
+
+	@Test
+	void failedRebuildKeepsTheOldIndex() {
+		upload(100, 1);
+		memberNameIndex.rebuild();
+		long members = memberRepository.count();
+
+		doThrow(new DataAccessResourceFailureException("Connection lost")).when(csvProcessingRepository)
+				.forEachMemberSummary(anyInt(), any());
+		assertThrows(DataAccessResourceFailureException.class, () -> memberNameIndex.rebuild());
+		assertTrue(memberNameIndex.getStats().isReady());
+		assertEquals(members, memberNameIndex.getStats().getMembers());
+
+		// Commits still reach the old index
+		upload(20, 2);
+		assertEquals(memberRepository.count(), memberNameIndex.getStats().getMembers());
+	}
+
+	@Test
+	void committedMemberWithAnIndexedKeyReplacesIt() {
+		MemberNameIndex.Columns columns = new MemberNameIndex.Columns();
+		columns.add(new MemberDto("1", "Anil", "Rao", LocalDate.of(1990, 1, 1), "M", "Pune"));
+		columns.sortAll();
+
+		columns.put(member("2", "ANIL", "Rao", "Nagpur"));
+		columns.put(member("3", "Arun", "Rao", "Pune"));
+		columns.put(member("4", "Arun", "Rao", "Delhi"));
+
+		assertEquals(List.of("Anil|Rao|1990-01-01|M|2|Nagpur", "Arun|Rao|1990-01-01|M|4|Delhi"),
+				keys(columns.find("A", "R")));
+		columns.sortAll();
+		columns.put(member("5", "arun", "RAO", "Mumbai"));
+		assertEquals(List.of("Anil|Rao|1990-01-01|M|2|Nagpur", "Arun|Rao|1990-01-01|M|5|Mumbai"),
+				keys(columns.find("A", "R")));
+	}
+
+	private static Member member(String memberId, String firstName, String lastName, String city) {
+		return new Member(new MemberId(firstName, lastName, LocalDate.of(1990, 1, 1), "M"), memberId, "BE", "1",
+				"Main Road", "Area", "411001", city, "9876543210", "Acme", new BigDecimal("25000"), null);
+	}
+
+	@Test
+	void pendingMembersAreMergedIntoTheSortedArrays() {
+		Random random = new Random(3);
+		List<MemberDto> all = new ArrayList<>();
+		MemberNameIndex.Columns columns = new MemberNameIndex.Columns();
+		for (int i = 0; i < 6000; i++) {
+			MemberDto member = new MemberDto(String.valueOf(i), FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + i % 7,
+					LAST_NAMES[random.nextInt(LAST_NAMES.length)], LocalDate.ofEpochDay(i), "F", "Pune");
+			all.add(member);
+			columns.add(member);
+			if (i == 3999) {
+				columns.sortAll();
+			}
+		}
+		columns.mergeIfNeeded();
+
+		String[][] prefixes = { { "an", "" }, { "Anil3", "r" }, { "", "K" }, { "B", "Shah" } };
+		for (String[] prefix : prefixes) {
+			List<MemberDto> expected = new ArrayList<>();
+			for (MemberDto m : all) {
+				if (m.getFirstName().toLowerCase().startsWith(prefix[0].toLowerCase())
+						&& m.getLastName().toLowerCase().startsWith(prefix[1].toLowerCase())) {
+					expected.add(m);
+				}
+			}
+			assertEquals(keys(expected), keys(columns.find(prefix[0], prefix[1])));
+		}
+	}
+
+}
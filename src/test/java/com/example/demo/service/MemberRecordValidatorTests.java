@@ -0,0 +1,236 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+
+import com.example.demo.entity.Member;
+import com.example.demo.entity.MemberId;
+import com.example.demo.exceptions.InvalidRecordException;
+
+// Compares the compiled default feed with the regex and formatter based checks it replaced
+class MemberRecordValidatorTests {
+
+	private static CompiledFeedSchema defaultSchema;
+
+	@BeforeAll
+	static void loadSchema() throws IOException {
+		defaultSchema = FeedSchemaRegistry.readSchema(new ClassPathResource("feeds/default.yml"));
+	}
+
+	private static final String[] DATES = { "01-01-1990", "1-1-1990", "31-04-2000", "29-02-2001", "29-02-2000",
+			"30-02-2024", "00-01-1990", "32-01-1990", "15-13-1990", "15-00-1990", "01-01-0000", "01-01-0001",
+			"01-01-12345", "01-01-+12345", "01-01--2000", "1/1/1990", "01/01/1990", "001/1/1990", "31/4/2000",
+			"29/2/1900", "1/1/199", "1/1/19900", "+1/2/1990", "1/2/+1990", "1//1990", "/1/1990", "1/1/", "1/1/1990/",
+			"01-01-1990x", "01.01.1990", "19900101", "1 /1/1990", "١/١/١٩٩٠", "31-12-2999", "01-01-1900",
+			"1/1/1800", "a1/1/1990", "01-1a-1990" };
+
+	private static final String[] MOBILES = { "9876543210", "7000000000", "8999999999", "6876543210", "987654321",
+			"98765432100", "+919876543210", "98765 43210", "987654321a", "٩٨٧٦٥٤٣٢١٠", "9876543210\n" };
+
+	private static final String[] SALARIES = { "25000", "25000.5", "25000.50", "0", "9999999999.99", "abc", "12.345",
+			"-5", "1.", ".5", "12345678901", "٣٠٠٠", "25,000" };
+
+	private static final String[] ADDRESSES = { "Main Road", "Flat #12, Main Road", "Sector-4 (East)", "Tab\tand\nlines",
+			"Café Street", "Emoji 😀 Lane", "Lone \uD83D surrogate", "!!!", "a,b,c", "Ünïcödé",
+			"line\u000Bfeed\fform\rcr", " nbsp" };
+
+	@Test
+	void sameOutcomeAsRegexAndFormatterChecks() {
+		LocalDate today = LocalDate.now();
+		MemberRecordValidator validator = defaultSchema.newValidator(today);
+		Random random = new Random(42);
+
+		for (int n = 0; n < 20000; n++) {
+			String[] row = randomRow(random);
+			ValidatedRecord expected = legacyValidate(row.clone());
+			ValidatedRecord actual = validator.validate(row.clone());
+
+			String input = String.join(",", row);
+			assertEquals(expected.isKeyed(), actual.isKeyed(), input);
+			assertEquals(expected.getKeyHigh(), actual.getKeyHigh(), input);
+			assertEquals(expected.getKeyLow(), actual.getKeyLow(), input);
+			assertEquals(message(expected), message(actual), input);
+			assertEquals(expected.getMember(), actual.getMember(), input);
+		}
+	}
+
+	@Test
+	void ageLimitAroundLeapDays() {
+		LocalDate[] todays = { LocalDate.of(2024, 2, 29), LocalDate.of(2101, 2, 28), LocalDate.of(2100, 3, 1),
+				LocalDate.of(2025, 1, 1) };
+		for (LocalDate today : todays) {
+			MemberRecordValidator validator = defaultSchema.newValidator(today);
+			for (LocalDate dob = today.minusYears(102); dob.isBefore(today.minusYears(99)); dob = dob.plusDays(1)) {
+				boolean tooOld = Period.between(dob, today).getYears() > 100;
+				String date = dob.format(DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+				String[] row = row("1", "A", "B", date, "M", "9876543210", "Main Road");
+				assertEquals(tooOld, validator.validate(row).getError() != null, today + " " + date);
+			}
+		}
+	}
+
+	@Test
+	void customFeedLayout() throws IOException {
+		String yaml = """
+				name: partner-a
+				min-columns: 6
+				columns:
+				  - {index: 5, field: memberId, required: true, pattern: "P-\\\\d+", message: Bad id}
+				  - {index: 0, field: lastName, required: true}
+				  - {index: 1, field: firstName, required: true}
+				  - {index: 2, field: gender, required: true}
+				  - {index: 3, field: dob, required: true, formats: [yyyy-MM-dd]}
+				  - {index: 4, field: city, transform: clean-address}
+				""";
+		CompiledFeedSchema schema = FeedSchemaRegistry.readSchema(new ByteArrayResource(yaml.getBytes()));
+		MemberRecordValidator validator = schema.newValidator(LocalDate.now());
+
+		ValidatedRecord ok = validator.validate(new String[] { "Rao", "Anil", "M", "1990-05-17", "Pune!", "P-12" });
+		assertEquals(MemberKeyHash.high("Anil|Rao|M|1990-05-17"), ok.getKeyHigh());
+		assertEquals(MemberKeyHash.low("Anil|Rao|M|1990-05-17"), ok.getKeyLow());
+		assertEquals(LocalDate.of(1990, 5, 17), ok.getMember().getUniqId().getDob());
+		assertEquals("Pune", ok.getMember().getCity());
+		assertNull(ok.getMember().getMobile());
+
+		ValidatedRecord badId = validator.validate(new String[] { "Rao", "Anil", "M", "1990-05-17", "", "X12" });
+		assertEquals("Bad id: X12", badId.getError().getMessage());
+
+		ValidatedRecord badDate = validator.validate(new String[] { "Rao", "Anil", "M", "17/05/1990", "", "P-1" });
+		assertEquals("Unsupported date format: 17/05/1990", badDate.getError().getMessage());
+	}
+
+	@Test
+	void brokenSchemaIsRejected() {
+		String yaml = "name: broken\nmin-columns: 2\ncolumns:\n  - {index: 0, field: firstName}\n";
+		assertThrows(IllegalStateException.class,
+				() -> FeedSchemaRegistry.readSchema(new ByteArrayResource(yaml.getBytes())));
+	}
+
+	private static String message(ValidatedRecord record) {
+		return record.getError() != null ? record.getError().getMessage() : null;
+	}
+
+	private static String[] randomRow(Random random) {
+		String[] row = row(String.valueOf(random.nextInt(1000)), pick(random, "Ann", " Bob ", "", "Chen"),
+				pick(random, "Smith", "Rao ", "", "Lee"), pick(random, DATES), pick(random, "M", "F", ""),
+				pick(random, MOBILES), pick(random, ADDRESSES));
+		row[8] = pick(random, ADDRESSES);
+		row[13] = pick(random, SALARIES);
+		if (random.nextInt(30) == 0) {
+			row[13] = "";
+		}
+		if (random.nextInt(30) == 0) {
+			row[12] = "";
+		}
+		if (random.nextInt(50) == 0) {
+			row[5] = null;
+		}
+		if (random.nextInt(50) == 0) {
+			String[] shorter = new String[13];
+			System.arraycopy(row, 0, shorter, 0, 13);
+			return shorter;
+		}
+		return row;
+	}
+
+	private static String[] row(String id, String firstName, String lastName, String dob, String gender, String mobile,
+			String address1) {
+		return new String[] { id, firstName, lastName, dob, gender, "BE", "12", address1, "Area 1", "Pune", "411001",
+				mobile, "Acme", "25000" };
+	}
+
+	@SafeVarargs
+	private static <T> T pick(Random random, T... values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	// The checks as they were written before MemberRecordValidator
+	private static ValidatedRecord legacyValidate(String[] data) {
+		String recordKey = null;
+		try {
+			if (data.length < 14) {
+				throw new InvalidRecordException("Insufficient fields");
+			}
+			for (int i = 0; i < data.length; i++) {
+				data[i] = data[i] != null ? data[i].trim() : "";
+			}
+			String id = data[0];
+			String firstName = data[1];
+			String lastName = data[2];
+			String dob = data[3];
+			String gender = data[4];
+			String education = data[5];
+			String houseNumber = data[6];
+			String address1 = data[7];
+			String address2 = data[8];
+			String city = data[9];
+			String pincode = data[10];
+			String mobile = data[11];
+			String company = data[12];
+			String monthlySalary = data[13];
+
+			if (id.isEmpty() || firstName.isEmpty() || lastName.isEmpty() || gender.isEmpty() || dob.isEmpty()
+					|| city.isEmpty() || education.isEmpty() || address1.isEmpty() || address2.isEmpty()
+					|| houseNumber.isEmpty() || pincode.isEmpty() || mobile.isEmpty() || monthlySalary.isEmpty()) {
+				throw new InvalidRecordException("Empty fields");
+			}
+			recordKey = String.join("|", firstName, lastName, gender, dob.toString());
+
+			if (!Pattern.matches("^[789]\\d{9}$", mobile)) {
+				throw new InvalidRecordException("Invalid mobile: " + mobile);
+			}
+			LocalDate birthDate = legacyParseDate(dob);
+			if (birthDate.isAfter(LocalDate.now())) {
+				throw new InvalidRecordException("Future date: " + dob);
+			}
+			Period age = Period.between(birthDate, LocalDate.now());
+			if (age.getYears() > 100) {
+				throw new InvalidRecordException("Age is greater than 100: " + dob);
+			}
+			if (!Pattern.matches("^\\d{1,10}(\\.\\d{1,2})?$", monthlySalary)) {
+				throw new InvalidRecordException("Invalid salary: " + monthlySalary);
+			}
+			address1 = address1.replaceAll("[^a-zA-Z0-9\\s,]", "");
+			address2 = address2.replaceAll("[^a-zA-Z0-9\\s,]", "");
+
+			// Arguments in constructor order, the old code passed them shifted
+			MemberId memberId = new MemberId(firstName, lastName, birthDate, gender);
+			Member member = new Member(memberId, id, education, houseNumber, address1, address2, pincode, city,
+					mobile, company, new BigDecimal(monthlySalary).setScale(2), null);
+			return ValidatedRecord.valid(MemberKeyHash.high(recordKey), MemberKeyHash.low(recordKey), member);
+		} catch (InvalidRecordException e) {
+			return recordKey == null ? ValidatedRecord.invalid(e)
+					: ValidatedRecord.invalid(MemberKeyHash.high(recordKey), MemberKeyHash.low(recordKey), e);
+		}
+	}
+
+	private static LocalDate legacyParseDate(String dateStr) {
+		try {
+			if (dateStr.contains("-")) {
+				return LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+			} else if (dateStr.contains("/")) {
+				return LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("d/M/yyyy"));
+			}
+			throw new InvalidRecordException("Unsupported date format: " + dateStr);
+		} catch (DateTimeParseException e) {
+			throw new InvalidRecordException("Invalid date format: " + dateStr);
+		}
+	}
+
+}
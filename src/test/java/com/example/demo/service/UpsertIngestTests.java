@@ -0,0 +1,149 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.TestMembers;
+import com.example.demo.dto.CsvProcessingResult;
+import com.example.demo.dto.IngestJobStatus;
+import com.example.demo.dto.MemberStatDto;
+import com.example.demo.entity.IngestCheckpoint;
+import com.example.demo.repository.IngestCheckpointRepository;
+
+// Batches hold more keys than findForStats looks up per SELECT. Jobs are
+// written by one thread through the writer of IngestJobServiceTests.
+@SpringBootTest(properties = { "csv.ingest.upsert=true", "csv.ingest.batch.initial-size=2500",
+		"csv.ingest.writer=failing-once", "csv.ingest.writer-threads=1", "csv.jobs.checkpoint.interval-ms=0",
+		"csv.jobs.spool-dir=target/test-spool" })
+@Import(IngestJobServiceTests.Config.class)
+class UpsertIngestTests {
+
+	@Autowired
+	private CSVProcessingService csvProcessingService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ExistingMemberIndex existingMemberIndex;
+
+	@Autowired
+	private MemberStatsService memberStatsService;
+
+	@Autowired
+	private IngestJobService ingestJobService;
+
+	@Autowired
+	private IngestCheckpointRepository ingestCheckpointRepository;
+
+	@Autowired
+	private IngestJobServiceTests.FailingOnceWriter writer;
+
+	@BeforeEach
+	void cleanTable() {
+		writer.failAt = -1;
+		TestMembers.deleteAll(jdbcTemplate, existingMemberIndex);
+		memberStatsService.rebuild();
+	}
+
+	private static String csv(int rows, IntFunction<String> salary) {
+		StringBuilder sb = new StringBuilder(TestMembers.HEADER);
+		for (int i = 0; i < rows; i++) {
+			sb.append(i).append(",Upsert").append(i).append(",Member").append(i)
+					.append(",01-01-1990,M,BTech,1,Street 1,Area 2,Pune,411001,9876543210,Acme,")
+					.append(salary.apply(i)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private CsvProcessingResult upload(String csv) {
+		return csvProcessingService.processCsvStream(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void onlyChangedRowsOfAResendAreWritten() {
+		upload(csv(1000, i -> "25000"));
+
+		// Same file again with ten new salaries, 25000.00 is the same value as 25000
+		CsvProcessingResult result = upload(csv(1000, i -> i % 100 == 0 ? "40000" : i % 2 == 0 ? "25000.00" : "25000"));
+
+		assertEquals(10, result.getValidCount());
+		assertEquals(10, result.getUpdatedCount());
+		assertEquals(990, result.getAlreadyPresentCount());
+		assertEquals(1000, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members", Integer.class));
+		assertEquals(10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM members WHERE monthly_salary = 40000",
+				Integer.class));
+
+		// The old salaries left the stats when the rows were updated
+		BigDecimal sum = jdbcTemplate.queryForObject("SELECT SUM(monthly_salary) FROM members", BigDecimal.class);
+		assertEquals(0, sum.compareTo(memberStatsService.getStats("city", "Pune").get("city").get("Pune").getSalarySum()));
+		assertEquals(1000, memberStatsService.getStats("city", "Pune").get("city").get("Pune").getMembers());
+	}
+
+	@Test
+	void rowsStoredWithoutHashAreWrittenOnce() {
+		upload(csv(300, i -> "25000"));
+		jdbcTemplate.update("UPDATE members SET row_hash = NULL");
+		existingMemberIndex.reload();
+
+		CsvProcessingResult first = upload(csv(300, i -> "25000"));
+		CsvProcessingResult second = upload(csv(300, i -> "25000"));
+
+		assertEquals(300, first.getUpdatedCount());
+		assertEquals(0, second.getValidCount());
+		assertEquals(300, second.getAlreadyPresentCount());
+	}
+
+	@Test
+	void largeBatchesTakeEveryReplacedRowOutOfTheStats() {
+		upload(csv(2500, i -> "25000"));
+		CsvProcessingResult result = upload(csv(2500, i -> "30000"));
+
+		assertEquals(2500, result.getUpdatedCount());
+		MemberStatDto pune = memberStatsService.getStats("city", "Pune").get("city").get("Pune");
+		assertEquals(2500, pune.getMembers());
+		assertEquals(0, BigDecimal.valueOf(2500L * 30000).compareTo(pune.getSalarySum()));
+	}
+
+	@Test
+	void resumedJobStillCountsTheUpdatesBeforeItsCheckpoint() throws Exception {
+		upload(csv(6000, i -> "25000"));
+		writer.writes.set(0);
+		// The first batch of 2500 is committed, the second fails
+		writer.failAt = 2;
+
+		String jobId = ingestJobService.submit(
+				new ByteArrayInputStream(csv(6000, i -> "30000").getBytes(StandardCharsets.UTF_8)), "default", "tests")
+				.getJobId();
+		assertEquals("FAILED", await(jobId).getStatus());
+		IngestCheckpoint checkpoint = ingestCheckpointRepository.findById(jobId).orElseThrow();
+		assertEquals(2500, checkpoint.getUpdatedCount());
+
+		ingestJobService.resume(jobId, "tests");
+		IngestJobStatus status = await(jobId);
+
+		assertEquals("COMPLETED", status.getStatus());
+		assertEquals(6000, status.getResult().getUpdatedCount());
+	}
+
+	private IngestJobStatus await(String jobId) throws InterruptedException {
+		IngestJobStatus status = ingestJobService.getStatus(jobId);
+		for (int i = 0; i < 200 && !status.getStatus().equals("COMPLETED") && !status.getStatus().equals("FAILED"); i++) {
+			Thread.sleep(50);
+			status = ingestJobService.getStatus(jobId);
+		}
+		return status;
+	}
+
+}